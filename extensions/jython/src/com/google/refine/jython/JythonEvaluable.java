@@ -70,8 +70,6 @@ public class JythonEvaluable implements Evaluable {
     
     private static final String s_functionName = "___temp___";
     
-    private static PythonInterpreter _engine; 
-    
     // FIXME(SM): this initialization logic depends on the fact that the JVM's 
     // current working directory is the root of the Google Refine distributions
     // or the development checkouts. While this works in practice, it would
@@ -92,10 +90,15 @@ public class JythonEvaluable implements Evaluable {
             props.setProperty("python.path", libPath.getAbsolutePath());
             PythonInterpreter.initialize(System.getProperties(), props, new String[] { "" });
         }
-        
-        _engine = new PythonInterpreter();
     }
 
+    /*
+     * Each expression gets defined as a function in an interpreter of its own, so that
+     * expressions don't redefine one another's function. Jython has no global interpreter
+     * lock, so once defined, the function can be called from several threads at once.
+     */
+    final protected PyFunction _function;
+
     public JythonEvaluable(String s) {
         // indent and create a function out of the code
         String[] lines = s.split("\r\n|\r|\n");
@@ -109,14 +112,16 @@ public class JythonEvaluable implements Evaluable {
             sb.append(line);
         }
 
-        _engine.exec(sb.toString());
+        PythonInterpreter interpreter = new PythonInterpreter();
+        interpreter.exec(sb.toString());
+        _function = (PyFunction) interpreter.get(s_functionName);
     }
     
     @Override
     public Object evaluate(Properties bindings) {
         try {
-            // call the temporary PyFunction directly
-            Object result = ((PyFunction)_engine.get(s_functionName)).__call__(
+            // call the PyFunction directly
+            Object result = _function.__call__(
                 new PyObject[] {
                     Py.java2py( bindings.get("value") ),
                     new JythonHasFieldsWrapper((HasFields) bindings.get("cell"), bindings),
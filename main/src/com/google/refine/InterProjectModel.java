@@ -35,6 +35,7 @@ package com.google.refine;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -85,41 +86,59 @@ public class InterProjectModel {
         }
     }
     
+    /*
+     * Joins get looked up by expressions evaluated on several threads at once, and flushed
+     * by changes, so access to them is synchronized. They are computed outside the lock,
+     * as that loads projects.
+     */
     protected Map<String, ProjectJoin> _joins = new HashMap<String, ProjectJoin>();
     
     public ProjectJoin getJoin(String fromProject, String fromColumn, String toProject, String toColumn) {
         String key = fromProject + ";" + fromColumn + ";" + toProject + ";" + toColumn;
-        if (!_joins.containsKey(key)) {
-            ProjectJoin join = new ProjectJoin(
-                ProjectManager.singleton.getProjectID(fromProject), 
-                fromColumn, 
-                ProjectManager.singleton.getProjectID(toProject), 
-                toColumn
-            );
-            
-            computeJoin(join);
-            
-            _joins.put(key, join);
+        synchronized (this) {
+            ProjectJoin join = _joins.get(key);
+            if (join != null) {
+                return join;
+            }
         }
         
-        return _joins.get(key);
+        ProjectJoin join = new ProjectJoin(
+            ProjectManager.singleton.getProjectID(fromProject), 
+            fromColumn, 
+            ProjectManager.singleton.getProjectID(toProject), 
+            toColumn
+        );
+        
+        computeJoin(join);
+        
+        synchronized (this) {
+            // keep whichever join got there first
+            ProjectJoin existing = _joins.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            _joins.put(key, join);
+            return join;
+        }
     }
     
-    public void flushJoinsInvolvingProject(long projectID) {
-        for (Entry<String, ProjectJoin> entry : _joins.entrySet()) {
-            ProjectJoin join = entry.getValue();
+    synchronized public void flushJoinsInvolvingProject(long projectID) {
+        Iterator<Entry<String, ProjectJoin>> i = _joins.entrySet().iterator();
+        while (i.hasNext()) {
+            ProjectJoin join = i.next().getValue();
             if (join.fromProjectID == projectID || join.toProjectID == projectID) {
-                _joins.remove(entry.getKey());
+                i.remove();
             }
         }
     }
 
-    public void flushJoinsInvolvingProjectColumn(long projectID, String columnName) {
-        for (Entry<String, ProjectJoin> entry : _joins.entrySet()) {
-            ProjectJoin join = entry.getValue();
+    synchronized public void flushJoinsInvolvingProjectColumn(long projectID, String columnName) {
+        Iterator<Entry<String, ProjectJoin>> i = _joins.entrySet().iterator();
+        while (i.hasNext()) {
+            ProjectJoin join = i.next().getValue();
             if (join.fromProjectID == projectID && join.fromProjectColumnName.equals(columnName) || 
                 join.toProjectID == projectID && join.toProjectColumnName.equals(columnName)) {
-                _joins.remove(entry.getKey());
+                i.remove();
             }
         }
     }
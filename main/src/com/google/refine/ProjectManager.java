@@ -49,7 +49,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.history.HistoryEntryManager;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
 import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.model.recon.ReconCache;
 import com.google.refine.preference.PreferenceStore;
 import com.google.refine.preference.TopList;
 
@@ -72,6 +76,11 @@ public abstract class ProjectManager {
      */
     transient protected InterProjectModel _interProjectModel = new InterProjectModel();
 
+    /**
+     *  What caches reconciliation results across runs and projects.
+     */
+    transient protected ReconCache _reconCache = new ReconCache(null);
+
     /**
      *  Flag for heavy operations like creating or importing projects.  Workspace saves are skipped while it's set.
      */
@@ -85,12 +94,40 @@ public abstract class ProjectManager {
      */
     transient protected Map<Long, Project> _projects;
 
+    /**
+     *  Budget in bytes for the estimated sizes of the projects held in memory. When loading
+     *  or creating a project takes the total past it, the least recently used projects are
+     *  saved if needed and unloaded.
+     */
+    static public long s_projectCacheBudget =
+        Long.getLong("refine.projectCacheBudget", Runtime.getRuntime().maxMemory() / 2);
+
+    /**
+     *  Projects used within this many milliseconds are not unloaded, as request threads may
+     *  still be holding on to them.
+     */
+    static public long s_projectPinMillis = Long.getLong("refine.projectPinMillis", 60 * 1000);
+
+    transient protected Map<Long, Long>   _projectSizes;      // estimated, in bytes
+    transient protected Map<Long, Long>   _projectLastAccess; // in ticks of _accessClock
+    transient protected Map<Long, Long>   _projectLastAccessTime; // in milliseconds
+    transient protected Map<Long, Object> _projectLoadLocks;
+    transient protected long              _accessClock = 0;
+
+    transient protected long _cacheHits = 0;
+    transient protected long _cacheMisses = 0;
+    transient protected long _cacheEvictions = 0;
+
     static public ProjectManager singleton;
 
     protected ProjectManager(){
         _projectsMetadata = new HashMap<Long, ProjectMetadata>();
         _preferenceStore = new PreferenceStore();
         _projects = new HashMap<Long, Project>();
+        _projectSizes = new HashMap<Long, Long>();
+        _projectLastAccess = new HashMap<Long, Long>();
+        _projectLastAccessTime = new HashMap<Long, Long>();
+        _projectLoadLocks = new HashMap<Long, Object>();
 
         preparePreferenceStore(_preferenceStore);
     }
@@ -105,6 +142,9 @@ public abstract class ProjectManager {
         }
         
         _projects.clear();
+        _projectSizes.clear();
+        _projectLastAccess.clear();
+        _projectLastAccessTime.clear();
         _projectsMetadata.clear();
     }
 
@@ -117,7 +157,11 @@ public abstract class ProjectManager {
         synchronized (this) {
             _projects.put(project.id, project);
             _projectsMetadata.put(project.id, projectMetadata);
+            _projectSizes.put(project.id, estimateSize(project));
+            _projectLastAccess.put(project.id, ++_accessClock);
+            _projectLastAccessTime.put(project.id, System.currentTimeMillis());
         }
+        evictProjects(project.id);
     }
  //----------Load from data store to memory----------------
 
@@ -160,8 +204,9 @@ public abstract class ProjectManager {
      * @param id
      */
     public void ensureProjectSaved(long id) {
+        ProjectMetadata metadata;
         synchronized(this){
-            ProjectMetadata metadata = this.getProjectMetadata(id);
+            metadata = this.getProjectMetadata(id);
             if (metadata != null) {
                 try {
                     saveMetadata(metadata, id);
@@ -169,18 +214,20 @@ public abstract class ProjectManager {
                     e.printStackTrace();
                 }
             }//FIXME what should be the behaviour if metadata is null? i.e. not found
-
-            Project project = getProject(id);
-            if (project != null && metadata != null && metadata.getModified().after(project.getLastSave())) {
-                try {
-                    saveProject(project);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }//FIXME what should be the behaviour if project is null? i.e. not found or loaded.
-            //FIXME what should happen if the metadata is found, but not the project? or vice versa?
         }
 
+        // saving waits for the project's read lock, which must never happen while holding
+        // the global lock: a thread changing the project may ask for the global lock while
+        // holding the project's write lock
+        Project project = getProject(id);
+        if (project != null && metadata != null && metadata.getModified().after(project.getLastSave())) {
+            try {
+                saveProject(project);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }//FIXME what should be the behaviour if project is null? i.e. not found or loaded.
+        //FIXME what should happen if the metadata is found, but not the project? or vice versa?
     }
 
     /**
@@ -197,6 +244,14 @@ public abstract class ProjectManager {
      */
     protected abstract void saveProject(Project project);
 
+    /**
+     * Lets the data store drop what it keeps about a project that has just been unloaded
+     * from memory, but may be loaded again later. Called while holding the global lock.
+     * @param projectID
+     */
+    protected void forgetLoadedProject(long projectID) {
+    }
+
     /**
      * Save workspace and all projects to data store
      * @param allModified
@@ -205,6 +260,7 @@ public abstract class ProjectManager {
         if (allModified || _busy == 0) {
             saveProjects(allModified);
             saveWorkspace();
+            _reconCache.save();
         }
     }
 
@@ -263,6 +319,13 @@ public abstract class ProjectManager {
                          *  modified. We can safely remove it from the cache to save some memory.
                          */
                         _projects.remove(id).dispose();
+                        _projectSizes.remove(id);
+                        _projectLastAccess.remove(id);
+                        _projectLastAccessTime.remove(id);
+                        forgetLoadedProject(id);
+                    } else {
+                        // projects grow and shrink as they get edited
+                        _projectSizes.put(id, estimateSize(project));
                     }
                 }
             }
@@ -299,6 +362,175 @@ public abstract class ProjectManager {
                 }
             }
         }
+
+        evictProjects(-1);
+    }
+
+    /**
+     * Estimates how much memory a project takes, from a sample of its rows.
+     */
+    static public long estimateSize(Project project) {
+        List<Row> rows = project.rows;
+        if (rows == null || rows.size() == 0) {
+            return 0;
+        }
+
+        int rowCount = rows.size();
+        int step = Math.max(1, rowCount / 1000);
+        long sampleSize = 0;
+        int sampleCount = 0;
+        for (int r = 0; r < rowCount; r += step) {
+            Row row = rows.get(r);
+            sampleSize += 48 + 8 * row.cells.size();
+            for (Cell cell : row.cells) {
+                if (cell != null) {
+                    sampleSize += 24;
+                    if (cell.value instanceof String) {
+                        sampleSize += 40 + 2 * ((String) cell.value).length();
+                    } else if (cell.value != null) {
+                        sampleSize += 24;
+                    }
+                    if (cell.recon != null) {
+                        sampleSize += 200 + 100 * (cell.recon.candidates != null ? cell.recon.candidates.size() : 0);
+                    }
+                }
+            }
+            sampleCount++;
+        }
+        return sampleSize * rowCount / sampleCount;
+    }
+
+    /**
+     * Unloads the least recently used projects, after saving them if needed, until the
+     * projects in memory fit in the budget again. Projects in use are left alone: those with
+     * pending processes, those used within s_projectPinMillis and those whose lock is held.
+     * @param keepID
+     *     the id of a project to keep in memory regardless, or -1
+     */
+    protected void evictProjects(long keepID) {
+        List<Project> candidates = new ArrayList<Project>();
+        synchronized (this) {
+            long total = 0;
+            for (Long size : _projectSizes.values()) {
+                total += size;
+            }
+            if (total <= s_projectCacheBudget) {
+                return;
+            }
+
+            List<Long> ids = new ArrayList<Long>(_projects.keySet());
+            Collections.sort(ids, new Comparator<Long>() {
+                @Override
+                public int compare(Long o1, Long o2) {
+                    long a1 = getLastAccess(o1);
+                    long a2 = getLastAccess(o2);
+                    return a1 < a2 ? -1 : (a1 > a2 ? 1 : 0);
+                }
+            });
+            for (Long id : ids) {
+                if (total <= s_projectCacheBudget) {
+                    break;
+                }
+                Project project = _projects.get(id);
+                if (id != keepID && !project.getProcessManager().hasPending() && !isPinned(id)) {
+                    candidates.add(project);
+                    total -= getProjectSize(id);
+                }
+            }
+        }
+
+        for (Project project : candidates) {
+            ProjectMetadata metadata = getProjectMetadata(project.id);
+            if (metadata != null && metadata.getModified().getTime() >= project.getLastSave().getTime()) {
+                try {
+                    saveProject(project);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    continue;
+                }
+            }
+
+            synchronized (this) {
+                // skip projects that got modified while being saved
+                if (_projects.get(project.id) != project ||
+                        (metadata != null && metadata.getModified().getTime() >= project.getLastSave().getTime())) {
+                    continue;
+                }
+                // nor projects that got used since, or that some thread is reading or changing;
+                // the lock is only tried, so that this never waits for it under the global lock
+                if (isPinned(project.id) || !project.lock.tryLockWrite()) {
+                    continue;
+                }
+                try {
+                    _projects.remove(project.id);
+                    _projectSizes.remove(project.id);
+                    _projectLastAccess.remove(project.id);
+                    _projectLastAccessTime.remove(project.id);
+                    forgetLoadedProject(project.id);
+                    _cacheEvictions++;
+                } finally {
+                    project.lock.unlockWrite();
+                }
+            }
+            project.dispose();
+
+            logger.info("Unloaded project {} to stay within the memory budget", project.id);
+        }
+    }
+
+    private long getLastAccess(long id) {
+        Long access = _projectLastAccess.get(id);
+        return access != null ? access : 0;
+    }
+
+    private boolean isPinned(long id) {
+        Long time = _projectLastAccessTime.get(id);
+        return time != null && System.currentTimeMillis() - time < s_projectPinMillis;
+    }
+
+    private long getProjectSize(long id) {
+        Long size = _projectSizes.get(id);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * @return the total estimated size of the projects in memory, in bytes
+     */
+    synchronized public long getProjectCacheSize() {
+        long total = 0;
+        for (Long size : _projectSizes.values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    synchronized public int getProjectCacheCount() {
+        return _projects.size();
+    }
+
+    synchronized public long getProjectCacheHits() {
+        return _cacheHits;
+    }
+
+    synchronized public long getProjectCacheMisses() {
+        return _cacheMisses;
+    }
+
+    synchronized public long getProjectCacheEvictions() {
+        return _cacheEvictions;
+    }
+
+    /**
+     * @return the estimated memory taken by the text search indexes of loaded projects
+     */
+    synchronized public long getTextIndexSize() {
+        long size = 0;
+        for (Project project : _projects.values()) {
+            for (Column column : project.columnModel.columns) {
+                size += column.getTextIndexSize();
+            }
+        }
+        return size;
     }
 
     //--------------Get from memory--------------
@@ -309,6 +541,13 @@ public abstract class ProjectManager {
         return _interProjectModel;
     }
 
+    /**
+     * Gets the cache of reconciliation results
+     */
+    public ReconCache getReconCache() {
+        return _reconCache;
+    }
+
 
     /**
      * Gets the project metadata from memory
@@ -370,17 +609,74 @@ public abstract class ProjectManager {
      *     the project with the matching id, or null if it can't be found
      */
     public Project getProject(long id) {
+        // callers already holding the global lock load under it rather than risk a deadlock
+        // with another thread loading the same project
+        boolean alreadyLocked = Thread.holdsLock(this);
+
+        Object loadLock;
         synchronized (this) {
-            if (_projects.containsKey(id)) {
-                return _projects.get(id);
-            } else {
-                Project project = loadProject(id);
+            Project project = getCachedProject(id);
+            if (project != null) {
+                return project;
+            } else if (alreadyLocked) {
+                return loadAndCacheProject(id);
+            }
+
+            loadLock = _projectLoadLocks.get(id);
+            if (loadLock == null) {
+                loadLock = new Object();
+                _projectLoadLocks.put(id, loadLock);
+            }
+        }
+
+        // load without holding the global lock, so that other projects remain accessible
+        Project project;
+        synchronized (loadLock) {
+            synchronized (this) {
+                project = getCachedProject(id);
                 if (project != null) {
-                    _projects.put(id, project);                    
+                    return project;
                 }
-                return project;
+            }
+
+            project = loadAndCacheProject(id);
+
+            synchronized (this) {
+                _projectLoadLocks.remove(id);
+            }
+        }
+
+        if (project != null) {
+            evictProjects(id);
+        }
+        return project;
+    }
+
+    /**
+     * @return the project if it is in memory, or null
+     */
+    synchronized private Project getCachedProject(long id) {
+        Project project = _projects.get(id);
+        if (project != null) {
+            _cacheHits++;
+            _projectLastAccess.put(id, ++_accessClock);
+            _projectLastAccessTime.put(id, System.currentTimeMillis());
+        }
+        return project;
+    }
+
+    private Project loadAndCacheProject(long id) {
+        Project project = loadProject(id);
+        synchronized (this) {
+            _cacheMisses++;
+            if (project != null) {
+                _projects.put(id, project);
+                _projectSizes.put(id, estimateSize(project));
+                _projectLastAccess.put(id, ++_accessClock);
+                _projectLastAccessTime.put(id, System.currentTimeMillis());
             }
         }
+        return project;
     }
 
     /**
@@ -429,6 +725,9 @@ public abstract class ProjectManager {
         if (_projects.containsKey(projectID)) {
             _projects.remove(projectID).dispose();
         }
+        _projectSizes.remove(projectID);
+        _projectLastAccess.remove(projectID);
+        _projectLastAccessTime.remove(projectID);
         if (_projectsMetadata.containsKey(projectID)) {
             _projectsMetadata.remove(projectID);
         }
@@ -62,6 +62,8 @@ public class ProjectMetadata implements Jsonizable {
     
     private Map<String, Serializable>   _customMetadata = new HashMap<String, Serializable>();
     private PreferenceStore             _preferenceStore = new PreferenceStore();
+    
+    private boolean _dirty = true; // whether there are changes not saved yet
 
     final Logger logger = LoggerFactory.getLogger("project_metadata");
 
@@ -157,6 +159,7 @@ public class ProjectMetadata implements Jsonizable {
             }
         }
         
+        pm._dirty = false;
         return pm;
     }
     
@@ -217,6 +220,18 @@ public class ProjectMetadata implements Jsonizable {
 
     public void updateModified() {
         _modified = new Date();
+        _dirty = true;
+    }
+    
+    /**
+     * @return true if the metadata, including its preferences, has unsaved changes
+     */
+    public boolean isDirty() {
+        return _dirty || _preferenceStore.isDirty();
+    }
+    
+    public void setDirty(boolean dirty) {
+        _dirty = dirty;
     }
 
     public PreferenceStore getPreferenceStore() {
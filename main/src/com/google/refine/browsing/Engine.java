@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -52,8 +53,10 @@ import com.google.refine.browsing.facets.TimeRangeFacet;
 import com.google.refine.browsing.util.ConjunctiveFilteredRecords;
 import com.google.refine.browsing.util.ConjunctiveFilteredRows;
 import com.google.refine.browsing.util.FilteredRecordsAsFilteredRows;
+import com.google.refine.browsing.util.RecordFilterMatches;
+import com.google.refine.browsing.util.RowFilterMatches;
+import com.google.refine.browsing.util.RowScanner;
 import com.google.refine.model.Project;
-import com.google.refine.model.Row;
 
 /**
  * Faceted browsing engine.
@@ -95,19 +98,7 @@ public class Engine implements Jsonizable {
         return new FilteredRows() {
             @Override
             public void accept(Project project, RowVisitor visitor) {
-                try {
-                    visitor.start(project);
-
-                    int c = project.rows.size();
-                    for (int rowIndex = 0; rowIndex < c; rowIndex++) {
-                        Row row = project.rows.get(rowIndex);
-                        if (visitor.visit(project, rowIndex, row)) {
-                            break;
-                        }
-                    }
-                } finally {
-                    visitor.end(project);
-                }
+                RowScanner.accept(project, visitor, null);
             }
         };
     }
@@ -215,16 +206,55 @@ public class Engine implements Jsonizable {
         }
     }
 
+    /**
+     * Compute the choices of all facets. Each facet's filter is evaluated only once per row
+     * (or record), rather than once per other facet, and each facet then visits the rows
+     * that pass every other facet's filter.
+     */
     public void computeFacets() throws JSONException {
         if (_mode == Mode.RowBased) {
+            List<RowFilter> rowFilters = new ArrayList<RowFilter>(_facets.size());
+            int[] filterIndices = new int[_facets.size()];
+            int i = 0;
             for (Facet facet : _facets) {
-                FilteredRows filteredRows = getFilteredRows(facet);
+                RowFilter rowFilter = facet.getRowFilter(_project);
+                if (rowFilter != null) {
+                    filterIndices[i] = rowFilters.size();
+                    rowFilters.add(rowFilter);
+                } else {
+                    filterIndices[i] = RowFilterMatches.MATCHES_ALL;
+                }
+                i++;
+            }
+
+            RowFilterMatches matches = new RowFilterMatches(_project, rowFilters);
+
+            i = 0;
+            for (Facet facet : _facets) {
+                FilteredRows filteredRows = matches.getFilteredRows(filterIndices[i++]);
 
                 facet.computeChoices(_project, filteredRows);
             }
         } else if (_mode == Mode.RecordBased) {
+            List<RecordFilter> recordFilters = new ArrayList<RecordFilter>(_facets.size());
+            int[] filterIndices = new int[_facets.size()];
+            int i = 0;
+            for (Facet facet : _facets) {
+                RecordFilter recordFilter = facet.getRecordFilter(_project);
+                if (recordFilter != null) {
+                    filterIndices[i] = recordFilters.size();
+                    recordFilters.add(recordFilter);
+                } else {
+                    filterIndices[i] = RowFilterMatches.MATCHES_ALL;
+                }
+                i++;
+            }
+
+            RecordFilterMatches matches = new RecordFilterMatches(_project, recordFilters);
+
+            i = 0;
             for (Facet facet : _facets) {
-                FilteredRecords filteredRecords = getFilteredRecords(facet);
+                FilteredRecords filteredRecords = matches.getFilteredRecords(filterIndices[i++]);
 
                 facet.computeChoices(_project, filteredRecords);
             }
@@ -0,0 +1,59 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.browsing;
+
+/**
+ * A row visitor whose work can be split over disjoint ranges of rows and whose partial
+ * results can be combined afterward. Rows matched by a FilteredRows object can then be
+ * scanned by several threads at once, each feeding its own forked visitor.
+ * 
+ * Forked visitors are not given start() and end() calls; they are merged back into the
+ * visitor they were forked from, in row order, before that visitor's end() is called.
+ * Visitors that depend on seeing every row in order, or that stop the scan early by
+ * returning true from visit(), should not implement this interface.
+ */
+public interface ParallelRowVisitor extends RowVisitor {
+    /**
+     * @return a fresh visitor with the same configuration as this one but no results yet
+     */
+    public ParallelRowVisitor fork();
+    
+    /**
+     * Fold the results of a visitor returned by fork() into this one. Partial results are
+     * merged in the order of the row ranges they were computed on.
+     * 
+     * @param partial
+     */
+    public void merge(ParallelRowVisitor partial);
+}
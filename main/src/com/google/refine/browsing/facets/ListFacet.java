@@ -51,11 +51,13 @@ import com.google.refine.browsing.RowFilter;
 import com.google.refine.browsing.filters.AllRowsRecordFilter;
 import com.google.refine.browsing.filters.AnyRowRecordFilter;
 import com.google.refine.browsing.filters.ExpressionEqualRowFilter;
+import com.google.refine.browsing.util.ColumnValueIndexGrouper;
 import com.google.refine.browsing.util.ExpressionNominalValueGrouper;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.ParsingException;
 import com.google.refine.model.Column;
+import com.google.refine.model.ColumnValueIndex;
 import com.google.refine.model.Project;
 import com.google.refine.util.JSONUtilities;
 
@@ -202,19 +204,31 @@ public class ListFacet implements Facet {
 
     @Override
     public RowFilter getRowFilter(Project project) {
-        return 
-            _eval == null || 
+        if (_eval == null || 
             _errorMessage != null ||
-            (_selection.size() == 0 && !_selectBlank && !_selectError) ? 
-                null :
-                new ExpressionEqualRowFilter(
-                    _eval, 
-                    _columnName,
-                    _cellIndex, 
-                    createMatches(), 
-                    _selectBlank, 
-                    _selectError,
-                    _invert);
+            (_selection.size() == 0 && !_selectBlank && !_selectError)) {
+            return null;
+        }
+        
+        ColumnValueIndex valueIndex = getValueIndex(project);
+        return valueIndex != null ?
+            new ExpressionEqualRowFilter(
+                _eval, 
+                _columnName,
+                _cellIndex, 
+                valueIndex,
+                createMatches(), 
+                _selectBlank, 
+                _selectError,
+                _invert) :
+            new ExpressionEqualRowFilter(
+                _eval, 
+                _columnName,
+                _cellIndex, 
+                createMatches(), 
+                _selectBlank, 
+                _selectError,
+                _invert);
     }
     
     @Override
@@ -229,8 +243,7 @@ public class ListFacet implements Facet {
     @Override
     public void computeChoices(Project project, FilteredRows filteredRows) {
         if (_eval != null && _errorMessage == null) {
-            ExpressionNominalValueGrouper grouper = 
-                new ExpressionNominalValueGrouper(_eval, _columnName, _cellIndex);
+            ExpressionNominalValueGrouper grouper = createGrouper(project);
             
             filteredRows.accept(project, grouper);
             
@@ -241,8 +254,7 @@ public class ListFacet implements Facet {
     @Override
     public void computeChoices(Project project, FilteredRecords filteredRecords) {
         if (_eval != null && _errorMessage == null) {
-            ExpressionNominalValueGrouper grouper = 
-                new ExpressionNominalValueGrouper(_eval, _columnName, _cellIndex);
+            ExpressionNominalValueGrouper grouper = createGrouper(project);
             
             filteredRecords.accept(project, grouper);
             
@@ -250,6 +262,27 @@ public class ListFacet implements Facet {
         }
     }
     
+    protected ExpressionNominalValueGrouper createGrouper(Project project) {
+        ColumnValueIndex valueIndex = getValueIndex(project);
+        return valueIndex != null ?
+            new ColumnValueIndexGrouper(_eval, _columnName, _cellIndex, valueIndex) :
+            new ExpressionNominalValueGrouper(_eval, _columnName, _cellIndex);
+    }
+    
+    /**
+     * @return the index of the column's values if this facet's expression can be
+     *         answered from it, or null
+     */
+    protected ColumnValueIndex getValueIndex(Project project) {
+        if (_cellIndex >= 0 && ColumnValueIndex.isValueExpression(_expression)) {
+            Column column = project.columnModel.getColumnByCellIndex(_cellIndex);
+            if (column != null) {
+                return column.getValueIndex(project);
+            }
+        }
+        return null;
+    }
+    
     protected void postProcessGrouper(ExpressionNominalValueGrouper grouper) {
         _choices.clear();
         _choices.addAll(grouper.choices.values());
@@ -49,6 +49,7 @@ import com.google.refine.browsing.filters.ExpressionStringComparisonRowFilter;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.grel.ast.VariableExpr;
 import com.google.refine.model.Column;
+import com.google.refine.model.ColumnValueIndex;
 import com.google.refine.model.Project;
 
 public class TextSearchFacet implements Facet {
@@ -122,21 +123,124 @@ public class TextSearchFacet implements Facet {
         
         Evaluable eval = new VariableExpr("value");
         
+        ExpressionStringComparisonRowFilter filter;
+        String literal;
         if ("regex".equals(_mode)) {
-            return new ExpressionStringComparisonRowFilter(eval, _columnName, _cellIndex) {
+            filter = new ExpressionStringComparisonRowFilter(eval, _columnName, _cellIndex) {
                 @Override
                 protected boolean checkValue(String s) {
                     return _pattern.matcher(s).find();
                 };
             };
+            literal = getRequiredLiteral(_query);
         } else {
-            return new ExpressionStringComparisonRowFilter(eval, _columnName, _cellIndex) {
+            filter = new ExpressionStringComparisonRowFilter(eval, _columnName, _cellIndex) {
                 @Override
                 protected boolean checkValue(String s) {
                     return (_caseSensitive ? s : s.toLowerCase()).contains(_query);
                 };
             };
-        }        
+            literal = _caseSensitive || isSimplyLowercased(_query) ? _query : null;
+        }
+        
+        // Check each distinct value of the column once, and only those containing all
+        // the trigrams of some text every match must contain.
+        Column column = project.columnModel.getColumnByName(_columnName);
+        if (column != null) {
+            ColumnValueIndex valueIndex = column.getValueIndex(project);
+            int[] candidates = literal == null ? null : valueIndex.getTextIndex().getCandidates(literal);
+            filter.useValueIndex(valueIndex, candidates);
+        }
+        return filter;
+    }
+    
+    /**
+     * @return whether values whose lowercase forms contain the given lowercased query
+     *         also do once lowercased character by character, as the text index has them
+     */
+    static protected boolean isSimplyLowercased(String query) {
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.toLowerCase(c) != c ||
+                c == '\u03C3' || c == '\u03C2' || // sigma lowercases differently at word ends
+                c == '\u0131' || c == '\u0307') { // dotless i and dot above vary by locale
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Find text that anything matching the given regular expression must contain, ignoring
+     * case. Only expressions without groups or alternatives are looked into.
+     * 
+     * @return the longest such text, or null if none was found
+     */
+    static protected String getRequiredLiteral(String regex) {
+        if (regex.indexOf('(') >= 0 || regex.indexOf('|') >= 0) {
+            return null;
+        }
+        
+        String best = "";
+        StringBuffer run = new StringBuffer();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i >= regex.length()) {
+                    return null;
+                }
+                c = regex.charAt(i);
+                if (!Character.isLetterOrDigit(c)) {
+                    run.append(c); // escaped punctuation stands for itself
+                    continue;
+                } else if ("dDsSwWbBAzZG".indexOf(c) < 0) {
+                    return null; // escapes with arguments, quotes or back references
+                }
+            } else if (c == '[') {
+                // skip over the character class
+                int j = i + 1;
+                if (j < regex.length() && regex.charAt(j) == '^') {
+                    j++;
+                }
+                if (j < regex.length() && regex.charAt(j) == ']') {
+                    j++;
+                }
+                while (j < regex.length() && regex.charAt(j) != ']') {
+                    if (regex.charAt(j) == '[') {
+                        return null; // nested classes
+                    }
+                    j += regex.charAt(j) == '\\' ? 2 : 1;
+                }
+                if (j >= regex.length()) {
+                    return null;
+                }
+                i = j;
+            } else if (c == '*' || c == '?' || c == '{') {
+                // the preceding character is optional
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                if (c == '{') {
+                    int j = regex.indexOf('}', i);
+                    if (j < 0) {
+                        return null;
+                    }
+                    i = j;
+                }
+            } else if (".^$+".indexOf(c) < 0) {
+                run.append(c);
+                continue;
+            }
+            
+            if (run.length() > best.length()) {
+                best = run.toString();
+            }
+            run.setLength(0);
+        }
+        if (run.length() > best.length()) {
+            best = run.toString();
+        }
+        return best.length() > 0 ? best : null;
     }
 
     @Override
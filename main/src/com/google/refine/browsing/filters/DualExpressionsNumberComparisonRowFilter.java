@@ -55,6 +55,8 @@ abstract public class DualExpressionsNumberComparisonRowFilter implements RowFil
     final protected Evaluable  _y_evaluable;
     final protected String     _y_columnName;
     final protected int        _y_cellIndex;
+    
+    final protected ThreadLocal<Properties> _threadBindings = new ThreadLocal<Properties>();
         
     public DualExpressionsNumberComparisonRowFilter (
         Evaluable x_evaluable,
@@ -75,12 +77,12 @@ abstract public class DualExpressionsNumberComparisonRowFilter implements RowFil
     @Override
     public boolean filterRow(Project project, int rowIndex, Row row) {
         Cell x_cell = _x_cellIndex < 0 ? null : row.getCell(_x_cellIndex);
-        Properties x_bindings = ExpressionUtils.createBindings(project);
+        Properties x_bindings = ExpressionUtils.getThreadBindings(_threadBindings, project);
         ExpressionUtils.bind(x_bindings, row, rowIndex, _x_columnName, x_cell);
         Object x_value = _x_evaluable.evaluate(x_bindings);
         
         Cell y_cell = _y_cellIndex < 0 ? null : row.getCell(_y_cellIndex);
-        Properties y_bindings = ExpressionUtils.createBindings(project);
+        Properties y_bindings = x_bindings;
         ExpressionUtils.bind(y_bindings, row, rowIndex, _y_columnName, y_cell);
         Object y_value = _y_evaluable.evaluate(y_bindings);
 
@@ -43,6 +43,7 @@ import com.google.refine.browsing.RowFilter;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Cell;
+import com.google.refine.model.ColumnValueIndex;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
@@ -64,6 +65,17 @@ public class ExpressionEqualRowFilter implements RowFilter {
     final protected boolean         _selectError;
     final protected boolean         _invert;
     
+    final protected ThreadLocal<Properties> _threadBindings = new ThreadLocal<Properties>();
+    
+    /*
+     * If the expression just reads the cell's value, then rows can be matched
+     * by their value ids in the column's index rather than by evaluation. Ids
+     * shared by values of different types are still matched by evaluation.
+     */
+    final protected ColumnValueIndex _valueIndex;
+    final protected boolean[]        _matchedValueIds;
+    final protected boolean[]        _mixedValueIds;
+    
     public ExpressionEqualRowFilter(
         Evaluable evaluable,
         String columnName,
@@ -80,10 +92,46 @@ public class ExpressionEqualRowFilter implements RowFilter {
         _selectBlank = selectBlank;
         _selectError = selectError;
         _invert = invert;
+        _valueIndex = null;
+        _matchedValueIds = null;
+        _mixedValueIds = null;
+    }
+    
+    public ExpressionEqualRowFilter(
+        Evaluable evaluable,
+        String columnName,
+        int cellIndex, 
+        ColumnValueIndex valueIndex,
+        Object[] matches, 
+        boolean selectBlank, 
+        boolean selectError,
+        boolean invert
+    ) {
+        _evaluable = evaluable;
+        _columnName = columnName;
+        _cellIndex = cellIndex;
+        _matches = matches;
+        _selectBlank = selectBlank;
+        _selectError = selectError;
+        _invert = invert;
+        _valueIndex = valueIndex;
+        
+        _matchedValueIds = new boolean[valueIndex.getValueCount()];
+        _mixedValueIds = new boolean[_matchedValueIds.length];
+        for (int i = 0; i < _matchedValueIds.length; i++) {
+            _matchedValueIds[i] = testValue(valueIndex.getValue(i));
+            _mixedValueIds[i] = valueIndex.isMixed(i);
+        }
     }
 
     @Override
     public boolean filterRow(Project project, int rowIndex, Row row) {
+        if (_valueIndex != null && rowIndex < _valueIndex.getRowCount()) {
+            int valueId = _valueIndex.getValueId(rowIndex);
+            if (!isMixed(valueId)) {
+                return _invert != testValueId(valueId);
+            }
+        }
         return _invert ?
                 internalInvertedFilterRow(project, rowIndex, row) :
                 internalFilterRow(project, rowIndex, row);
@@ -92,7 +140,7 @@ public class ExpressionEqualRowFilter implements RowFilter {
     public boolean internalFilterRow(Project project, int rowIndex, Row row) {
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = ExpressionUtils.getThreadBindings(_threadBindings, project);
         ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
         
         Object value = _evaluable.evaluate(bindings);
@@ -135,7 +183,7 @@ public class ExpressionEqualRowFilter implements RowFilter {
     public boolean internalInvertedFilterRow(Project project, int rowIndex, Row row) {
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = ExpressionUtils.getThreadBindings(_threadBindings, project);
         ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
         
         Object value = _evaluable.evaluate(bindings);
@@ -175,6 +223,28 @@ public class ExpressionEqualRowFilter implements RowFilter {
         return !testValue(value);
     }
     
+    protected boolean isMixed(int valueId) {
+        if (valueId < 0) {
+            return false;
+        } else if (valueId < _mixedValueIds.length) {
+            return _mixedValueIds[valueId];
+        } else {
+            return _valueIndex.isMixed(valueId);
+        }
+    }
+    
+    protected boolean testValueId(int valueId) {
+        if (valueId == ColumnValueIndex.BLANK) {
+            return _selectBlank;
+        } else if (valueId == ColumnValueIndex.ERROR) {
+            return _selectError;
+        } else if (valueId < _matchedValueIds.length) {
+            return _matchedValueIds[valueId];
+        } else {
+            return testValue(_valueIndex.getValue(valueId));
+        }
+    }
+    
     protected boolean testValue(Object v) {
         if (ExpressionUtils.isError(v)) {
             return _selectError;
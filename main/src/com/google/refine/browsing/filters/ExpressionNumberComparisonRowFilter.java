@@ -57,6 +57,8 @@ abstract public class ExpressionNumberComparisonRowFilter implements RowFilter {
     final protected boolean _selectNonNumeric;
     final protected boolean _selectBlank;
     final protected boolean _selectError;
+    
+    final protected ThreadLocal<Properties> _threadBindings = new ThreadLocal<Properties>();
 
     public ExpressionNumberComparisonRowFilter(
             RowEvaluable rowEvaluable,
@@ -74,7 +76,7 @@ abstract public class ExpressionNumberComparisonRowFilter implements RowFilter {
 
     @Override
     public boolean filterRow(Project project, int rowIndex, Row row) {
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = ExpressionUtils.getThreadBindings(_threadBindings, project);
         
         Object value = _rowEvaluable.eval(project, rowIndex, row, bindings);
         if (value != null) {
@@ -43,6 +43,7 @@ import com.google.refine.browsing.RowFilter;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Cell;
+import com.google.refine.model.ColumnValueIndex;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
@@ -55,20 +56,63 @@ abstract public class ExpressionStringComparisonRowFilter implements RowFilter {
     final protected String    _columnName;
     final protected int       _cellIndex;
     
+    final protected ThreadLocal<Properties> _threadBindings = new ThreadLocal<Properties>();
+    
+    /*
+     * If the expression just reads the cell's value, then rows can be matched
+     * by their value ids in the column's index, checking each distinct value once.
+     */
+    protected ColumnValueIndex _valueIndex;
+    protected boolean[]        _matchedValueIds;
+    
     public ExpressionStringComparisonRowFilter(Evaluable evaluable, String columnName, int cellIndex) {
         _evaluable = evaluable;
         _columnName = columnName;
         _cellIndex = cellIndex;
     }
+    
+    /**
+     * Match rows by their value ids in the given index from now on. Only the given candidate
+     * values are checked, the others being known not to match, or all values if candidates
+     * is null. The expression must just read the cell's value.
+     */
+    public void useValueIndex(ColumnValueIndex valueIndex, int[] candidates) {
+        boolean[] matched = new boolean[valueIndex.getValueCount()];
+        if (candidates == null) {
+            for (int i = 0; i < matched.length; i++) {
+                matched[i] = checkObject(valueIndex.getValue(i));
+            }
+        } else {
+            for (int id : candidates) {
+                if (id < matched.length) {
+                    matched[id] = checkObject(valueIndex.getValue(id));
+                }
+            }
+        }
+        
+        _matchedValueIds = matched;
+        _valueIndex = valueIndex;
+    }
 
     @Override
     public boolean filterRow(Project project, int rowIndex, Row row) {
+        if (_valueIndex != null && rowIndex < _valueIndex.getRowCount()) {
+            int id = _valueIndex.getValueId(rowIndex);
+            if (id >= 0 && id < _matchedValueIds.length) {
+                return _matchedValueIds[id];
+            }
+            // blanks and errors are rare enough to be evaluated
+        }
+        
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = ExpressionUtils.getThreadBindings(_threadBindings, project);
         ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
         
-        Object value = _evaluable.evaluate(bindings);
+        return checkObject(_evaluable.evaluate(bindings));
+    }
+    
+    protected boolean checkObject(Object value) {
         if (value != null) {
             if (value.getClass().isArray()) {
                 Object[] a = (Object[]) value;
@@ -0,0 +1,162 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.browsing.util;
+
+import com.google.refine.browsing.DecoratedValue;
+import com.google.refine.browsing.ParallelRowVisitor;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.model.ColumnValueIndex;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.Row;
+
+/**
+ * Group rows or records into facet choices by their cells' values, as given by a column's
+ * value index, instead of evaluating the "value" expression on each row. Choices are only
+ * created once all rows have been counted, in end().
+ */
+public class ColumnValueIndexGrouper extends ExpressionNominalValueGrouper {
+    final protected ColumnValueIndex _valueIndex;
+    
+    protected int[] _counts;
+    protected int[] _latestIndices; // of the last row or record counted for each value
+    
+    public ColumnValueIndexGrouper(Evaluable evaluable, String columnName, int cellIndex, ColumnValueIndex valueIndex) {
+        super(evaluable, columnName, cellIndex);
+        _valueIndex = valueIndex;
+        
+        int valueCount = valueIndex.getValueCount();
+        _counts = new int[valueCount];
+        _latestIndices = new int[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            _latestIndices[i] = -1;
+        }
+    }
+    
+    @Override
+    public ParallelRowVisitor fork() {
+        return new ColumnValueIndexGrouper(_evaluable, _columnName, _cellIndex, _valueIndex);
+    }
+    
+    @Override
+    public void merge(ParallelRowVisitor partial) {
+        ColumnValueIndexGrouper grouper = (ColumnValueIndexGrouper) partial;
+        ensureCapacity(grouper._counts.length);
+        for (int i = 0; i < grouper._counts.length; i++) {
+            _counts[i] += grouper._counts[i];
+            _latestIndices[i] = Math.max(_latestIndices[i], grouper._latestIndices[i]);
+        }
+        blankCount += grouper.blankCount;
+        errorCount += grouper.errorCount;
+    }
+    
+    @Override
+    public boolean visit(Project project, int rowIndex, Row row) {
+        int valueId = _valueIndex.getValueId(rowIndex);
+        if (valueId == ColumnValueIndex.BLANK) {
+            blankCount++;
+        } else if (valueId == ColumnValueIndex.ERROR) {
+            errorCount++;
+        } else {
+            count(valueId, rowIndex);
+        }
+        return false;
+    }
+    
+    @Override
+    public boolean visit(Project project, Record record) {
+        hasError = false;
+        hasBlank = false;
+        
+        for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
+            int valueId = _valueIndex.getValueId(r);
+            if (valueId == ColumnValueIndex.BLANK) {
+                hasBlank = true;
+            } else if (valueId == ColumnValueIndex.ERROR) {
+                hasError = true;
+            } else {
+                count(valueId, record.recordIndex);
+            }
+        }
+        
+        if (hasError) {
+            errorCount++;
+        }
+        if (hasBlank) {
+            blankCount++;
+        }
+        return false;
+    }
+    
+    @Override
+    public void end(Project project) {
+        for (int i = 0; i < _counts.length; i++) {
+            if (_counts[i] > 0) {
+                Object value = _valueIndex.getValue(i);
+                String valueString = value.toString();
+                
+                IndexedNominalFacetChoice choice = new IndexedNominalFacetChoice(
+                    new DecoratedValue(value, valueString), _latestIndices[i]);
+                choice.count = _counts[i];
+                
+                choices.put(valueString, choice);
+            }
+        }
+    }
+    
+    protected void count(int valueId, int index) {
+        ensureCapacity(valueId + 1);
+        if (_latestIndices[valueId] < index) {
+            _latestIndices[valueId] = index;
+            _counts[valueId]++;
+        }
+    }
+    
+    /*
+     * The index's dictionary can grow if cells get edited while we count.
+     */
+    protected void ensureCapacity(int valueCount) {
+        if (valueCount > _counts.length) {
+            int[] counts = new int[valueCount];
+            int[] latestIndices = new int[valueCount];
+            System.arraycopy(_counts, 0, counts, 0, _counts.length);
+            System.arraycopy(_latestIndices, 0, latestIndices, 0, _latestIndices.length);
+            for (int i = _latestIndices.length; i < valueCount; i++) {
+                latestIndices[i] = -1;
+            }
+            _counts = counts;
+            _latestIndices = latestIndices;
+        }
+    }
+}
@@ -44,7 +44,8 @@ import com.google.refine.model.Row;
 
 /**
  * Encapsulate logic for visiting rows that match all give row filters. Also visit
- * context rows and dependent rows if configured so.
+ * context rows and dependent rows if configured so. Visitors that can be forked and merged
+ * get the rows scanned in parallel.
  */
 public class ConjunctiveFilteredRows implements FilteredRows {
     final protected List<RowFilter> _rowFilters = new LinkedList<RowFilter>();
@@ -55,25 +56,12 @@ public class ConjunctiveFilteredRows implements FilteredRows {
     
     @Override
     public void accept(Project project, RowVisitor visitor) {
-        try {
-            visitor.start(project);
-
-            int c = project.rows.size();
-            for (int rowIndex = 0; rowIndex < c; rowIndex++) {
-                Row row = project.rows.get(rowIndex);
-                if (matchRow(project, rowIndex, row)) {
-                    if (visitRow(project, visitor, rowIndex, row)) {
-                        break;
-                    }
-                }
+        RowScanner.accept(project, visitor, new RowFilter() {
+            @Override
+            public boolean filterRow(Project project, int rowIndex, Row row) {
+                return matchRow(project, rowIndex, row);
             }
-        } finally {
-            visitor.end(project);
-        }
-    }
-    
-    protected boolean visitRow(Project project, RowVisitor visitor, int rowIndex, Row row) {
-        return visitor.visit(project, rowIndex, row);
+        });
     }
     
     protected boolean matchRow(Project project, int rowIndex, Row row) {
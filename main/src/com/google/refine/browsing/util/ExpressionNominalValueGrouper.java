@@ -41,8 +41,8 @@ import java.util.Map;
 import java.util.Properties;
 
 import com.google.refine.browsing.DecoratedValue;
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.browsing.facets.NominalFacetChoice;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
@@ -55,7 +55,7 @@ import com.google.refine.model.Row;
  * Visit matched rows or records and group them into facet choices based on the values computed
  * from a given expression.
  */
-public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor {
+public class ExpressionNominalValueGrouper implements ParallelRowVisitor, RecordVisitor {
     static public class IndexedNominalFacetChoice extends NominalFacetChoice {
         int _latestIndex;
 
@@ -84,6 +84,7 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
      */
     protected boolean hasBlank;
     protected boolean hasError;
+    protected Properties _bindings; // re-bound to each row visited
 
     public ExpressionNominalValueGrouper(Evaluable evaluable, String columnName, int cellIndex) {
         _evaluable = evaluable;
@@ -101,12 +102,35 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         // nothing to do
     }
 
+    @Override
+    public ParallelRowVisitor fork() {
+        return new ExpressionNominalValueGrouper(_evaluable, _columnName, _cellIndex);
+    }
+
+    @Override
+    public void merge(ParallelRowVisitor partial) {
+        ExpressionNominalValueGrouper grouper = (ExpressionNominalValueGrouper) partial;
+        for (Map.Entry<Object, IndexedNominalFacetChoice> entry : grouper.choices.entrySet()) {
+            IndexedNominalFacetChoice partialChoice = entry.getValue();
+            IndexedNominalFacetChoice facetChoice = choices.get(entry.getKey());
+            if (facetChoice != null) {
+                // partial results come from disjoint row ranges, so their counts simply add up
+                facetChoice.count += partialChoice.count;
+                facetChoice._latestIndex = Math.max(facetChoice._latestIndex, partialChoice._latestIndex);
+            } else {
+                choices.put(entry.getKey(), partialChoice);
+            }
+        }
+        blankCount += grouper.blankCount;
+        errorCount += grouper.errorCount;
+    }
+
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
         hasError = false;
         hasBlank = false;
 
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
 
         visitRow(project, rowIndex, row, bindings, rowIndex);
 
@@ -125,7 +149,7 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         hasError = false;
         hasBlank = false;
 
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
 
         for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
             Row row = project.rows.get(r);
@@ -142,6 +166,13 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         return false;
     }
 
+    protected Properties getBindings(Project project) {
+        if (_bindings == null) {
+            _bindings = ExpressionUtils.createBindings(project);
+        }
+        return _bindings;
+    }
+
     protected void visitRow(Project project, int rowIndex, Row row, Properties bindings, int index) {
         Object value = evalRow(project, rowIndex, row, bindings);
         if (value != null) {
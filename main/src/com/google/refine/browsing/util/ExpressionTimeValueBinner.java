@@ -38,8 +38,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Properties;
 
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
@@ -49,7 +49,7 @@ import com.google.refine.model.Row;
  * Visit matched rows or records and slot them into bins based on the date computed
  * from a given expression.
  */
-public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
+public class ExpressionTimeValueBinner implements ParallelRowVisitor, RecordVisitor {
 
     /*
      * Configuration
@@ -73,6 +73,7 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
     protected boolean hasBlank;
     protected boolean hasTime;
     protected boolean hasNonTime;
+    protected Properties _bindings; // re-bound to each row visited
     
     public ExpressionTimeValueBinner(RowEvaluable rowEvaluable, TimeBinIndex index) {
         _rowEvaluable = rowEvaluable;
@@ -90,11 +91,28 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
         // nothing to do
     }
     
+    @Override
+    public ParallelRowVisitor fork() {
+        return new ExpressionTimeValueBinner(_rowEvaluable, _index);
+    }
+    
+    @Override
+    public void merge(ParallelRowVisitor partial) {
+        ExpressionTimeValueBinner binner = (ExpressionTimeValueBinner) partial;
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += binner.bins[i];
+        }
+        timeCount += binner.timeCount;
+        nonTimeCount += binner.nonTimeCount;
+        blankCount += binner.blankCount;
+        errorCount += binner.errorCount;
+    }
+    
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
         resetFlags();
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
         processRow(project, rowIndex, row, bindings);
         
         updateCounts();
@@ -106,7 +124,7 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
     public boolean visit(Project project, Record record) {
         resetFlags();
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
         for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
             processRow(project, r, project.rows.get(r), bindings);
         }
@@ -116,6 +134,13 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
         return false;
     }
     
+    protected Properties getBindings(Project project) {
+        if (_bindings == null) {
+            _bindings = ExpressionUtils.createBindings(project);
+        }
+        return _bindings;
+    }
+    
     protected void resetFlags() {
         hasError = false;
         hasBlank = false;
@@ -0,0 +1,100 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.browsing.util;
+
+import java.util.List;
+
+import com.google.refine.browsing.FilteredRecords;
+import com.google.refine.browsing.RecordFilter;
+import com.google.refine.browsing.RecordVisitor;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+
+/**
+ * Record-based counterpart of RowFilterMatches: evaluate all record filters once per record,
+ * then serve each facet the records that match all filters but its own.
+ */
+public class RecordFilterMatches {
+    final protected int[] _failedFilters;
+    
+    public RecordFilterMatches(Project project, List<RecordFilter> recordFilters) {
+        RecordFilter[] filters = recordFilters.toArray(new RecordFilter[recordFilters.size()]);
+        
+        int c = project.recordModel.getRecordCount();
+        _failedFilters = new int[c];
+        for (int r = 0; r < c; r++) {
+            Record record = project.recordModel.getRecord(r);
+            
+            int failed = RowFilterMatches.MATCHES_ALL;
+            for (int f = 0; f < filters.length; f++) {
+                if (!filters[f].filterRecord(project, record)) {
+                    if (failed == RowFilterMatches.MATCHES_ALL) {
+                        failed = f;
+                    } else {
+                        failed = RowFilterMatches.MATCHES_FEW;
+                        break;
+                    }
+                }
+            }
+            _failedFilters[r] = failed;
+        }
+    }
+    
+    /**
+     * @param except index of the filter to ignore, or RowFilterMatches.MATCHES_ALL to require all filters
+     * @return the records that match all filters but the given one
+     */
+    public FilteredRecords getFilteredRecords(final int except) {
+        return new FilteredRecords() {
+            @Override
+            public void accept(Project project, RecordVisitor visitor) {
+                try {
+                    visitor.start(project);
+                    
+                    int c = Math.min(_failedFilters.length, project.recordModel.getRecordCount());
+                    for (int r = 0; r < c; r++) {
+                        int failed = _failedFilters[r];
+                        if (failed == RowFilterMatches.MATCHES_ALL || failed == except) {
+                            if (visitor.visit(project, project.recordModel.getRecord(r))) {
+                                return;
+                            }
+                        }
+                    }
+                } finally {
+                    visitor.end(project);
+                }
+            }
+        };
+    }
+}
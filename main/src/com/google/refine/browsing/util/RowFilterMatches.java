@@ -0,0 +1,139 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.browsing.util;
+
+import java.util.List;
+
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.ParallelRowVisitor;
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Evaluate a list of row filters over all rows of a project in a single pass, and remember
+ * for each row whether it passes all the filters, fails exactly one of them (and which one),
+ * or fails more than one. That is enough to tell which rows each facet should see when
+ * its choices are computed against all the other facets' constraints, without running the
+ * other facets' filters once again for every facet.
+ * 
+ * Evaluating the filters is the costly part, so large projects get it split into ranges of
+ * rows scanned concurrently by RowScanner; the filters keep their bindings per thread.
+ */
+public class RowFilterMatches {
+    final static public int MATCHES_ALL = -1;
+    final static public int MATCHES_FEW = -2;
+    
+    final protected int[] _failedFilters;
+    
+    public RowFilterMatches(Project project, List<RowFilter> rowFilters) {
+        _failedFilters = new int[project.rows.size()];
+        
+        RowScanner.accept(project, new MatchingRowVisitor(
+            rowFilters.toArray(new RowFilter[rowFilters.size()])), null);
+    }
+    
+    /**
+     * Records which filters each row it visits fails. Forks all write to the same array,
+     * each to the slice of rows it is given, so there is nothing to merge.
+     */
+    protected class MatchingRowVisitor implements ParallelRowVisitor {
+        final protected RowFilter[] filters;
+        
+        protected MatchingRowVisitor(RowFilter[] filters) {
+            this.filters = filters;
+        }
+        
+        @Override
+        public void start(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public void end(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            int failed = MATCHES_ALL;
+            for (int f = 0; f < filters.length; f++) {
+                if (!filters[f].filterRow(project, rowIndex, row)) {
+                    if (failed == MATCHES_ALL) {
+                        failed = f;
+                    } else {
+                        // No facet can see this row anymore, so don't bother evaluating the rest.
+                        failed = MATCHES_FEW;
+                        break;
+                    }
+                }
+            }
+            _failedFilters[rowIndex] = failed;
+            return false;
+        }
+        
+        @Override
+        public ParallelRowVisitor fork() {
+            return new MatchingRowVisitor(filters);
+        }
+        
+        @Override
+        public void merge(ParallelRowVisitor partial) {
+            // results are already in place
+        }
+    }
+    
+    /**
+     * @param except index of the filter to ignore, or MATCHES_ALL to require all filters
+     * @return the rows that match all filters but the given one
+     */
+    public FilteredRows getFilteredRows(final int except) {
+        return new FilteredRows() {
+            @Override
+            public void accept(Project project, RowVisitor visitor) {
+                RowScanner.accept(project, visitor, new RowFilter() {
+                    @Override
+                    public boolean filterRow(Project project, int rowIndex, Row row) {
+                        if (rowIndex >= _failedFilters.length) {
+                            return false;
+                        }
+                        int failed = _failedFilters[rowIndex];
+                        return failed == MATCHES_ALL || failed == except;
+                    }
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,197 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.browsing.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.refine.browsing.ParallelRowVisitor;
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Scan the rows of a project, optionally restricted to those matching a row filter, and feed
+ * them to a row visitor. If the visitor implements ParallelRowVisitor and the project is large
+ * enough, the rows are split into contiguous ranges that are scanned concurrently by forked
+ * visitors, whose results are then merged back in row order. Other visitors get a plain
+ * sequential scan, so their rows are still visited in order.
+ * 
+ * Scans started from within a parallel scan, like the one facetCount() runs while an
+ * expression gets evaluated, are always sequential: a pool thread waiting on tasks queued
+ * behind it could otherwise leave the pool with no thread to run them.
+ */
+public class RowScanner {
+    /**
+     * Ranges smaller than this aren't worth handing over to another thread.
+     */
+    static public int minRowsPerPartition = 20000;
+    
+    static final protected int s_parallelism = Math.max(1,
+            Integer.getInteger("refine.rowScanner.threads", Runtime.getRuntime().availableProcessors()));
+    
+    static protected ExecutorService s_executor;
+    
+    /**
+     * Set on the threads taking part in a parallel scan.
+     */
+    static final protected ThreadLocal<Boolean> s_scanning = new ThreadLocal<Boolean>();
+    
+    /**
+     * @param project
+     * @param visitor
+     * @param rowFilter rows to visit, or null to visit all rows
+     */
+    static public void accept(Project project, RowVisitor visitor, RowFilter rowFilter) {
+        try {
+            visitor.start(project);
+            
+            int c = project.rows.size();
+            int partitions = visitor instanceof ParallelRowVisitor && s_scanning.get() == null ? 
+                    Math.min(s_parallelism, c / Math.max(1, minRowsPerPartition)) : 1;
+            
+            if (partitions > 1) {
+                s_scanning.set(Boolean.TRUE);
+                try {
+                    scanInParallel(project, (ParallelRowVisitor) visitor, rowFilter, c, partitions);
+                } finally {
+                    s_scanning.remove();
+                }
+            } else {
+                scan(project, visitor, rowFilter, 0, c);
+            }
+        } finally {
+            visitor.end(project);
+        }
+    }
+    
+    /**
+     * Visit the rows in [fromRowIndex, toRowIndex) that match the given filter.
+     * 
+     * @return true if the visitor asked to stop
+     */
+    static public boolean scan(Project project, RowVisitor visitor, RowFilter rowFilter, int fromRowIndex, int toRowIndex) {
+        for (int rowIndex = fromRowIndex; rowIndex < toRowIndex; rowIndex++) {
+            Row row = project.rows.get(rowIndex);
+            if (rowFilter == null || rowFilter.filterRow(project, rowIndex, row)) {
+                if (visitor.visit(project, rowIndex, row)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    static protected void scanInParallel(
+        final Project project, 
+        ParallelRowVisitor visitor, 
+        final RowFilter rowFilter, 
+        int rowCount,
+        int partitions
+    ) {
+        ExecutorService executor = getExecutor();
+        
+        int partitionSize = (rowCount + partitions - 1) / partitions;
+        
+        List<ParallelRowVisitor> forks = new ArrayList<ParallelRowVisitor>(partitions - 1);
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(partitions - 1);
+        for (int p = 1; p < partitions; p++) {
+            final ParallelRowVisitor fork = visitor.fork();
+            final int from = p * partitionSize;
+            final int to = Math.min(rowCount, from + partitionSize);
+            
+            forks.add(fork);
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    s_scanning.set(Boolean.TRUE);
+                    try {
+                        return scan(project, fork, rowFilter, from, to);
+                    } finally {
+                        s_scanning.remove();
+                    }
+                }
+            }));
+        }
+        
+        // The calling thread takes the first range itself rather than sitting idle.
+        try {
+            scan(project, visitor, rowFilter, 0, Math.min(rowCount, partitionSize));
+        } catch (RuntimeException e) {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        
+        for (int i = 0; i < forks.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while scanning rows", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            visitor.merge(forks.get(i));
+        }
+    }
+    
+    static synchronized protected ExecutorService getExecutor() {
+        if (s_executor == null) {
+            s_executor = Executors.newFixedThreadPool(s_parallelism, new ThreadFactory() {
+                int _count = 0;
+                
+                @Override
+                synchronized public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "row-scanner-" + (++_count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return s_executor;
+    }
+}
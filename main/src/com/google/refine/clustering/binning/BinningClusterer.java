@@ -52,7 +52,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.FilteredRows;
-import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.clustering.Clusterer;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
@@ -78,7 +78,7 @@ public class BinningClusterer extends Clusterer {
         _keyers.put("cologne-phonetic", new ColognePhoneticKeyer());
     }
 
-    class BinningRowVisitor implements RowVisitor {
+    class BinningRowVisitor implements ParallelRowVisitor {
 
         Keyer _keyer;
         Object[] _params;
@@ -111,6 +111,26 @@ public class BinningClusterer extends Clusterer {
             // nothing to do
         }
         
+        @Override
+        public ParallelRowVisitor fork() {
+            return new BinningRowVisitor(_keyer, _config);
+        }
+        
+        @Override
+        public void merge(ParallelRowVisitor partial) {
+            for (Entry<String,Map<String,Integer>> entry : ((BinningRowVisitor) partial)._map.entrySet()) {
+                Map<String,Integer> m = _map.get(entry.getKey());
+                if (m == null) {
+                    _map.put(entry.getKey(), entry.getValue());
+                } else {
+                    for (Entry<String,Integer> e : entry.getValue().entrySet()) {
+                        Integer count = m.get(e.getKey());
+                        m.put(e.getKey(), count == null ? e.getValue() : count + e.getValue());
+                    }
+                }
+            }
+        }
+        
         @Override
         public boolean visit(Project project, int rowIndex, Row row) {
             Cell cell = row.getCell(_colindex);
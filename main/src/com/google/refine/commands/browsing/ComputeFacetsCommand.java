@@ -52,9 +52,14 @@ public class ComputeFacetsCommand extends Command {
             Project project = getProject(request);
             Engine engine = getEngine(request, project);
             
-            engine.computeFacets();
-            
-            respondJSON(response, engine);
+            project.lock.lockRead();
+            try {
+                engine.computeFacets();
+                
+                respondJSON(response, engine);
+            } finally {
+                project.lock.unlockRead();
+            }
         } catch (Exception e) {
             respondException(response, e);
         }
@@ -56,6 +56,7 @@ public class LogExpressionCommand extends Command {
             
             ((TopList) project.getMetadata().getPreferenceStore().get("scripting.expressions"))
                 .add(expression);
+            project.getMetadata().setDirty(true);
 
             ((TopList) ProjectManager.singleton.getPreferenceStore().get("scripting.expressions"))
                 .add(expression);
@@ -49,8 +49,6 @@ import com.google.refine.history.HistoryEntry;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
-import com.google.refine.model.Recon.Judgment;
-import com.google.refine.model.ReconStats;
 import com.google.refine.model.changes.CellChange;
 import com.google.refine.model.changes.ReconChange;
 import com.google.refine.process.QuickHistoryEntryProcess;
@@ -130,30 +128,8 @@ public class ReconClearOneCellCommand extends Command {
                 throw new Exception("No such column");
             }
 
-            Judgment oldJudgment = cell.recon == null ? Judgment.None : cell.recon.judgment;
-
             newCell = new Cell(cell.value, null);
 
-            ReconStats stats = column.getReconStats();
-            if (stats == null) {
-                stats = ReconStats.create(_project, cellIndex);
-            } else {
-                int newChange = 0;
-                int matchChange = 0;
-
-                if (oldJudgment == Judgment.New) {
-                    newChange--;
-                }
-                if (oldJudgment == Judgment.Matched) {
-                    matchChange--;
-                }
-
-                stats = new ReconStats(
-                    stats.nonBlanks + 1,
-                    stats.newTopics + newChange,
-                    stats.matchedTopics + matchChange);
-            }
-
             String description =
                 "Clear recon data for single cell on row " + (rowIndex + 1) +
                 ", column " + column.getName() +
@@ -163,7 +139,7 @@ public class ReconClearOneCellCommand extends Command {
                 new CellChange(rowIndex, cellIndex, cell, newCell),
                 column.getName(),
                 column.getReconConfig(),
-                stats
+                null // worked out from the column's stats and the cell's old and new judgments
             );
 
             return new HistoryEntry(
@@ -52,7 +52,6 @@ import com.google.refine.model.Project;
 import com.google.refine.model.Recon;
 import com.google.refine.model.Recon.Judgment;
 import com.google.refine.model.ReconCandidate;
-import com.google.refine.model.ReconStats;
 import com.google.refine.model.changes.CellChange;
 import com.google.refine.model.changes.ReconChange;
 import com.google.refine.process.QuickHistoryEntryProcess;
@@ -166,8 +165,6 @@ public class ReconJudgeOneCellCommand extends Command {
                 throw new Exception("No such column");
             }
 
-            Judgment oldJudgment = cell.recon == null ? Judgment.None : cell.recon.judgment;
-
             newCell = new Cell(
                 cell.value,
                 cell.recon == null ? new Recon(historyEntryID, identifierSpace, schemaSpace) : cell.recon.dup(historyEntryID)
@@ -211,37 +208,11 @@ public class ReconJudgeOneCellCommand extends Command {
                     cellDescription;
             }
 
-            ReconStats stats = column.getReconStats();
-            if (stats == null) {
-                stats = ReconStats.create(_project, cellIndex);
-            } else {
-                int newChange = 0;
-                int matchChange = 0;
-
-                if (oldJudgment == Judgment.New) {
-                    newChange--;
-                }
-                if (oldJudgment == Judgment.Matched) {
-                    matchChange--;
-                }
-                if (newCell.recon.judgment == Judgment.New) {
-                    newChange++;
-                }
-                if (newCell.recon.judgment == Judgment.Matched) {
-                    matchChange++;
-                }
-
-                stats = new ReconStats(
-                    stats.nonBlanks,
-                    stats.newTopics + newChange,
-                    stats.matchedTopics + matchChange);
-            }
-
             Change change = new ReconChange(
                 new CellChange(rowIndex, cellIndex, cell, newCell),
                 column.getName(),
                 column.getReconConfig(),
-                stats
+                null // worked out from the column's stats and the cell's old and new judgments
             );
 
             return new HistoryEntry(
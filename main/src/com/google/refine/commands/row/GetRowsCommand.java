@@ -35,6 +35,7 @@ package com.google.refine.commands.row;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Properties;
 
 import javax.servlet.ServletException;
@@ -47,8 +48,6 @@ import org.json.JSONWriter;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.Engine.Mode;
-import com.google.refine.browsing.FilteredRecords;
-import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RecordVisitor;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.commands.Command;
@@ -57,6 +56,7 @@ import com.google.refine.importing.ImportingManager;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
 import com.google.refine.model.Row;
+import com.google.refine.sorting.BaseSorter;
 import com.google.refine.sorting.SortingRecordVisitor;
 import com.google.refine.sorting.SortingRowVisitor;
 import com.google.refine.util.ParsingUtilities;
@@ -94,95 +94,193 @@ public class GetRowsCommand extends Command {
                 project = getProject(request);
             }
             
-            Engine engine = getEngine(request, project);
-            String callback = request.getParameter("callback");
+            project.lock.lockRead();
+            try {
+                Engine engine = getEngine(request, project);
+                String callback = request.getParameter("callback");
             
-            int start = Math.min(project.rows.size(), Math.max(0, getIntegerParameter(request, "start", 0)));
-            int limit = Math.min(project.rows.size() - start, Math.max(0, getIntegerParameter(request, "limit", 20)));
+                int start = Math.min(project.rows.size(), Math.max(0, getIntegerParameter(request, "start", 0)));
+                int limit = Math.min(project.rows.size() - start, Math.max(0, getIntegerParameter(request, "limit", 20)));
             
-            Pool pool = new Pool();
-            Properties options = new Properties();
-            options.put("project", project);
-            options.put("reconCandidateOmitTypes", true);
-            options.put("pool", pool);
+                Pool pool = new Pool();
+                Properties options = new Properties();
+                options.put("project", project);
+                options.put("reconCandidateOmitTypes", true);
+                options.put("pool", pool);
             
-            response.setCharacterEncoding("UTF-8");
-            response.setHeader("Content-Type", callback == null ? "application/json" : "text/javascript");
+                response.setCharacterEncoding("UTF-8");
+                response.setHeader("Content-Type", callback == null ? "application/json" : "text/javascript");
             
-            PrintWriter writer = response.getWriter();
-            if (callback != null) {
-                writer.write(callback);
-                writer.write("(");
-            }
+                PrintWriter writer = response.getWriter();
+                if (callback != null) {
+                    writer.write(callback);
+                    writer.write("(");
+                }
             
-            JSONWriter jsonWriter = new JSONWriter(writer);
-            jsonWriter.object();
+                JSONWriter jsonWriter = new JSONWriter(writer);
+                jsonWriter.object();
             
-            RowWritingVisitor rwv = new RowWritingVisitor(start, limit, jsonWriter, options);
+                RowWritingVisitor rwv = new RowWritingVisitor(start, limit, jsonWriter, options);
             
-            JSONObject sortingJson = null;
-            try{
-                String json = request.getParameter("sorting");
-                sortingJson = (json == null) ? null : 
-                    ParsingUtilities.evaluateJsonStringToObject(json);
-            } catch (JSONException e) {
-            }
-
-            if (engine.getMode() == Mode.RowBased) {
-                FilteredRows filteredRows = engine.getAllFilteredRows();
-                RowVisitor visitor = rwv;
-                
+                String sortingString = request.getParameter("sorting");
+                JSONObject sortingJson = null;
+                try{
+                    sortingJson = (sortingString == null) ? null : 
+                        ParsingUtilities.evaluateJsonStringToObject(sortingString);
+                } catch (JSONException e) {
+                }
+            
+                boolean rowBased = engine.getMode() == Mode.RowBased;
+                BaseSorter sorter = null;
                 if (sortingJson != null) {
-                    SortingRowVisitor srv = new SortingRowVisitor(visitor);
-                    
-                    srv.initializeFromJSON(project, sortingJson);
-                    if (srv.hasCriteria()) {
-                        visitor = srv;
+                    sorter = rowBased ?
+                        new SortingRowVisitor(null) : new SortingRecordVisitor(null);
+                
+                    sorter.initializeFromJSON(project, sortingJson);
+                    if (!sorter.hasCriteria()) {
+                        sorter = null;
                     }
                 }
-                
-                jsonWriter.key("mode"); jsonWriter.value("row-based");
-                jsonWriter.key("rows"); jsonWriter.array();
-                filteredRows.accept(project, visitor);
-                jsonWriter.endArray();
-                jsonWriter.key("filtered"); jsonWriter.value(rwv.total);
-                jsonWriter.key("total"); jsonWriter.value(project.rows.size());
-            } else {
-                FilteredRecords filteredRecords = engine.getFilteredRecords();
-                RecordVisitor visitor = rwv;
-                
-                if (sortingJson != null) {
-                    SortingRecordVisitor srv = new SortingRecordVisitor(visitor);
-                    
-                    srv.initializeFromJSON(project, sortingJson);
-                    if (srv.hasCriteria()) {
-                        visitor = srv;
+            
+                // Preview projects of importing jobs change without going through their history,
+                // so only real projects can have their filtered and sorted indices cached.
+                String filterKey = importingJobID != null ? null :
+                    RowIndexCache.makeKey(project, engine.getMode().toString(), request.getParameter("engine"));
+            
+                int[] indices = getFilteredIndices(project, engine, filterKey);
+                int filtered = indices.length;
+                if (sorter != null) {
+                    indices = getSortedIndices(project, sorter, indices, start + limit,
+                        filterKey == null ? null : filterKey + "|" + sortingString);
+                }
+            
+                int end = Math.min(indices.length, start + limit);
+                if (rowBased) {
+                    jsonWriter.key("mode"); jsonWriter.value("row-based");
+                    jsonWriter.key("rows"); jsonWriter.array();
+                    for (int i = start; i < end; i++) {
+                        rwv.internalVisit(project, indices[i], project.rows.get(indices[i]));
+                    }
+                    jsonWriter.endArray();
+                    jsonWriter.key("filtered"); jsonWriter.value(filtered);
+                    jsonWriter.key("total"); jsonWriter.value(project.rows.size());
+                } else {
+                    jsonWriter.key("mode"); jsonWriter.value("record-based");
+                    jsonWriter.key("rows"); jsonWriter.array();
+                    for (int i = start; i < end; i++) {
+                        rwv.internalVisit(project, project.recordModel.getRecord(indices[i]));
                     }
+                    jsonWriter.endArray();
+                    jsonWriter.key("filtered"); jsonWriter.value(filtered);
+                    jsonWriter.key("total"); jsonWriter.value(project.recordModel.getRecordCount());
                 }
-                
-                jsonWriter.key("mode"); jsonWriter.value("record-based");
-                jsonWriter.key("rows"); jsonWriter.array();
-                filteredRecords.accept(project, visitor);
-                jsonWriter.endArray();
-                jsonWriter.key("filtered"); jsonWriter.value(rwv.total);
-                jsonWriter.key("total"); jsonWriter.value(project.recordModel.getRecordCount());
-            }
             
             
-            jsonWriter.key("start"); jsonWriter.value(start);
-            jsonWriter.key("limit"); jsonWriter.value(limit);
-            jsonWriter.key("pool"); pool.write(jsonWriter, options);
+                jsonWriter.key("start"); jsonWriter.value(start);
+                jsonWriter.key("limit"); jsonWriter.value(limit);
+                jsonWriter.key("pool"); pool.write(jsonWriter, options);
             
-            jsonWriter.endObject();
+                jsonWriter.endObject();
             
-            if (callback != null) {
-                writer.write(")");
+                if (callback != null) {
+                    writer.write(")");
+                }
+            } finally {
+                project.lock.unlockRead();
             }
         } catch (Exception e) {
             respondException(response, e);
         }
     }
     
+    /**
+     * @return the indices of the rows or records passing the engine's facets, in project order
+     */
+    static protected int[] getFilteredIndices(Project project, Engine engine, String key) {
+        RowIndexCache.Entry entry = key == null ? null : RowIndexCache.get(key);
+        if (entry != null) {
+            return entry.indices;
+        }
+        
+        IndexCollectingVisitor visitor = new IndexCollectingVisitor();
+        if (engine.getMode() == Mode.RowBased) {
+            engine.getAllFilteredRows().accept(project, visitor);
+        } else {
+            engine.getFilteredRecords().accept(project, visitor);
+        }
+        
+        int[] indices = visitor.getIndices();
+        if (key != null) {
+            RowIndexCache.put(key, new RowIndexCache.Entry(indices, true));
+        }
+        return indices;
+    }
+    
+    /**
+     * Returns the given indices in sorted order, or at least the first count of them. The first
+     * request for a sort order only selects the rows of its page, which is much cheaper than
+     * sorting them all; once the same order is requested again, all rows get sorted and cached.
+     */
+    static protected int[] getSortedIndices(Project project, BaseSorter sorter, int[] indices, int count, String key) {
+        RowIndexCache.Entry entry = key == null ? null : RowIndexCache.get(key);
+        if (entry != null && (entry.complete || entry.indices.length >= count)) {
+            return entry.indices;
+        }
+        
+        if (entry == null && count < indices.length / 2) {
+            int[] first = sorter.selectFirstIndices(project, indices, count);
+            if (key != null) {
+                RowIndexCache.put(key, new RowIndexCache.Entry(first, false));
+            }
+            return first;
+        }
+        
+        int[] sorted = indices.clone();
+        sorter.sortIndices(project, sorted);
+        if (key != null) {
+            RowIndexCache.put(key, new RowIndexCache.Entry(sorted, true));
+        }
+        return sorted;
+    }
+    
+    static protected class IndexCollectingVisitor implements RowVisitor, RecordVisitor {
+        protected int[] indices = new int[256];
+        protected int count;
+        
+        @Override
+        public void start(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public void end(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            add(rowIndex);
+            return false;
+        }
+        
+        @Override
+        public boolean visit(Project project, Record record) {
+            add(record.recordIndex);
+            return false;
+        }
+        
+        protected void add(int index) {
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, count * 2);
+            }
+            indices[count++] = index;
+        }
+        
+        public int[] getIndices() {
+            return Arrays.copyOf(indices, count);
+        }
+    }
+    
     static protected class RowWritingVisitor implements RowVisitor, RecordVisitor {
         final int           start;
         final int           limit;
@@ -237,7 +335,7 @@ public class GetRowsCommand extends Command {
             return false;
         }
         
-        protected boolean internalVisit(Project project, Record record) {
+        public boolean internalVisit(Project project, Record record) {
             options.put("recordIndex", record.recordIndex);
             
             for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
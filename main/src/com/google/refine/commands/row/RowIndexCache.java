@@ -0,0 +1,115 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.commands.row;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.refine.history.History;
+import com.google.refine.model.Project;
+
+/**
+ * Remembers which rows or records passed the facets of recent browsing requests, and in which
+ * order they sort, so that paging through a large filtered and sorted project doesn't have to
+ * re-evaluate the facets and re-sort everything for every page.
+ *
+ * Entries are keyed on the number of changes made so far in all projects, not just the one
+ * browsed, as facets can look into other projects through cross(). Any change anywhere thus makes
+ * them unreachable; the least recently used ones then fall out of the cache.
+ */
+public class RowIndexCache {
+    static public int maxEntries = 16;
+
+    static public class Entry {
+        /**
+         * Row or record indices, either all of them or only the first ones if not complete.
+         */
+        final public int[] indices;
+        final public boolean complete;
+
+        public Entry(int[] indices, boolean complete) {
+            this.indices = indices;
+            this.complete = complete;
+        }
+    }
+
+    static final protected Map<String, Entry> s_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 7016545453240312318L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    static protected long s_hits;
+    static protected long s_misses;
+
+    /**
+     * @return a key identifying the given project, as of the latest change to any project, plus the given parts
+     */
+    static public String makeKey(Project project, String... parts) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(project.id).append('|').append(History.getChangeCount()).append('|').append(project.rows.size());
+        for (String part : parts) {
+            sb.append('|').append(part);
+        }
+        return sb.toString();
+    }
+
+    static synchronized public Entry get(String key) {
+        Entry entry = s_entries.get(key);
+        if (entry != null) {
+            s_hits++;
+        } else {
+            s_misses++;
+        }
+        return entry;
+    }
+
+    static synchronized public void put(String key, Entry entry) {
+        s_entries.put(key, entry);
+    }
+
+    static synchronized public void clear() {
+        s_entries.clear();
+    }
+
+    static synchronized public long getHits() {
+        return s_hits;
+    }
+
+    static synchronized public long getMisses() {
+        return s_misses;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.commands.workspace;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.commands.Command;
+import com.google.refine.model.ColumnTextIndex;
+import com.google.refine.model.ProjectLock;
+
+public class GetProjectCacheStatsCommand extends Command {
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        
+        try {
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Type", "application/json");
+            
+            ProjectManager pm = ProjectManager.singleton;
+            
+            JSONWriter writer = new JSONWriter(response.getWriter());
+            writer.object();
+            writer.key("budget"); writer.value(ProjectManager.s_projectCacheBudget);
+            writer.key("size"); writer.value(pm.getProjectCacheSize());
+            writer.key("projects"); writer.value(pm.getProjectCacheCount());
+            writer.key("hits"); writer.value(pm.getProjectCacheHits());
+            writer.key("misses"); writer.value(pm.getProjectCacheMisses());
+            writer.key("evictions"); writer.value(pm.getProjectCacheEvictions());
+            writer.key("textIndexSize"); writer.value(pm.getTextIndexSize());
+            writer.key("textIndexMaxSize"); writer.value(ColumnTextIndex.maxSize);
+            writer.key("readLockWaits"); ProjectLock.readStats.write(writer);
+            writer.key("writeLockWaits"); ProjectLock.writeStats.write(writer);
+            writer.endObject();
+        } catch (JSONException e) {
+            respondException(response, e);
+        }
+    }
+}
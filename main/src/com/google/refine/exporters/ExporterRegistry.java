@@ -45,7 +45,7 @@ abstract public class ExporterRegistry {
         s_formatToExporter.put("*sv", new CsvExporter());
         
         s_formatToExporter.put("xls", new XlsExporter(false));
-        s_formatToExporter.put("xlsx", new XlsExporter(true));
+        s_formatToExporter.put("xlsx", new XlsxStreamingExporter());
         
         s_formatToExporter.put("ods", new OdsExporter());
         
@@ -0,0 +1,375 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.exporters;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.json.JSONObject;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.browsing.Engine;
+import com.google.refine.model.Project;
+import com.google.refine.util.JSONUtilities;
+
+/**
+ * Writes .xlsx files by streaming SpreadsheetML straight into the zip as rows come,
+ * so that memory use doesn't grow with the number of rows. Sheets roll over at the
+ * format's row limit, repeating the header row. Strings are written inline unless the
+ * "sharedStrings" option is set, in which case distinct strings are collected into a
+ * shared string table, which makes smaller files but takes memory for every distinct
+ * string.
+ */
+public class XlsxStreamingExporter implements StreamExporter {
+    static public int maxRowsPerSheet = 1048576;
+    static final protected int s_maxColumns = 16384;
+    static final protected int s_maxTextLength = 32767;
+    
+    static final protected String s_mainNamespace = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    static final protected String s_relNamespace = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    static final protected String s_packageRelNamespace = "http://schemas.openxmlformats.org/package/2006/relationships";
+    
+    @Override
+    public String getContentType() {
+        return "application/xlsx";
+    }
+    
+    @Override
+    public void export(final Project project, Properties params, Engine engine,
+            OutputStream outputStream) throws IOException {
+        
+        final ZipOutputStream zos = new ZipOutputStream(outputStream);
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(zos, "UTF-8"));
+        
+        final SheetWriter serializer = new SheetWriter(zos, writer,
+            ProjectManager.singleton.getProjectMetadata(project.id).getName());
+        
+        CustomizableTabularExporterUtilities.exportRows(
+                project, engine, params, serializer);
+        
+        if (serializer.error != null) {
+            throw serializer.error;
+        }
+        
+        serializer.writeWorkbook();
+        writer.flush();
+        zos.finish();
+        outputStream.flush();
+    }
+    
+    static protected class SheetWriter implements TabularSerializer {
+        final ZipOutputStream zos;
+        final Writer writer;
+        final String baseSheetName;
+        
+        IOException error;
+        
+        int sheetCount = 0;
+        int rowCount = 0; // in the current sheet
+        List<CellData> header;
+        Map<String, Integer> sharedStrings; // null if strings go inline
+        int sharedStringRefs = 0;
+        
+        SheetWriter(ZipOutputStream zos, Writer writer, String projectName) {
+            this.zos = zos;
+            this.writer = writer;
+            this.baseSheetName = WorkbookUtil.createSafeSheetName(projectName);
+        }
+        
+        @Override
+        public void startFile(JSONObject options) {
+            if (options != null && JSONUtilities.getBoolean(options, "sharedStrings", false)) {
+                sharedStrings = new LinkedHashMap<String, Integer>();
+            }
+        }
+        
+        @Override
+        public void endFile() {
+            try {
+                if (sheetCount == 0) {
+                    startSheet();
+                }
+                endSheet();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        
+        @Override
+        public void addRow(List<CellData> cells, boolean isHeader) {
+            if (error != null) {
+                return;
+            }
+            try {
+                if (isHeader) {
+                    header = cells;
+                }
+                if (sheetCount == 0 || rowCount >= maxRowsPerSheet) {
+                    if (sheetCount > 0) {
+                        endSheet();
+                    }
+                    startSheet();
+                    if (header != null && !isHeader) {
+                        writeRow(header);
+                    }
+                }
+                writeRow(cells);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        
+        protected void startSheet() throws IOException {
+            sheetCount++;
+            rowCount = 0;
+            
+            startEntry("xl/worksheets/sheet" + sheetCount + ".xml");
+            writer.write("<worksheet xmlns=\"" + s_mainNamespace + "\"><sheetData>");
+        }
+        
+        protected void endSheet() throws IOException {
+            writer.write("</sheetData></worksheet>");
+            endEntry();
+        }
+        
+        protected void writeRow(List<CellData> cells) throws IOException {
+            rowCount++;
+            writer.write("<row r=\"" + rowCount + "\">");
+            
+            for (int i = 0; i < cells.size() && i < s_maxColumns; i++) {
+                String ref = getColumnLetters(i) + rowCount;
+                if (i == s_maxColumns - 1 && cells.size() > s_maxColumns) {
+                    writeString(ref, "ERROR: TOO MANY COLUMNS");
+                    break;
+                }
+                
+                CellData cellData = cells.get(i);
+                if (cellData != null && cellData.text != null && cellData.value != null) {
+                    Object v = cellData.value;
+                    if (v instanceof Number && !isNonFinite((Number) v)) {
+                        writer.write("<c r=\"" + ref + "\"><v>" + ((Number) v).doubleValue() + "</v></c>");
+                    } else if (v instanceof Boolean) {
+                        writer.write("<c r=\"" + ref + "\" t=\"b\"><v>" + (((Boolean) v) ? "1" : "0") + "</v></c>");
+                    } else if (v instanceof Date) {
+                        writeDate(ref, DateUtil.getExcelDate((Date) v));
+                    } else if (v instanceof Calendar) {
+                        writeDate(ref, DateUtil.getExcelDate((Calendar) v, false));
+                    } else {
+                        writeString(ref, cellData.text);
+                    }
+                }
+            }
+            
+            writer.write("</row>");
+        }
+        
+        protected void writeDate(String ref, double excelDate) throws IOException {
+            // style 1 carries the date format, see writeStyles
+            writer.write("<c r=\"" + ref + "\" s=\"1\"><v>" + excelDate + "</v></c>");
+        }
+        
+        protected void writeString(String ref, String s) throws IOException {
+            if (s.length() > s_maxTextLength) {
+                // The maximum length of cell contents (text) is 32,767 characters
+                s = s.substring(0, s_maxTextLength);
+            }
+            
+            if (sharedStrings != null) {
+                Integer index = sharedStrings.get(s);
+                if (index == null) {
+                    index = sharedStrings.size();
+                    sharedStrings.put(s, index);
+                }
+                sharedStringRefs++;
+                writer.write("<c r=\"" + ref + "\" t=\"s\"><v>" + index + "</v></c>");
+            } else {
+                writer.write("<c r=\"" + ref + "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                writeEscaped(s);
+                writer.write("</t></is></c>");
+            }
+        }
+        
+        protected void writeEscaped(String s) throws IOException {
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c == '<') {
+                    writer.write("&lt;");
+                } else if (c == '>') {
+                    writer.write("&gt;");
+                } else if (c == '&') {
+                    writer.write("&amp;");
+                } else if (c == '"') {
+                    writer.write("&quot;");
+                } else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                    // not allowed in XML 1.0
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    writer.write(c);
+                    writer.write(s.charAt(++i));
+                } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c) || c == 0xFFFE || c == 0xFFFF) {
+                    // unpaired surrogates and non-characters are not allowed either
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        
+        /**
+         * Writes the parts that describe the sheets written so far.
+         */
+        protected void writeWorkbook() throws IOException {
+            startEntry("[Content_Types].xml");
+            writer.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+            writer.write("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+            writer.write("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+            writer.write("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+            writer.write("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+            if (sharedStrings != null) {
+                writer.write("<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>");
+            }
+            for (int i = 1; i <= sheetCount; i++) {
+                writer.write("<Override PartName=\"/xl/worksheets/sheet" + i + ".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            }
+            writer.write("</Types>");
+            endEntry();
+            
+            startEntry("_rels/.rels");
+            writer.write("<Relationships xmlns=\"" + s_packageRelNamespace + "\">");
+            writer.write("<Relationship Id=\"rId1\" Type=\"" + s_relNamespace + "/officeDocument\" Target=\"xl/workbook.xml\"/>");
+            writer.write("</Relationships>");
+            endEntry();
+            
+            startEntry("xl/workbook.xml");
+            writer.write("<workbook xmlns=\"" + s_mainNamespace + "\" xmlns:r=\"" + s_relNamespace + "\"><sheets>");
+            for (int i = 1; i <= sheetCount; i++) {
+                writer.write("<sheet name=\"");
+                writeEscaped(getSheetName(i));
+                writer.write("\" sheetId=\"" + i + "\" r:id=\"rId" + i + "\"/>");
+            }
+            writer.write("</sheets></workbook>");
+            endEntry();
+            
+            startEntry("xl/_rels/workbook.xml.rels");
+            writer.write("<Relationships xmlns=\"" + s_packageRelNamespace + "\">");
+            for (int i = 1; i <= sheetCount; i++) {
+                writer.write("<Relationship Id=\"rId" + i + "\" Type=\"" + s_relNamespace + "/worksheet\" Target=\"worksheets/sheet" + i + ".xml\"/>");
+            }
+            writer.write("<Relationship Id=\"rId" + (sheetCount + 1) + "\" Type=\"" + s_relNamespace + "/styles\" Target=\"styles.xml\"/>");
+            if (sharedStrings != null) {
+                writer.write("<Relationship Id=\"rId" + (sheetCount + 2) + "\" Type=\"" + s_relNamespace + "/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+            }
+            writer.write("</Relationships>");
+            endEntry();
+            
+            writeStyles();
+            
+            if (sharedStrings != null) {
+                startEntry("xl/sharedStrings.xml");
+                writer.write("<sst xmlns=\"" + s_mainNamespace + "\" count=\"" + sharedStringRefs +
+                    "\" uniqueCount=\"" + sharedStrings.size() + "\">");
+                for (String s : sharedStrings.keySet()) { // in index order
+                    writer.write("<si><t xml:space=\"preserve\">");
+                    writeEscaped(s);
+                    writer.write("</t></si>");
+                }
+                writer.write("</sst>");
+                endEntry();
+            }
+        }
+        
+        protected void writeStyles() throws IOException {
+            startEntry("xl/styles.xml");
+            writer.write("<styleSheet xmlns=\"" + s_mainNamespace + "\">");
+            writer.write("<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"yyyy-mm-dd\"/></numFmts>");
+            writer.write("<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>");
+            writer.write("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>");
+            writer.write("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>");
+            writer.write("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
+            writer.write("<cellXfs count=\"2\">");
+            writer.write("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+            writer.write("<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>");
+            writer.write("</cellXfs>");
+            writer.write("</styleSheet>");
+            endEntry();
+        }
+        
+        protected void startEntry(String name) throws IOException {
+            zos.putNextEntry(new ZipEntry(name));
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        }
+        
+        protected void endEntry() throws IOException {
+            writer.flush();
+            zos.closeEntry();
+        }
+        
+        protected String getSheetName(int sheetNumber) {
+            if (sheetNumber == 1) {
+                return baseSheetName;
+            }
+            String suffix = " (" + sheetNumber + ")";
+            String name = baseSheetName;
+            if (name.length() + suffix.length() > 31) { // Excel's limit on sheet names
+                name = name.substring(0, 31 - suffix.length());
+            }
+            return name + suffix;
+        }
+    }
+    
+    static protected boolean isNonFinite(Number n) {
+        double d = n.doubleValue();
+        return Double.isNaN(d) || Double.isInfinite(d);
+    }
+    
+    static protected String getColumnLetters(int columnIndex) {
+        StringBuffer sb = new StringBuffer();
+        for (int n = columnIndex + 1; n > 0; n = (n - 1) / 26) {
+            sb.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return sb.toString();
+    }
+}
@@ -58,7 +58,7 @@ public class ExpressionUtils {
     }
 
     static public Properties createBindings(Project project) {
-        Properties bindings = new Properties();
+        Properties bindings = new RowBindings(project);
 
         bindings.put("true", true);
         bindings.put("false", false);
@@ -73,7 +73,36 @@ public class ExpressionUtils {
         return bindings;
     }
 
+    /**
+     * Get bindings for the given project that the calling thread can re-bind row after row,
+     * creating them the first time the thread asks for them.
+     * 
+     * @param threadBindings where each thread keeps its bindings
+     * @param project
+     * @return
+     */
+    static public Properties getThreadBindings(ThreadLocal<Properties> threadBindings, Project project) {
+        Properties bindings = threadBindings.get();
+        if (bindings == null || bindings.get("project") != project) {
+            bindings = createBindings(project);
+            threadBindings.set(bindings);
+        }
+        return bindings;
+    }
+
     static public void bind(Properties bindings, Row row, int rowIndex, String columnName, Cell cell) {
+        if (bindings instanceof RowBindings) {
+            ((RowBindings) bindings).bind(row, rowIndex, columnName, cell);
+        } else {
+            bindUnindexed(bindings, row, rowIndex, columnName, cell);
+        }
+
+        for (Binder binder : s_binders) {
+            binder.bind(bindings, row, rowIndex, columnName, cell);
+        }
+    }
+
+    static protected void bindUnindexed(Properties bindings, Row row, int rowIndex, String columnName, Cell cell) {
         Project project = (Project) bindings.get("project");
 
         bindings.put("rowIndex", rowIndex);
@@ -95,10 +124,6 @@ public class ExpressionUtils {
                 bindings.put("value", cell.value);
             }
         }
-
-        for (Binder binder : s_binders) {
-            binder.bind(bindings, row, rowIndex, columnName, cell);
-        }
     }
 
     static public boolean isError(Object o) {
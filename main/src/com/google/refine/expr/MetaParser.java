@@ -35,6 +35,7 @@ package com.google.refine.expr;
 
 import java.io.StringReader;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -59,6 +60,25 @@ abstract public class MetaParser {
     
     static final protected Map<String, LanguageInfo> s_languages = new HashMap<String, LanguageInfo>();
     
+    /**
+     * Most recently parsed expressions, keyed on their language prefix and source, so that
+     * facets, previews and operations evaluating the same expression share one Evaluable.
+     * Evaluables must therefore be safe to evaluate from several threads at once.
+     */
+    static public int maxCachedEvaluables = 256;
+    
+    static final protected Map<String, Evaluable> s_evaluables = new LinkedHashMap<String, Evaluable>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2624395823950370216L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Evaluable> eldest) {
+            return size() > maxCachedEvaluables;
+        }
+    };
+    
+    static protected long s_cacheHits;
+    static protected long s_cacheMisses;
+    
     static {
         registerLanguageParser("grel", "Google Refine Expression Language (GREL)", new LanguageSpecificParser() {
             
@@ -109,6 +129,7 @@ abstract public class MetaParser {
     
     static public void registerLanguageParser(String languagePrefix, String name, LanguageSpecificParser parser, String defaultExpression) {
         s_languages.put(languagePrefix, new LanguageInfo(name, parser, defaultExpression));
+        clearCache();
     }
     
     static public LanguageInfo getLanguageInfo(String languagePrefix) {
@@ -140,10 +161,46 @@ abstract public class MetaParser {
         }
         
         LanguageInfo info = s_languages.get(language.toLowerCase());
-        if (info != null) {
-            return info.parser.parse(s.substring(colon + 1));
-        } else {
-            return parseGREL(s);
+        String source = s.substring(colon + 1);
+        if (info == null) {
+            language = "grel";
+            info = s_languages.get(language);
+            source = s;
+        }
+        
+        String key = language + ":" + source;
+        synchronized (s_evaluables) {
+            Evaluable eval = s_evaluables.get(key);
+            if (eval != null) {
+                s_cacheHits++;
+                return eval;
+            }
+            s_cacheMisses++;
+        }
+        
+        // parse outside the lock, as some languages take a while
+        Evaluable eval = info.parser.parse(source);
+        synchronized (s_evaluables) {
+            s_evaluables.put(key, eval);
+        }
+        return eval;
+    }
+    
+    static public void clearCache() {
+        synchronized (s_evaluables) {
+            s_evaluables.clear();
+        }
+    }
+    
+    static public long getCacheHits() {
+        synchronized (s_evaluables) {
+            return s_cacheHits;
+        }
+    }
+    
+    static public long getCacheMisses() {
+        synchronized (s_evaluables) {
+            return s_cacheMisses;
         }
     }
     
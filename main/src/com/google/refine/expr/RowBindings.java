@@ -0,0 +1,186 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.expr;
+
+import java.util.Properties;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Bindings meant to be created once and re-bound to row after row. The variables that
+ * ExpressionUtils.bind() sets for each row are kept in fixed slots rather than in the
+ * underlying hashtable, so that re-binding them doesn't churn hashtable entries, and
+ * the "row", "cells" and "cell" wrappers are only created if an expression asks for them.
+ * 
+ * Slot variables can still be read, overwritten and removed by name through get(),
+ * put() and remove(), as control functions like forEach do, but they aren't listed by
+ * keySet() or entrySet().
+ */
+public class RowBindings extends Properties {
+    private static final long serialVersionUID = 2891240573312604711L;
+
+    static final public int SLOT_VALUE = 0;
+    static final public int SLOT_CELL = 1;
+    static final public int SLOT_CELLS = 2;
+    static final public int SLOT_ROW = 3;
+    static final public int SLOT_ROW_INDEX = 4;
+    static final public int SLOT_COLUMN_NAME = 5;
+    static final public int SLOT_PROJECT = 6;
+    
+    static final protected String[] s_slotNames = {
+        "value", "cell", "cells", "row", "rowIndex", "columnName", "project"
+    };
+    
+    /*
+     * Marks a slot whose value will be created from the current row when first read.
+     */
+    static final protected Object LAZY = new Object();
+    
+    final protected Object[] _slots = new Object[s_slotNames.length];
+    
+    protected Row    _row;
+    protected int    _rowIndex;
+    protected String _columnName;
+    protected Cell   _cell;
+    
+    /**
+     * @param name variable name
+     * @return the slot holding that variable, or -1 if it's kept in the hashtable
+     */
+    static public int getSlot(String name) {
+        for (int i = 0; i < s_slotNames.length; i++) {
+            if (s_slotNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public RowBindings(Project project) {
+        _slots[SLOT_PROJECT] = project;
+    }
+    
+    public Project getProject() {
+        return (Project) _slots[SLOT_PROJECT];
+    }
+    
+    public void bind(Row row, int rowIndex, String columnName, Cell cell) {
+        _row = row;
+        _rowIndex = rowIndex;
+        _cell = cell;
+        
+        _slots[SLOT_ROW_INDEX] = LAZY;
+        _slots[SLOT_ROW] = LAZY;
+        _slots[SLOT_CELLS] = LAZY;
+        
+        if (columnName != null) {
+            _columnName = columnName;
+            _slots[SLOT_COLUMN_NAME] = columnName;
+        }
+        
+        if (cell == null) {
+            _slots[SLOT_CELL] = null;
+            _slots[SLOT_VALUE] = null;
+        } else {
+            _slots[SLOT_CELL] = LAZY;
+            _slots[SLOT_VALUE] = cell.value;
+        }
+    }
+    
+    /**
+     * Read a variable by slot, creating its value from the bound row if needed.
+     */
+    public Object getSlotValue(int slot) {
+        Object v = _slots[slot];
+        if (v == LAZY) {
+            Project project = getProject();
+            switch (slot) {
+            case SLOT_ROW_INDEX:
+                v = _rowIndex;
+                break;
+            case SLOT_ROW:
+                v = new WrappedRow(project, _rowIndex, _row);
+                break;
+            case SLOT_CELLS:
+                v = new CellTuple(project, _row);
+                break;
+            case SLOT_CELL:
+                v = new WrappedCell(project, _columnName, _cell);
+                break;
+            default:
+                v = null;
+            }
+            _slots[slot] = v;
+        }
+        return v;
+    }
+    
+    @Override
+    public Object get(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        return slot < 0 ? super.get(key) : getSlotValue(slot);
+    }
+    
+    @Override
+    public Object put(Object key, Object value) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        if (slot < 0) {
+            return super.put(key, value);
+        }
+        
+        Object old = getSlotValue(slot);
+        _slots[slot] = value;
+        return old;
+    }
+    
+    @Override
+    public Object remove(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        if (slot < 0) {
+            return super.remove(key);
+        }
+        
+        Object old = getSlotValue(slot);
+        _slots[slot] = null;
+        return old;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        return slot < 0 ? super.containsKey(key) : _slots[slot] != null;
+    }
+}
@@ -43,15 +43,57 @@ import org.json.JSONException;
 import org.json.JSONWriter;
 
 import com.google.refine.expr.EvalError;
+import com.google.refine.expr.ParsingException;
 import com.google.refine.expr.util.CalendarParser;
 import com.google.refine.expr.util.CalendarParserException;
-import com.google.refine.grel.Function;
+import com.google.refine.grel.PreparableFunction;
 import com.google.refine.util.ParsingUtilities;
 
-public class ToDate implements Function {
+public class ToDate implements PreparableFunction {
+
+    @Override
+    public Object prepare(Object[] args) throws ParsingException {
+        if (args.length < 2) {
+            return null;
+        }
+
+        final String[] formats = new String[args.length];
+        boolean hasFormats = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i] instanceof String) {
+                formats[i] = (String) args[i];
+                try {
+                    new SimpleDateFormat(formats[i]);
+                } catch (IllegalArgumentException e) {
+                    throw new ParsingException("Unknown date format " + formats[i]);
+                }
+                hasFormats = true;
+            }
+        }
+
+        // SimpleDateFormat isn't thread-safe, so each thread gets its own formatters
+        return !hasFormats ? null : new ThreadLocal<SimpleDateFormat[]>() {
+            @Override
+            protected SimpleDateFormat[] initialValue() {
+                SimpleDateFormat[] formatters = new SimpleDateFormat[formats.length];
+                for (int i = 0; i < formats.length; i++) {
+                    if (formats[i] != null) {
+                        formatters[i] = new SimpleDateFormat(formats[i]);
+                    }
+                }
+                return formatters;
+            }
+        };
+    }
 
     @Override
     public Object call(Properties bindings, Object[] args) {
+        return call(bindings, args, null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object call(Properties bindings, Object[] args, Object prepared) {
         if (args.length == 0) {
             // missing value, can this happen?
             return null;
@@ -100,17 +142,20 @@ public class ToDate implements Function {
 
         // "o, format1, format2 (optional), ..."
         if (args.length>=2) {
+            SimpleDateFormat[] formatters = prepared != null ?
+                ((ThreadLocal<SimpleDateFormat[]>) prepared).get() : null;
             for (int i=1;i<args.length;i++) {
                 if (!(args[i] instanceof String)) {
                     // skip formats that aren't strings
                     continue;
                 }
-                String format  = (String) args[i];
-                SimpleDateFormat formatter;
-                try {
-                    formatter = new SimpleDateFormat(format);
-                } catch (IllegalArgumentException e) {
-                    return new EvalError("Unknown date format");
+                SimpleDateFormat formatter = formatters != null ? formatters[i] : null;
+                if (formatter == null) {
+                    try {
+                        formatter = new SimpleDateFormat((String) args[i]);
+                    } catch (IllegalArgumentException e) {
+                        return new EvalError("Unknown date format");
+                    }
                 }
                 Date date = null;
                 try {
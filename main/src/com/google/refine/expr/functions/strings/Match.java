@@ -36,21 +36,40 @@ package com.google.refine.expr.functions.strings;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.json.JSONException;
 import org.json.JSONWriter;
 
 import com.google.refine.expr.EvalError;
+import com.google.refine.expr.ParsingException;
 import com.google.refine.grel.ControlFunctionRegistry;
-import com.google.refine.grel.Function;
+import com.google.refine.grel.PreparableFunction;
 
-public class Match implements Function {
+public class Match implements PreparableFunction {
+
+    @Override
+    public Object prepare(Object[] args) throws ParsingException {
+        if (args.length == 2 && args[1] instanceof String) {
+            try {
+                return Pattern.compile((String) args[1]);
+            } catch (PatternSyntaxException e) {
+                throw new ParsingException("Invalid regular expression: " + e.getDescription());
+            }
+        }
+        return null;
+    }
 
     @Override
     public Object call(Properties bindings, Object[] args) {
+        return call(bindings, args, null);
+    }
+
+    @Override
+    public Object call(Properties bindings, Object[] args, Object prepared) {
         if (args.length == 2) {
             Object s = args[0];
-            Object p = args[1];
+            Object p = prepared != null ? prepared : args[1];
             
             if (s != null && p != null && (p instanceof String || p instanceof Pattern)) {
                 
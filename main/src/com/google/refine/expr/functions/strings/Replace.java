@@ -34,6 +34,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.expr.functions.strings;
 
 import java.util.Properties;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.json.JSONException;
@@ -41,12 +42,26 @@ import org.json.JSONWriter;
 
 import com.google.refine.expr.EvalError;
 import com.google.refine.grel.ControlFunctionRegistry;
-import com.google.refine.grel.Function;
+import com.google.refine.grel.PreparableFunction;
 
-public class Replace implements Function {
+public class Replace implements PreparableFunction {
+
+    @Override
+    public Object prepare(Object[] args) {
+        if (args.length == 3 && args[1] instanceof String) {
+            // String.replace() compiles the same literal pattern on every call
+            return Pattern.compile((String) args[1], Pattern.LITERAL);
+        }
+        return null;
+    }
 
     @Override
     public Object call(Properties bindings, Object[] args) {
+        return call(bindings, args, null);
+    }
+
+    @Override
+    public Object call(Properties bindings, Object[] args, Object prepared) {
         if (args.length == 3) {
             Object o1 = args[0];
             Object o2 = args[1];
@@ -54,7 +69,9 @@ public class Replace implements Function {
             if (o1 != null && o2 != null && o3 != null && o3 instanceof String) {
                 String str = (o1 instanceof String) ? (String) o1 : o1.toString();
                 
-                if (o2 instanceof String) {
+                if (prepared != null) {
+                    return ((Pattern) prepared).matcher(str).replaceAll(Matcher.quoteReplacement((String) o3));
+                } else if (o2 instanceof String) {
                     return str.replace((String) o2, (String) o3);
                 } else if (o2 instanceof Pattern) {
                     Pattern pattern = (Pattern) o2;
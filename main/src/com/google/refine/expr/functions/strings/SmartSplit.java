@@ -42,10 +42,11 @@ import org.json.JSONWriter;
 import au.com.bytecode.opencsv.CSVParser;
 
 import com.google.refine.expr.EvalError;
+import com.google.refine.expr.ParsingException;
 import com.google.refine.grel.ControlFunctionRegistry;
-import com.google.refine.grel.Function;
+import com.google.refine.grel.PreparableFunction;
 
-public class SmartSplit implements Function {
+public class SmartSplit implements PreparableFunction {
 
     static final protected CSVParser s_tabParser = new CSVParser(
         '\t',
@@ -65,24 +66,33 @@ public class SmartSplit implements Function {
         false
     );    
 
+    @Override
+    public Object prepare(Object[] args) throws ParsingException {
+        if (args.length == 2 && args[1] != PreparableFunction.VARIABLE && args[1] != null) {
+            String sep = args[1].toString();
+            if (sep.length() == 0) {
+                throw new ParsingException(ControlFunctionRegistry.getFunctionName(this) + " expects a non-empty separator");
+            }
+            return makeParser(sep);
+        }
+        return null;
+    }
+
     @Override
     public Object call(Properties bindings, Object[] args) {
+        return call(bindings, args, null);
+    }
+
+    @Override
+    public Object call(Properties bindings, Object[] args, Object prepared) {
         if (args.length >= 1 && args.length <= 2) {
-            CSVParser parser = null;
+            CSVParser parser = (CSVParser) prepared;
             
             Object v = args[0];
             String s = v.toString();
             
-            if (args.length > 1) {
-                String sep = args[1].toString();
-                parser = new CSVParser(
-                    sep.charAt(0),
-                    CSVParser.DEFAULT_QUOTE_CHARACTER,
-                    CSVParser.DEFAULT_ESCAPE_CHARACTER,
-                    CSVParser.DEFAULT_STRICT_QUOTES,
-                    CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE,
-                    false
-                );
+            if (parser == null && args.length > 1) {
+                parser = makeParser(args[1].toString());
             }
             
             if (parser == null) {
@@ -103,6 +113,17 @@ public class SmartSplit implements Function {
         return new EvalError(ControlFunctionRegistry.getFunctionName(this) + " expects 1 or 2 strings");
     }
     
+    protected CSVParser makeParser(String sep) {
+        return new CSVParser(
+            sep.charAt(0),
+            CSVParser.DEFAULT_QUOTE_CHARACTER,
+            CSVParser.DEFAULT_ESCAPE_CHARACTER,
+            CSVParser.DEFAULT_STRICT_QUOTES,
+            CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE,
+            false
+        );
+    }
+
     @Override
     public void write(JSONWriter writer, Properties options)
         throws JSONException {
@@ -35,32 +35,55 @@ package com.google.refine.grel;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.regex.Pattern;
 
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.ParsingException;
 import com.google.refine.expr.functions.arrays.ArgsToArray;
 import com.google.refine.grel.Scanner.NumberToken;
 import com.google.refine.grel.Scanner.RegexToken;
 import com.google.refine.grel.Scanner.Token;
 import com.google.refine.grel.Scanner.TokenType;
+import com.google.refine.grel.ast.BinaryOperatorExpr;
 import com.google.refine.grel.ast.ControlCallExpr;
 import com.google.refine.grel.ast.FieldAccessorExpr;
+import com.google.refine.grel.ast.FixedArityFunctionCallExpr;
 import com.google.refine.grel.ast.FunctionCallExpr;
 import com.google.refine.grel.ast.LiteralExpr;
 import com.google.refine.grel.ast.OperatorCallExpr;
+import com.google.refine.grel.ast.PreparedFunctionCallExpr;
 import com.google.refine.grel.ast.VariableExpr;
 
 public class Parser {
+    /**
+     * Whether expressions get compiled into nodes specialized for their operators and
+     * argument counts unless asked otherwise. Compiled nodes evaluate to the same results
+     * as the interpreted ones, only faster.
+     */
+    static public boolean compileByDefault =
+        !"false".equals(System.getProperty("refine.grel.compile"));
+
     protected Scanner   _scanner;
     protected Token     _token;
     protected Evaluable _root;
+    final protected boolean _compile;
 
     public Parser(String s) throws ParsingException {
         this(s, 0, s.length());
     }
 
+    public Parser(String s, boolean compile) throws ParsingException {
+        this(s, 0, s.length(), compile);
+    }
+
     public Parser(String s, int from, int to) throws ParsingException {
+        this(s, from, to, compileByDefault);
+    }
+
+    public Parser(String s, int from, int to, boolean compile) throws ParsingException {
+        _compile = compile;
         _scanner = new Scanner(s, from, to);
         _token = _scanner.next(true);
 
@@ -75,6 +98,57 @@ public class Parser {
         _token = _scanner.next(regexPossible);
     }
 
+    protected Evaluable makeOperatorCall(Evaluable left, Evaluable right, String op) {
+        if (_compile) {
+            return foldConstants(BinaryOperatorExpr.create(left, right, op), left, right);
+        } else {
+            return new OperatorCallExpr(new Evaluable[] { left, right }, op);
+        }
+    }
+
+    protected Evaluable makeFunctionCall(Evaluable[] args, Function f) throws ParsingException {
+        if (_compile) {
+            if (f instanceof PreparableFunction) {
+                Object[] constants = new Object[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    constants[i] = args[i] instanceof LiteralExpr ?
+                        ((LiteralExpr) args[i]).getValue() : PreparableFunction.VARIABLE;
+                }
+
+                Object prepared;
+                try {
+                    prepared = ((PreparableFunction) f).prepare(constants);
+                } catch (ParsingException e) {
+                    throw makeException(e.getMessage());
+                }
+                if (prepared != null) {
+                    return new PreparedFunctionCallExpr(args, (PreparableFunction) f, prepared);
+                }
+            }
+            return FixedArityFunctionCallExpr.create(args, f);
+        } else {
+            return new FunctionCallExpr(args, f);
+        }
+    }
+
+    /**
+     * Evaluates an operator call on constant operands once, at parse time. Calls that fail
+     * or evaluate to errors or to nothing are left as they are.
+     */
+    protected Evaluable foldConstants(Evaluable eval, Evaluable left, Evaluable right) {
+        if (left instanceof LiteralExpr && right instanceof LiteralExpr) {
+            try {
+                Object value = eval.evaluate(new Properties());
+                if (value != null && !ExpressionUtils.isError(value)) {
+                    return new LiteralExpr(value);
+                }
+            } catch (RuntimeException e) {
+                // such as a division by zero, which is left to happen when evaluated
+            }
+        }
+        return eval;
+    }
+
     protected ParsingException makeException(String desc) {
         int index = _token != null ? _token.start : _scanner.getIndex();
 
@@ -98,7 +172,7 @@ public class Parser {
 
             Evaluable sub2 = parseSubExpression();
 
-            sub = new OperatorCallExpr(new Evaluable[] { sub, sub2 }, op);
+            sub = makeOperatorCall(sub, sub2, op);
         }
 
         return sub;
@@ -121,7 +195,7 @@ public class Parser {
 
             Evaluable sub2 = parseTerm();
 
-            sub = new OperatorCallExpr(new Evaluable[] { sub, sub2 }, op);
+            sub = makeOperatorCall(sub, sub2, op);
         }
 
         return sub;
@@ -144,7 +218,7 @@ public class Parser {
 
             Evaluable factor2 = parseFactor();
 
-            factor = new OperatorCallExpr(new Evaluable[] { factor, factor2 }, op);
+            factor = makeOperatorCall(factor, factor2, op);
         }
 
         return factor;
@@ -224,7 +298,7 @@ public class Parser {
                     }
                     eval = new ControlCallExpr(argsA, c);
                 } else {
-                    eval = new FunctionCallExpr(makeArray(args), f);
+                    eval = makeFunctionCall(makeArray(args), f);
                 }
             }
         } else if (_token.type == TokenType.Delimiter && _token.text.equals("(")) {
@@ -242,7 +316,7 @@ public class Parser {
 
             List<Evaluable> args = parseExpressionList("]");
 
-            eval = new FunctionCallExpr(makeArray(args), new ArgsToArray());
+            eval = makeFunctionCall(makeArray(args), new ArgsToArray());
         } else {
             throw makeException("Missing number, string, identifier, regex, or parenthesized expression");
         }
@@ -269,7 +343,7 @@ public class Parser {
                     List<Evaluable> args = parseExpressionList(")");
                     args.add(0, eval);
 
-                    eval = new FunctionCallExpr(makeArray(args), f);
+                    eval = makeFunctionCall(makeArray(args), f);
                 } else {
                     eval = new FieldAccessorExpr(eval, identifier);
                 }
@@ -279,7 +353,7 @@ public class Parser {
                 List<Evaluable> args = parseExpressionList("]");
                 args.add(0, eval);
 
-                eval = new FunctionCallExpr(makeArray(args), ControlFunctionRegistry.getFunction("get"));
+                eval = makeFunctionCall(makeArray(args), ControlFunctionRegistry.getFunction("get"));
             } else {
                 break;
             }
@@ -0,0 +1,61 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.grel;
+
+import java.util.Properties;
+
+import com.google.refine.expr.ParsingException;
+
+/**
+ * Interface for functions that can derive some state from their constant arguments, such as
+ * a compiled regular expression, once when an expression is parsed rather than on every call.
+ */
+public interface PreparableFunction extends Function {
+    /**
+     * Stands for an argument whose value is only known when the function is called.
+     */
+    static final public Object VARIABLE = new Object();
+
+    /**
+     * @param args the values of the constant arguments, and {@link #VARIABLE} for the others
+     * @return the state derived from the constant arguments, or null if there is none
+     * @throws ParsingException if a constant argument is invalid
+     */
+    public Object prepare(Object[] args) throws ParsingException;
+
+    /**
+     * Same as {@link Function#call(Properties, Object[])}, given the state that was
+     * prepared from the same constant arguments.
+     */
+    public Object call(Properties bindings, Object[] args, Object prepared);
+}
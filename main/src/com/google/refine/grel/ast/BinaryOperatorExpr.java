@@ -0,0 +1,335 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.grel.ast;
+
+import java.util.Properties;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+
+/**
+ * An operator call with two operands, specialized for its operator when the expression
+ * gets compiled so that evaluating it neither allocates an argument array nor compares
+ * the operator's name. It yields the same results as {@link OperatorCallExpr}.
+ */
+abstract public class BinaryOperatorExpr extends OperatorCallExpr {
+    final protected Evaluable _left;
+    final protected Evaluable _right;
+
+    protected BinaryOperatorExpr(Evaluable left, Evaluable right, String op) {
+        super(new Evaluable[] { left, right }, op);
+        _left = left;
+        _right = right;
+    }
+
+    /**
+     * @return a node specialized for the given operator, or a plain {@link OperatorCallExpr}
+     *         if the operator has no specialized node
+     */
+    static public OperatorCallExpr create(Evaluable left, Evaluable right, String op) {
+        if ("+".equals(op)) {
+            return new Add(left, right);
+        } else if ("-".equals(op)) {
+            return new Subtract(left, right);
+        } else if ("*".equals(op)) {
+            return new Multiply(left, right);
+        } else if ("/".equals(op)) {
+            return new Divide(left, right);
+        } else if ("%".equals(op)) {
+            return new Modulo(left, right);
+        } else if (">".equals(op)) {
+            return new GreaterThan(left, right);
+        } else if (">=".equals(op)) {
+            return new GreaterThanOrEqual(left, right);
+        } else if ("<".equals(op)) {
+            return new LessThan(left, right);
+        } else if ("<=".equals(op)) {
+            return new LessThanOrEqual(left, right);
+        } else if ("==".equals(op)) {
+            return new Equal(left, right, false);
+        } else if ("!=".equals(op)) {
+            return new Equal(left, right, true);
+        } else {
+            return new OperatorCallExpr(new Evaluable[] { left, right }, op);
+        }
+    }
+
+    @Override
+    public Object evaluate(Properties bindings) {
+        Object v1 = _left.evaluate(bindings);
+        if (ExpressionUtils.isError(v1)) {
+            return v1;
+        }
+        Object v2 = _right.evaluate(bindings);
+        if (ExpressionUtils.isError(v2)) {
+            return v2;
+        }
+        return apply(v1, v2);
+    }
+
+    abstract protected Object apply(Object v1, Object v2);
+
+    static protected boolean isIntegral(Object n) {
+        return n instanceof Long || n instanceof Integer;
+    }
+
+    /**
+     * Operators that compute a number from two numbers.
+     */
+    static abstract protected class Arithmetic extends BinaryOperatorExpr {
+        protected Arithmetic(Evaluable left, Evaluable right, String op) {
+            super(left, right, op);
+        }
+
+        @Override
+        protected Object apply(Object v1, Object v2) {
+            if (v1 != null && v2 != null) {
+                if (isIntegral(v1) && isIntegral(v2)) {
+                    return apply(((Number) v1).longValue(), ((Number) v2).longValue());
+                } else if (v1 instanceof Number && v2 instanceof Number) {
+                    return apply(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+                }
+                return applyToObjects(v1, v2);
+            }
+            return null;
+        }
+
+        abstract protected long apply(long n1, long n2);
+
+        abstract protected double apply(double n1, double n2);
+
+        protected Object applyToObjects(Object v1, Object v2) {
+            return null;
+        }
+    }
+
+    static protected class Add extends Arithmetic {
+        public Add(Evaluable left, Evaluable right) {
+            super(left, right, "+");
+        }
+
+        @Override
+        protected long apply(long n1, long n2) {
+            return n1 + n2;
+        }
+
+        @Override
+        protected double apply(double n1, double n2) {
+            return n1 + n2;
+        }
+
+        @Override
+        protected Object applyToObjects(Object v1, Object v2) {
+            return v1.toString() + v2.toString();
+        }
+    }
+
+    static protected class Subtract extends Arithmetic {
+        public Subtract(Evaluable left, Evaluable right) {
+            super(left, right, "-");
+        }
+
+        @Override
+        protected long apply(long n1, long n2) {
+            return n1 - n2;
+        }
+
+        @Override
+        protected double apply(double n1, double n2) {
+            return n1 - n2;
+        }
+    }
+
+    static protected class Multiply extends Arithmetic {
+        public Multiply(Evaluable left, Evaluable right) {
+            super(left, right, "*");
+        }
+
+        @Override
+        protected long apply(long n1, long n2) {
+            return n1 * n2;
+        }
+
+        @Override
+        protected double apply(double n1, double n2) {
+            return n1 * n2;
+        }
+    }
+
+    static protected class Divide extends Arithmetic {
+        public Divide(Evaluable left, Evaluable right) {
+            super(left, right, "/");
+        }
+
+        @Override
+        protected long apply(long n1, long n2) {
+            return n1 / n2;
+        }
+
+        @Override
+        protected double apply(double n1, double n2) {
+            return n1 / n2;
+        }
+    }
+
+    static protected class Modulo extends Arithmetic {
+        public Modulo(Evaluable left, Evaluable right) {
+            super(left, right, "%");
+        }
+
+        @Override
+        protected long apply(long n1, long n2) {
+            return n1 % n2;
+        }
+
+        @Override
+        protected double apply(double n1, double n2) {
+            return n1 % n2;
+        }
+    }
+
+    /**
+     * Operators that order two numbers.
+     */
+    static abstract protected class Comparison extends BinaryOperatorExpr {
+        protected Comparison(Evaluable left, Evaluable right, String op) {
+            super(left, right, op);
+        }
+
+        @Override
+        protected Object apply(Object v1, Object v2) {
+            if (v1 != null && v2 != null) {
+                if (isIntegral(v1) && isIntegral(v2)) {
+                    return test(((Number) v1).longValue(), ((Number) v2).longValue());
+                } else if (v1 instanceof Number && v2 instanceof Number) {
+                    return test(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+                }
+            }
+            return null;
+        }
+
+        abstract protected boolean test(long n1, long n2);
+
+        abstract protected boolean test(double n1, double n2);
+    }
+
+    static protected class GreaterThan extends Comparison {
+        public GreaterThan(Evaluable left, Evaluable right) {
+            super(left, right, ">");
+        }
+
+        @Override
+        protected boolean test(long n1, long n2) {
+            return n1 > n2;
+        }
+
+        @Override
+        protected boolean test(double n1, double n2) {
+            return n1 > n2;
+        }
+    }
+
+    static protected class GreaterThanOrEqual extends Comparison {
+        public GreaterThanOrEqual(Evaluable left, Evaluable right) {
+            super(left, right, ">=");
+        }
+
+        @Override
+        protected boolean test(long n1, long n2) {
+            return n1 >= n2;
+        }
+
+        @Override
+        protected boolean test(double n1, double n2) {
+            return n1 >= n2;
+        }
+    }
+
+    static protected class LessThan extends Comparison {
+        public LessThan(Evaluable left, Evaluable right) {
+            super(left, right, "<");
+        }
+
+        @Override
+        protected boolean test(long n1, long n2) {
+            return n1 < n2;
+        }
+
+        @Override
+        protected boolean test(double n1, double n2) {
+            return n1 < n2;
+        }
+    }
+
+    static protected class LessThanOrEqual extends Comparison {
+        public LessThanOrEqual(Evaluable left, Evaluable right) {
+            super(left, right, "<=");
+        }
+
+        @Override
+        protected boolean test(long n1, long n2) {
+            return n1 <= n2;
+        }
+
+        @Override
+        protected boolean test(double n1, double n2) {
+            return n1 <= n2;
+        }
+    }
+
+    static protected class Equal extends BinaryOperatorExpr {
+        final protected boolean _negate;
+
+        public Equal(Evaluable left, Evaluable right, boolean negate) {
+            super(left, right, negate ? "!=" : "==");
+            _negate = negate;
+        }
+
+        @Override
+        protected Object apply(Object v1, Object v2) {
+            boolean equal;
+            if (v1 == null) {
+                equal = v2 == null;
+            } else if (v2 == null) {
+                equal = false;
+            } else if (isIntegral(v1) && isIntegral(v2)) {
+                equal = ((Number) v1).longValue() == ((Number) v2).longValue();
+            } else if (v1 instanceof Number && v2 instanceof Number) {
+                equal = ((Number) v1).doubleValue() == ((Number) v2).doubleValue();
+            } else {
+                equal = v1.equals(v2);
+            }
+            return equal != _negate;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.grel.ast;
+
+import java.util.Properties;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.grel.Function;
+
+/**
+ * A function call with a small, fixed number of arguments, specialized for that number
+ * when the expression gets compiled so that evaluating it doesn't loop over its arguments.
+ * It yields the same results as {@link FunctionCallExpr}.
+ */
+abstract public class FixedArityFunctionCallExpr extends FunctionCallExpr {
+    static final protected Object[] s_noArgs = new Object[0];
+
+    protected FixedArityFunctionCallExpr(Evaluable[] args, Function f) {
+        super(args, f);
+    }
+
+    /**
+     * @return a node specialized for the number of arguments, or a plain {@link FunctionCallExpr}
+     *         if there are too many of them
+     */
+    static public FunctionCallExpr create(Evaluable[] args, Function f) {
+        switch (args.length) {
+        case 0:
+            return new NoArgs(args, f);
+        case 1:
+            return new OneArg(args, f);
+        case 2:
+            return new TwoArgs(args, f);
+        default:
+            return new FunctionCallExpr(args, f);
+        }
+    }
+
+    static protected class NoArgs extends FixedArityFunctionCallExpr {
+        public NoArgs(Evaluable[] args, Function f) {
+            super(args, f);
+        }
+
+        @Override
+        public Object evaluate(Properties bindings) {
+            return call(bindings, s_noArgs);
+        }
+    }
+
+    static protected class OneArg extends FixedArityFunctionCallExpr {
+        final protected Evaluable _arg;
+
+        public OneArg(Evaluable[] args, Function f) {
+            super(args, f);
+            _arg = args[0];
+        }
+
+        @Override
+        public Object evaluate(Properties bindings) {
+            Object v = _arg.evaluate(bindings);
+            if (ExpressionUtils.isError(v)) {
+                return v; // bubble up the error
+            }
+            return call(bindings, new Object[] { v });
+        }
+    }
+
+    static protected class TwoArgs extends FixedArityFunctionCallExpr {
+        final protected Evaluable _arg1;
+        final protected Evaluable _arg2;
+
+        public TwoArgs(Evaluable[] args, Function f) {
+            super(args, f);
+            _arg1 = args[0];
+            _arg2 = args[1];
+        }
+
+        @Override
+        public Object evaluate(Properties bindings) {
+            Object v1 = _arg1.evaluate(bindings);
+            if (ExpressionUtils.isError(v1)) {
+                return v1; // bubble up the error
+            }
+            Object v2 = _arg2.evaluate(bindings);
+            if (ExpressionUtils.isError(v2)) {
+                return v2;
+            }
+            return call(bindings, new Object[] { v1, v2 });
+        }
+    }
+}
@@ -65,6 +65,10 @@ public class FunctionCallExpr implements Evaluable {
             }
              args[i] = v;
         }
+        return call(bindings, args);
+    }
+
+    protected Object call(Properties bindings, Object[] args) {
         try {
             return _function.call(bindings, args);
         } catch (Exception e) {
@@ -36,19 +36,25 @@ package com.google.refine.grel.ast;
 import java.util.Properties;
 
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.RowBindings;
 
 /**
  * An abstract syntax tree node encapsulating the retrieval of a variable's content.
  */
 public class VariableExpr implements Evaluable {
     final protected String _name;
+    final protected int    _slot; // -1 if not one of the per-row variables
     
     public VariableExpr(String name) {
         _name = name;
+        _slot = RowBindings.getSlot(name);
     }
     
     @Override
     public Object evaluate(Properties bindings) {
+        if (_slot >= 0 && bindings instanceof RowBindings) {
+            return ((RowBindings) bindings).getSlotValue(_slot);
+        }
         return bindings.get(_name);
     }
 
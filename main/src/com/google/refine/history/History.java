@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
 import org.json.JSONWriter;
@@ -53,6 +54,7 @@ import com.google.refine.Jsonizable;
 import com.google.refine.ProjectManager;
 import com.google.refine.RefineServlet;
 import com.google.refine.model.Project;
+import com.google.refine.model.ProjectLock;
 import com.google.refine.util.Pool;
 
 /**
@@ -63,6 +65,11 @@ import com.google.refine.util.Pool;
  * are only loaded into memory on demand.
  */
 public class History implements Jsonizable {
+    /**
+     * Counts the changes done, undone and redone in all projects, so that what's computed from
+     * one project, possibly looking into others, can tell whether it is still current.
+     */
+    static final protected AtomicLong s_changeCount = new AtomicLong();
     static public Change readOneChange(InputStream in, Pool pool) throws Exception {
         LineNumberReader reader = new LineNumberReader(new InputStreamReader(in, "UTF-8"));
         try {
@@ -113,11 +120,13 @@ public class History implements Jsonizable {
     }
 
     protected long               _projectID;
+    protected ProjectLock        _lock;
     protected List<HistoryEntry> _pastEntries;   // done changes, can be undone
     protected List<HistoryEntry> _futureEntries; // undone changes, can be redone
 
     public History(Project project) {
         _projectID = project.id;
+        _lock = project.lock;
         _pastEntries = new ArrayList<HistoryEntry>();
         _futureEntries = new ArrayList<HistoryEntry>();
     }
@@ -129,7 +138,8 @@ public class History implements Jsonizable {
      */
     public void addEntry(HistoryEntry entry) {
         Project project = ProjectManager.singleton.getProject(_projectID);
-        synchronized (project) {
+        _lock.lockWrite();
+        try {
             // NOTE: project lock must be acquired *first* to prevent deadlocks, so we use a 
             // synchronized block instead of synchronizing the entire method.
             synchronized (this) {
@@ -151,13 +161,23 @@ public class History implements Jsonizable {
                     }
                 }
             }
+        } finally {
+            _lock.unlockWrite();
         }
     }
 
     protected void setModified() {
+        s_changeCount.incrementAndGet();
         ProjectManager.singleton.getProjectMetadata(_projectID).updateModified();
     }
 
+    /**
+     * @return the number of changes done, undone and redone so far in any project
+     */
+    static public long getChangeCount() {
+        return s_changeCount.get();
+    }
+
     synchronized public List<HistoryEntry> getLastPastEntries(int count) {
         if (count <= 0) {
             return new LinkedList<HistoryEntry>(_pastEntries);
@@ -166,21 +186,35 @@ public class History implements Jsonizable {
         }
     }
 
-    synchronized public void undoRedo(long lastDoneEntryID) {
+    public void undoRedo(long lastDoneEntryID) {
+        // NOTE: like in addEntry(), the project is looked up before taking the write lock,
+        // as the project manager may be holding its own lock while waiting to save the project
+        Project project = ProjectManager.singleton.getProject(_projectID);
+        _lock.lockWrite();
+        try {
+            synchronized (this) {
+                internalUndoRedo(project, lastDoneEntryID);
+            }
+        } finally {
+            _lock.unlockWrite();
+        }
+    }
+
+    protected void internalUndoRedo(Project project, long lastDoneEntryID) {
         if (lastDoneEntryID == 0) {
             // undo all the way back to the start of the project
-            undo(_pastEntries.size());
+            undo(project, _pastEntries.size());
         } else {
             for (int i = 0; i < _pastEntries.size(); i++) {
                 if (_pastEntries.get(i).id == lastDoneEntryID) {
-                    undo(_pastEntries.size() - i - 1);
+                    undo(project, _pastEntries.size() - i - 1);
                     return;
                 }
             }
 
             for (int i = 0; i < _futureEntries.size(); i++) {
                 if (_futureEntries.get(i).id == lastDoneEntryID) {
-                    redo(i + 1);
+                    redo(project, i + 1);
                     return;
                 }
             }
@@ -212,6 +246,10 @@ public class History implements Jsonizable {
         return -1;
     }
 
+    synchronized public boolean hasEntry(long entryID) {
+        return getEntry(entryID) != null;
+    }
+
     protected HistoryEntry getEntry(long entryID) {
         for (int i = 0; i < _pastEntries.size(); i++) {
             if (_pastEntries.get(i).id == entryID) {
@@ -227,9 +265,7 @@ public class History implements Jsonizable {
         return null;
     }
 
-    protected void undo(int times) {
-        Project project = ProjectManager.singleton.getProject(_projectID);
-
+    protected void undo(Project project, int times) {
         while (times > 0 && _pastEntries.size() > 0) {
             HistoryEntry entry = _pastEntries.get(_pastEntries.size() - 1);
 
@@ -243,9 +279,7 @@ public class History implements Jsonizable {
         }
     }
 
-    protected void redo(int times) {
-        Project project = ProjectManager.singleton.getProject(_projectID);
-
+    protected void redo(Project project, int times) {
         while (times > 0 && _futureEntries.size() > 0) {
             HistoryEntry entry = _futureEntries.get(0);
 
@@ -300,6 +334,14 @@ public class History implements Jsonizable {
         writer.write("/e/\n");
     }
 
+    /**
+     * Forgets all entries, so that the history can be loaded again.
+     */
+    synchronized public void clear() {
+        _pastEntries.clear();
+        _futureEntries.clear();
+    }
+
     synchronized public void load(Project project, LineNumberReader reader) throws Exception {
         String line;
         while ((line = reader.readLine()) != null && !"/e/".equals(line)) {
@@ -0,0 +1,318 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.importers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.importers.ImporterUtilities.MultiFileReadingProgress;
+import com.google.refine.importers.TabularImportingParserBase.TableDataReader;
+
+/**
+ * Reads a separator-based file as byte ranges, or chunks, that get tokenized and have their
+ * cell values type-converted on worker threads, then hands out their rows in file order.
+ * 
+ * Chunks must start at record boundaries, which quoted values spanning several lines make
+ * hard to find without reading the file from its start. Each chunk is therefore first
+ * scanned, in parallel, for its number of quotes and for its first line break both when
+ * entering it inside quotes and when entering it outside. Once all chunks are scanned,
+ * their quote counts tell which of the two line breaks is the real record boundary.
+ */
+public class ParallelSeparatorReader implements TableDataReader {
+    static public int chunkSize = Integer.getInteger("refine.importChunkSize", 8 * 1024 * 1024);
+    
+    /**
+     * The parsing options, which each worker turns into a parser of its own.
+     */
+    static public interface ParserFactory {
+        public CSVParser createParser();
+    }
+    
+    final protected File _file;
+    final protected String _fileSource;
+    final protected Charset _charset;
+    final protected ParserFactory _parserFactory;
+    final protected boolean _processQuotes;
+    final protected boolean _guessCellValueTypes;
+    final protected int _unconvertedRows;
+    final protected MultiFileReadingProgress _progress;
+    
+    final protected ExecutorService _executor;
+    final protected int _maxPending;
+    final protected LinkedList<Future<List<List<Object>>>> _pending = new LinkedList<Future<List<List<Object>>>>();
+    final protected LinkedList<Long> _pendingEnds = new LinkedList<Long>();
+    
+    protected long[] _boundaries;
+    protected int _nextChunk;
+    protected List<List<Object>> _rows;
+    protected int _nextRow;
+    
+    /**
+     * @param unconvertedRows how many rows at the start of the file to leave as strings,
+     *      such as header lines
+     */
+    public ParallelSeparatorReader(
+        File file,
+        String fileSource,
+        Charset charset,
+        ParserFactory parserFactory,
+        boolean processQuotes,
+        boolean guessCellValueTypes,
+        int unconvertedRows,
+        int threads,
+        MultiFileReadingProgress progress
+    ) {
+        _file = file;
+        _fileSource = fileSource;
+        _charset = charset;
+        _parserFactory = parserFactory;
+        _processQuotes = processQuotes;
+        _guessCellValueTypes = guessCellValueTypes;
+        _unconvertedRows = unconvertedRows;
+        _progress = progress;
+        
+        _executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        _maxPending = 2 * Math.max(1, threads);
+    }
+    
+    /**
+     * @return whether line breaks and quotes in the charset are single bytes that can't be
+     *      part of other characters, so that the file can be split by looking at bytes
+     */
+    static public boolean canSplit(Charset charset) {
+        String name = charset.name().toUpperCase();
+        return name.equals("UTF-8") || name.equals("US-ASCII") ||
+            name.startsWith("ISO-8859-") || name.startsWith("WINDOWS-125");
+    }
+    
+    @Override
+    public List<Object> getNextRowOfCells() throws IOException {
+        if (_boundaries == null) {
+            _boundaries = findBoundaries();
+            while (_pending.size() < _maxPending && submitNextChunk()) {
+                // fill the pipeline
+            }
+        }
+        
+        while (_rows == null || _nextRow >= _rows.size()) {
+            if (_pending.isEmpty()) {
+                return null;
+            }
+            
+            _rows = getResult(_pending.removeFirst());
+            _nextRow = 0;
+            if (_progress != null) {
+                _progress.readingFile(_fileSource, _pendingEnds.removeFirst());
+            }
+            submitNextChunk();
+        }
+        return _rows.get(_nextRow++);
+    }
+    
+    /**
+     * Stops all workers, which is needed whenever rows are not read all the way to the end.
+     */
+    public void close() {
+        _executor.shutdownNow();
+    }
+    
+    protected boolean submitNextChunk() {
+        if (_nextChunk + 1 >= _boundaries.length) {
+            return false;
+        }
+        
+        final int chunk = _nextChunk++;
+        final long start = _boundaries[chunk];
+        final long end = _boundaries[chunk + 1];
+        _pending.add(_executor.submit(new Callable<List<List<Object>>>() {
+            @Override
+            public List<List<Object>> call() throws Exception {
+                return parseChunk(start, end, chunk == 0 ? _unconvertedRows : 0);
+            }
+        }));
+        _pendingEnds.add(end);
+        return true;
+    }
+    
+    protected <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing " + _fileSource);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            IOException e2 = new IOException("Failed to import " + _fileSource);
+            e2.initCause(e.getCause());
+            throw e2;
+        }
+    }
+    
+    /**
+     * What a scan of one chunk found out.
+     */
+    static protected class ChunkScan {
+        boolean oddQuotes;
+        long[] firstBreakAfter = { -1, -1 }; // by whether the chunk starts inside quotes
+    }
+    
+    /**
+     * @return the offsets at which chunks start, followed by the file's length
+     */
+    protected long[] findBoundaries() throws IOException {
+        long length = _file.length();
+        int count = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+        
+        List<Future<ChunkScan>> scans = new ArrayList<Future<ChunkScan>>(count);
+        for (int i = 1; i < count; i++) {
+            final long start = (long) i * chunkSize;
+            final long end = Math.min(length, start + chunkSize);
+            scans.add(_executor.submit(new Callable<ChunkScan>() {
+                @Override
+                public ChunkScan call() throws Exception {
+                    return scanChunk(start, end);
+                }
+            }));
+        }
+        
+        long[] boundaries = new long[count + 1];
+        int boundaryCount = 0;
+        boundaries[boundaryCount++] = 0;
+        
+        // whether the first chunk ends inside quotes needs a scan of its own
+        boolean inQuotes = count > 1 && scanChunk(0, Math.min(length, chunkSize)).oddQuotes;
+        for (Future<ChunkScan> future : scans) {
+            ChunkScan scan = getResult(future);
+            long boundary = scan.firstBreakAfter[inQuotes ? 1 : 0];
+            if (boundary >= 0 && boundary > boundaries[boundaryCount - 1]) {
+                boundaries[boundaryCount++] = boundary;
+            }
+            // a chunk without a line break outside quotes just joins the chunk before it
+            inQuotes ^= scan.oddQuotes;
+        }
+        if (boundaries[boundaryCount - 1] < length || boundaryCount == 1) {
+            boundaries[boundaryCount++] = length;
+        }
+        return Arrays.copyOf(boundaries, boundaryCount);
+    }
+    
+    protected ChunkScan scanChunk(long start, long end) throws IOException {
+        ChunkScan scan = new ChunkScan();
+        RandomAccessFile raf = new RandomAccessFile(_file, "r");
+        try {
+            raf.seek(start);
+            
+            byte[] buffer = new byte[64 * 1024];
+            long offset = start;
+            boolean odd = false;
+            while (offset < end) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, end - offset));
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '"' && _processQuotes) {
+                        odd = !odd;
+                    } else if (b == '\n') {
+                        // outside quotes if the quotes seen so far leave us where we started
+                        int startedInQuotes = odd ? 1 : 0;
+                        if (scan.firstBreakAfter[startedInQuotes] < 0) {
+                            scan.firstBreakAfter[startedInQuotes] = offset + i + 1;
+                        }
+                    }
+                }
+                offset += read;
+            }
+            scan.oddQuotes = odd;
+        } finally {
+            raf.close();
+        }
+        return scan;
+    }
+    
+    protected List<List<Object>> parseChunk(long start, long end, int unconvertedRows) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        RandomAccessFile raf = new RandomAccessFile(_file, "r");
+        try {
+            raf.seek(start);
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        
+        CSVParser parser = _parserFactory.createParser();
+        LineNumberReader lnReader = new LineNumberReader(
+            new InputStreamReader(new ByteArrayInputStream(bytes), _charset));
+        
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        String line;
+        while ((line = lnReader.readLine()) != null) {
+            List<Object> cells = SeparatorBasedImporter.getCells(line, parser, lnReader);
+            if (_guessCellValueTypes && rows.size() >= unconvertedRows) {
+                for (int c = 0; c < cells.size(); c++) {
+                    Object value = cells.get(c);
+                    if (value instanceof String && ExpressionUtils.isNonBlankData(value)) {
+                        cells.set(c, ImporterUtilities.parseCellValue((String) value));
+                    }
+                }
+            }
+            rows.add(cells);
+            
+            if (Thread.interrupted()) {
+                throw new IOException("Interrupted while importing " + _fileSource);
+            }
+        }
+        return rows;
+    }
+}
@@ -41,6 +41,7 @@ import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -54,12 +55,16 @@ import org.json.JSONObject;
 import au.com.bytecode.opencsv.CSVParser;
 
 import com.google.refine.ProjectMetadata;
+import com.google.refine.importers.ImporterUtilities.MultiFileReadingProgress;
 import com.google.refine.importing.ImportingJob;
 import com.google.refine.importing.ImportingUtilities;
 import com.google.refine.model.Project;
 import com.google.refine.util.JSONUtilities;
 
 public class SeparatorBasedImporter extends TabularImportingParserBase {
+    static public int parallelThreshold = Integer.getInteger("refine.importParallelThreshold", 32 * 1024 * 1024);
+    static public int parallelThreads = Integer.getInteger("refine.importThreads", Runtime.getRuntime().availableProcessors());
+    
     public SeparatorBasedImporter() {
         super(false);
     }
@@ -89,21 +94,7 @@ public class SeparatorBasedImporter extends TabularImportingParserBase {
         JSONObject options,
         List<Exception> exceptions
     ) {
-        String sep = JSONUtilities.getString(options, "separator", "\\t");
-        if (sep == null || "".equals(sep)) {
-            sep = "\\t";
-        }
-        sep = StringEscapeUtils.unescapeJava(sep);
-        boolean processQuotes = JSONUtilities.getBoolean(options, "processQuotes", true);
-        
-        final CSVParser parser = new CSVParser(
-            sep.toCharArray()[0],//HACK changing string to char - won't work for multi-char separators.
-            CSVParser.DEFAULT_QUOTE_CHARACTER,
-            (char) 0, // escape character
-            CSVParser.DEFAULT_STRICT_QUOTES,
-            CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE,
-            !processQuotes);
-        
+        final CSVParser parser = createParser(options);
         final LineNumberReader lnReader = new LineNumberReader(reader);
         
         TableDataReader dataReader = new TableDataReader() {
@@ -121,6 +112,102 @@ public class SeparatorBasedImporter extends TabularImportingParserBase {
         TabularImportingParserBase.readTable(project, metadata, job, dataReader, fileSource, limit, options, exceptions);
     }
     
+    /**
+     * Large files not read just for a preview are split into chunks that get parsed in
+     * parallel, as long as their encoding lets line breaks be found by looking at bytes.
+     */
+    @Override
+    public void parseOneFile(
+        Project project,
+        ProjectMetadata metadata,
+        ImportingJob job,
+        JSONObject fileRecord,
+        int limit,
+        final JSONObject options,
+        List<Exception> exceptions,
+        MultiFileReadingProgress progress
+    ) throws IOException {
+        File file = ImportingUtilities.getFile(job, fileRecord);
+        Charset charset = getCharset(fileRecord, options);
+        if (limit > 0 || JSONUtilities.getInt(options, "limit", -1) > 0 ||
+            parallelThreads < 2 || file.length() < parallelThreshold ||
+            charset == null || !ParallelSeparatorReader.canSplit(charset)) {
+            
+            super.parseOneFile(project, metadata, job, fileRecord, limit, options, exceptions, progress);
+            return;
+        }
+        
+        String fileSource = ImportingUtilities.getFileSource(fileRecord);
+        
+        int ignoreLines = JSONUtilities.getInt(options, "ignoreLines", -1);
+        int headerLines = JSONUtilities.getInt(options, "headerLines", 1);
+        boolean guessCellValueTypes = JSONUtilities.getBoolean(options, "guessCellValueTypes", false);
+        
+        ParallelSeparatorReader dataReader = new ParallelSeparatorReader(
+            file,
+            fileSource,
+            charset,
+            new ParallelSeparatorReader.ParserFactory() {
+                @Override
+                public CSVParser createParser() {
+                    return SeparatorBasedImporter.createParser(options);
+                }
+            },
+            JSONUtilities.getBoolean(options, "processQuotes", true),
+            guessCellValueTypes,
+            Math.max(0, ignoreLines) + Math.max(0, headerLines),
+            parallelThreads,
+            progress
+        );
+        
+        // cell values already come typed from the workers
+        String[] names = JSONObject.getNames(options);
+        JSONObject tableOptions = names != null ? new JSONObject(options, names) : new JSONObject();
+        JSONUtilities.safePut(tableOptions, "guessCellValueTypes", false);
+        
+        progress.startFile(fileSource);
+        try {
+            TabularImportingParserBase.readTable(
+                project, metadata, job, dataReader, fileSource, limit, tableOptions, exceptions);
+        } finally {
+            dataReader.close();
+            progress.endFile(fileSource, file.length());
+        }
+    }
+    
+    static protected Charset getCharset(JSONObject fileRecord, JSONObject options) {
+        String encoding = ImportingUtilities.getEncoding(fileRecord);
+        if (encoding == null) {
+            encoding = JSONUtilities.getString(options, "encoding", null);
+        }
+        if (encoding == null || encoding.isEmpty()) {
+            return Charset.defaultCharset();
+        }
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            // Unsupported encodings are left to the serial reader's fallback
+            return null;
+        }
+    }
+    
+    static protected CSVParser createParser(JSONObject options) {
+        String sep = JSONUtilities.getString(options, "separator", "\\t");
+        if (sep == null || "".equals(sep)) {
+            sep = "\\t";
+        }
+        sep = StringEscapeUtils.unescapeJava(sep);
+        boolean processQuotes = JSONUtilities.getBoolean(options, "processQuotes", true);
+        
+        return new CSVParser(
+            sep.toCharArray()[0],//HACK changing string to char - won't work for multi-char separators.
+            CSVParser.DEFAULT_QUOTE_CHARACTER,
+            (char) 0, // escape character
+            CSVParser.DEFAULT_STRICT_QUOTES,
+            CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE,
+            !processQuotes);
+    }
+    
     static protected ArrayList<Object> getCells(String line, CSVParser parser, LineNumberReader lnReader)
         throws IOException{
         
@@ -81,6 +81,7 @@ import com.google.refine.ProjectMetadata;
 import com.google.refine.RefineServlet;
 import com.google.refine.importing.ImportingManager.Format;
 import com.google.refine.importing.UrlRewriter.Result;
+import com.google.refine.model.CellDictionary;
 import com.google.refine.model.Project;
 import com.google.refine.util.JSONUtilities;
 
@@ -977,6 +978,7 @@ public class ImportingUtilities {
         
         if (!job.canceled) {
             if (exceptions.size() == 0) {
+                CellDictionary.compact(project);
                 project.update(); // update all internal models, indexes, caches, etc.
                 
                 ProjectManager.singleton.registerProject(project, pm);
@@ -35,7 +35,6 @@ package com.google.refine.io;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
 import java.io.Writer;
 import java.util.Properties;
 import java.util.zip.ZipEntry;
@@ -56,6 +55,11 @@ public class FileHistoryEntryManager implements HistoryEntryManager{
 
     @Override
     public void delete(HistoryEntry historyEntry) {
+        if (ProjectUtilities.isNeededBySnapshot(historyEntry)) {
+            // deleted once the project is saved as a new snapshot
+            return;
+        }
+        
         File file = getChangeFile(historyEntry);
         if (file.exists()) {
             file.delete();
@@ -86,12 +90,7 @@ public class FileHistoryEntryManager implements HistoryEntryManager{
     protected void loadChange(HistoryEntry historyEntry, File file) throws Exception {
         ZipFile zipFile = new ZipFile(file);
         try {
-            Pool pool = new Pool();
-            ZipEntry poolEntry = zipFile.getEntry("pool.txt");
-            if (poolEntry != null) {
-                pool.load(new InputStreamReader(
-                    zipFile.getInputStream(poolEntry)));
-            } // else, it's a legacy project file
+            Pool pool = ProjectUtilities.loadPool(zipFile);
 
             historyEntry.setChange(History.readOneChange(
                     zipFile.getInputStream(zipFile.getEntry("change.txt")), pool));
@@ -120,12 +119,7 @@ public class FileHistoryEntryManager implements HistoryEntryManager{
                 out.closeEntry();
             }
 
-            out.putNextEntry(new ZipEntry("pool.txt"));
-            try {
-                pool.save(out);
-            } finally {
-                out.closeEntry();
-            }
+            ProjectUtilities.savePool(out, pool);
         } finally {
             out.close();
         }
@@ -40,8 +40,24 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.tools.tar.TarEntry;
@@ -59,13 +75,24 @@ import com.google.refine.ProjectManager;
 import com.google.refine.ProjectMetadata;
 import com.google.refine.history.HistoryEntryManager;
 import com.google.refine.model.Project;
+import com.google.refine.model.recon.ReconCache;
 import com.google.refine.preference.TopList;
 
 public class FileProjectManager extends ProjectManager {
     final static protected String s_projectDirNameSuffix = ".project";
 
+    static public int metadataLoadThreads = Integer.getInteger("refine.metadataLoadThreads", 8);
+
     protected File                       _workspaceDir;
 
+    /**
+     * When each project's metadata.json was last written as far as the workspace index
+     * knows, so that index entries can be told apart from metadata changed behind its back.
+     */
+    protected Map<Long, Long>            _metadataFileTimes = new HashMap<Long, Long>();
+    protected Set<Long>                  _indexedProjectIDs = new HashSet<Long>();
+    protected boolean                    _indexDirty = true;
+
     final static Logger logger = LoggerFactory.getLogger("FileProjectManager");
 
     static public synchronized void initialize(File dir) {
@@ -86,6 +113,9 @@ public class FileProjectManager extends ProjectManager {
 
         load();
         recover();
+
+        _reconCache = new ReconCache(new File(_workspaceDir, "recon-cache.json"));
+        _reconCache.load();
     }
 
     public File getWorkspaceDir() {
@@ -113,9 +143,11 @@ public class FileProjectManager extends ProjectManager {
     @Override
     public boolean loadProjectMetadata(long projectID) {
         synchronized (this) {
-            ProjectMetadata metadata = ProjectMetadataUtilities.load(getProjectDir(projectID));
+            File projectDir = getProjectDir(projectID);
+            ProjectMetadata metadata = ProjectMetadataUtilities.load(projectDir);
             if (metadata != null) {
                 _projectsMetadata.put(projectID, metadata);
+                _metadataFileTimes.put(projectID, new File(projectDir, "metadata.json").lastModified());
                 return true;
             } else {
                 return false;
@@ -214,6 +246,9 @@ public class FileProjectManager extends ProjectManager {
     protected void saveMetadata(ProjectMetadata metadata, long projectId) throws Exception {
         File projectDir = getProjectDir(projectId);
         ProjectMetadataUtilities.save(metadata, projectDir);
+        
+        _metadataFileTimes.put(projectId, new File(projectDir, "metadata.json").lastModified());
+        _indexDirty = true;
     }
 
     @Override
@@ -221,6 +256,12 @@ public class FileProjectManager extends ProjectManager {
         ProjectUtilities.save(project);
     }
 
+    @Override
+    protected void forgetLoadedProject(long projectID) {
+        // the project's snapshot is read again when it gets loaded again
+        ProjectUtilities.forgetProject(projectID);
+    }
+
     @Override
     public Project loadProject(long id) {
         return ProjectUtilities.load(getProjectDir(id), id);
@@ -273,10 +314,12 @@ public class FileProjectManager extends ProjectManager {
                 if (metadata != null) {
                     jsonWriter.value(id);
 
-                    try {
-                        ProjectMetadataUtilities.save(metadata, getProjectDir(id));
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                    if (metadata.isDirty()) {
+                        try {
+                            saveMetadata(metadata, id);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
                     }
                 }
             }
@@ -290,6 +333,144 @@ public class FileProjectManager extends ProjectManager {
         } finally {
             writer.close();
         }
+        
+        if (_indexDirty || !_indexedProjectIDs.equals(_projectsMetadata.keySet())) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Saves the metadata of all projects into one index file, which is much faster to load
+     * than thousands of metadata.json files. Each entry records when the project's own
+     * metadata.json was written, so that entries gone stale since can be detected.
+     */
+    protected void saveIndex() {
+        File tempFile = new File(_workspaceDir, "workspace-index.temp.json");
+        Set<Long> indexedProjectIDs = new HashSet<Long>();
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            try {
+                JSONWriter jsonWriter = new JSONWriter(writer);
+                jsonWriter.object();
+                jsonWriter.key("projects");
+                jsonWriter.object();
+                for (Entry<Long, ProjectMetadata> entry : _projectsMetadata.entrySet()) {
+                    Long fileTime = _metadataFileTimes.get(entry.getKey());
+                    if (entry.getValue() != null && fileTime != null && !entry.getValue().isDirty()) {
+                        jsonWriter.key(entry.getKey().toString());
+                        jsonWriter.object();
+                        jsonWriter.key("fileTime"); jsonWriter.value(fileTime.longValue());
+                        jsonWriter.key("metadata"); entry.getValue().write(jsonWriter);
+                        jsonWriter.endObject();
+                    }
+                    indexedProjectIDs.add(entry.getKey());
+                }
+                jsonWriter.endObject();
+                jsonWriter.endObject();
+            } finally {
+                writer.close();
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to save workspace index", e);
+            return;
+        }
+
+        File file = new File(_workspaceDir, "workspace-index.json");
+        file.delete();
+        if (tempFile.renameTo(file)) {
+            _indexedProjectIDs = indexedProjectIDs;
+            _indexDirty = false;
+        }
+    }
+
+    /**
+     * @return the index's entries by project ID, or an empty map if there's no usable index
+     */
+    protected Map<Long, JSONObject> loadIndex() {
+        Map<Long, JSONObject> entries = new HashMap<Long, JSONObject>();
+        File file = new File(_workspaceDir, "workspace-index.json");
+        if (file.exists()) {
+            try {
+                Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                try {
+                    JSONObject projects = ((JSONObject) new JSONTokener(reader).nextValue()).getJSONObject("projects");
+                    
+                    @SuppressWarnings("unchecked")
+                    Iterator<String> keys = projects.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        entries.put(Long.parseLong(key), projects.getJSONObject(key));
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to load workspace index, loading project metadata files instead", e);
+                entries.clear();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Loads the metadata of the given projects, taking it from the workspace index unless
+     * a project's metadata.json has changed since the index was saved. Those get loaded from
+     * their own files, several at a time.
+     */
+    protected void loadProjectsMetadata(List<Long> ids) {
+        _metadataFileTimes.clear();
+        _indexedProjectIDs.clear();
+        
+        Map<Long, JSONObject> index = loadIndex();
+        List<Long> staleIDs = new ArrayList<Long>();
+        for (Long id : ids) {
+            JSONObject entry = index.get(id);
+            long fileTime = new File(getProjectDir(id), "metadata.json").lastModified();
+            if (entry != null && entry.optLong("fileTime", -1) == fileTime && entry.has("metadata")) {
+                try {
+                    _projectsMetadata.put(id, ProjectMetadata.loadFromJSON(entry.getJSONObject("metadata")));
+                    _metadataFileTimes.put(id, fileTime);
+                    _indexedProjectIDs.add(id);
+                    continue;
+                } catch (JSONException e) {
+                    // load from the file instead
+                }
+            }
+            staleIDs.add(id);
+        }
+
+        if (staleIDs.size() > 0) {
+            logger.info("Loading metadata of {} projects not up to date in the workspace index", staleIDs.size());
+            
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(metadataLoadThreads, staleIDs.size())));
+            try {
+                List<Future<ProjectMetadata>> futures = new ArrayList<Future<ProjectMetadata>>(staleIDs.size());
+                for (final Long id : staleIDs) {
+                    final File projectDir = getProjectDir(id);
+                    futures.add(executor.submit(new Callable<ProjectMetadata>() {
+                        @Override
+                        public ProjectMetadata call() {
+                            return ProjectMetadataUtilities.load(projectDir);
+                        }
+                    }));
+                }
+                for (int i = 0; i < staleIDs.size(); i++) {
+                    Long id = staleIDs.get(i);
+                    ProjectMetadata metadata = null;
+                    try {
+                        metadata = futures.get(i).get();
+                    } catch (Exception e) {
+                        logger.warn("Failed to load metadata of project " + id, e);
+                    }
+                    
+                    _projectsMetadata.put(id, metadata);
+                    _metadataFileTimes.put(id, new File(getProjectDir(id), "metadata.json").lastModified());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        _indexDirty = staleIDs.size() > 0 || index.size() > _indexedProjectIDs.size();
     }
 
 
@@ -298,6 +479,8 @@ public class FileProjectManager extends ProjectManager {
     public void deleteProject(long projectID) {
         synchronized (this) {
             removeProject(projectID);
+            ProjectUtilities.forgetProject(projectID);
+            _metadataFileTimes.remove(projectID);
 
             File dir = getProjectDir(projectID);
             if (dir.exists()) {
@@ -348,14 +531,11 @@ public class FileProjectManager extends ProjectManager {
 
                 JSONArray a = obj.getJSONArray("projectIDs");
                 int count = a.length();
+                List<Long> ids = new ArrayList<Long>(count);
                 for (int i = 0; i < count; i++) {
-                    long id = a.getLong(i);
-
-                    File projectDir = getProjectDir(id);
-                    ProjectMetadata metadata = ProjectMetadataUtilities.load(projectDir);
-
-                    _projectsMetadata.put(id, metadata);
+                    ids.add(a.getLong(i));
                 }
+                loadProjectsMetadata(ids);
 
                 if (obj.has("preferences") && !obj.isNull("preferences")) {
                     _preferenceStore.load(obj.getJSONObject("preferences"));
@@ -387,28 +567,27 @@ public class FileProjectManager extends ProjectManager {
 
     protected void recover() {
         for (File file : _workspaceDir.listFiles()) {
-            if (file.isDirectory() && !file.isHidden()) {
-                String name = file.getName();
-                if (file.getName().endsWith(s_projectDirNameSuffix)) {
-                    String idString = name.substring(0, name.length() - s_projectDirNameSuffix.length());
-                    long id = -1;
-                    try {
-                        id = Long.parseLong(idString);
-                    } catch (NumberFormatException e) {
-                        // ignore
-                    }
-
-                    if (id > 0 && !_projectsMetadata.containsKey(id)) {
-                        if (loadProjectMetadata(id)) {
-                            logger.info(
-                                    "Recovered project named " + 
-                                            getProjectMetadata(id).getName() +
-                                            " in directory " + name);
-                        } else {
-                            logger.warn("Failed to recover project in directory " + name);
+            String name = file.getName();
+            if (name.endsWith(s_projectDirNameSuffix)) {
+                String idString = name.substring(0, name.length() - s_projectDirNameSuffix.length());
+                long id = -1;
+                try {
+                    id = Long.parseLong(idString);
+                } catch (NumberFormatException e) {
+                    // ignore
+                }
 
-                            file.renameTo(new File(file.getParentFile(), name + ".corrupted"));
-                        }
+                // known projects are skipped before touching the file system for them
+                if (id > 0 && !_projectsMetadata.containsKey(id) && file.isDirectory() && !file.isHidden()) {
+                    if (loadProjectMetadata(id)) {
+                        logger.info(
+                                "Recovered project named " + 
+                                        getProjectMetadata(id).getName() +
+                                        " in directory " + name);
+                    } else {
+                        logger.warn("Failed to recover project in directory " + name);
+
+                        file.renameTo(new File(file.getParentFile(), name + ".corrupted"));
                     }
                 }
             }
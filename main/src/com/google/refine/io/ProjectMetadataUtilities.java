@@ -73,6 +73,8 @@ public class ProjectMetadataUtilities {
         if (oldFile.exists()) {
             oldFile.delete();
         }
+        
+        projectMeta.setDirty(false);
     }
 
     protected static void saveToFile(ProjectMetadata projectMeta, File metadataFile) throws Exception {
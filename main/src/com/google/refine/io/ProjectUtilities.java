@@ -33,8 +33,25 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.io;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -43,21 +60,106 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.ProjectManager;
+import com.google.refine.history.HistoryEntry;
 import com.google.refine.model.Project;
 import com.google.refine.util.Pool;
 
-
+/**
+ * Saves and loads projects. A project is stored as a full snapshot, data.zip, plus a log,
+ * data.log, to which each save appends a record of the project's history. Changes themselves
+ * are already saved in the history directory as they are applied, so loading a project
+ * only needs to roll its snapshot back and forth along the history to the position of the
+ * log's last record. Once the log gets long, the project is saved as a new snapshot in the
+ * background and the log is started over.
+ */
 public class ProjectUtilities {
     final static Logger logger = LoggerFactory.getLogger("project_utilities");
 
+    /**
+     * Whether to append to the log rather than writing a full snapshot on each save.
+     */
+    static public boolean incremental = !"false".equals(System.getProperty("refine.incrementalSave"));
+
+    /**
+     * Whether to write rows and recons in the binary format rather than as JSON. Both are
+     * read back regardless.
+     */
+    static public boolean binary = !"false".equals(System.getProperty("refine.binaryRows"));
+
+    /**
+     * A new snapshot is written when the log grows past this many bytes, or when loading
+     * the project would have to revert or apply more than this many history entries.
+     */
+    static public long maxLogSize = 4 * 1024 * 1024;
+    static public int  maxLogDistance = 50;
+
+    /**
+     * What is known of the snapshot a loaded project was read from or last saved to.
+     */
+    static protected class Snapshot {
+        final long          token;
+        final List<Long>    entryIDs; // past entries of the snapshot, in order
+        String              lastRecord;
+        boolean             compacting;
+
+        Snapshot(long token, List<Long> entryIDs) {
+            this.token = token;
+            this.entryIDs = entryIDs;
+        }
+    }
+
+    final static protected Map<Long, Snapshot> s_snapshots = new HashMap<Long, Snapshot>();
+
+    static private ExecutorService s_compactor;
+
     synchronized public static void save(Project project) {
-        synchronized (project) {
+        // saving only reads the project, so readers can go on meanwhile
+        project.lock.lockRead();
+        try {
+            Snapshot snapshot = getSnapshot(project.id);
+            if (!incremental || snapshot == null) {
+                saveSnapshot(project);
+                return;
+            }
+
             long id = project.id;
             File dir = ((FileProjectManager)ProjectManager.singleton).getProjectDir(id);
+            File logFile = new File(dir, "data.log");
+            try {
+                appendRecord(project, snapshot, logFile);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                logger.warn("Failed to log changes of project {}, saving it in full", id);
+                saveSnapshot(project);
+                return;
+            }
+
+            project.setLastSave();
+
+            if (!snapshot.compacting && (logFile.length() > maxLogSize ||
+                    getDistance(snapshot.entryIDs, getPastEntryIDs(project)) > maxLogDistance)) {
+                snapshot.compacting = true;
+                compactInBackground(project);
+            }
+        } finally {
+            project.lock.unlockRead();
+        }
+    }
+
+    /**
+     * Writes a full snapshot of the project and starts its log over.
+     */
+    synchronized public static void saveSnapshot(Project project) {
+        project.lock.lockRead();
+        try {
+            long id = project.id;
+            File dir = ((FileProjectManager)ProjectManager.singleton).getProjectDir(id);
+            long token = System.currentTimeMillis();
 
             File tempFile = new File(dir, "data.temp.zip");
             try {
-                saveToFile(project, tempFile);
+                saveToFile(project, tempFile, token);
             } catch (Exception e) {
                 e.printStackTrace();
 
@@ -77,27 +179,52 @@ public class ProjectUtilities {
                 oldFile.delete();
             }
 
+            // the log, if any, was made against the previous snapshot
+            File logFile = new File(dir, "data.log");
+            if (logFile.exists()) {
+                logFile.delete();
+            }
+
+            setSnapshot(id, new Snapshot(token, getPastEntryIDs(project)));
+            if (!hasUnreplayedLogs(dir)) {
+                deleteUnusedChanges(project, new File(dir, "history"));
+            }
+
             project.setLastSave();
 
             logger.info("Saved project '{}'",id);
+        } finally {
+            project.lock.unlockRead();
         }
     }
 
-    protected static void saveToFile(Project project, File file) throws Exception {
+    protected static void saveToFile(Project project, File file, long token) throws Exception {
         ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
         try {
             Pool pool = new Pool();
 
             out.putNextEntry(new ZipEntry("data.txt"));
             try {
-                project.saveToOutputStream(out, pool);
+                project.saveToOutputStream(out, pool, binary);
             } finally {
                 out.closeEntry();
             }
 
-            out.putNextEntry(new ZipEntry("pool.txt"));
+            if (binary) {
+                out.putNextEntry(new ZipEntry("rows.bin"));
+                try {
+                    project.saveRowsBinary(out, pool);
+                } finally {
+                    out.closeEntry();
+                }
+            }
+
+            // last, as it holds the recons pooled while saving rows
+            savePool(out, pool);
+
+            out.putNextEntry(new ZipEntry("snapshot.txt"));
             try {
-                pool.save(out);
+                out.write(Long.toString(token).getBytes("UTF-8"));
             } finally {
                 out.closeEntry();
             }
@@ -106,16 +233,158 @@ public class ProjectUtilities {
         }
     }
 
+    /**
+     * Appends the project's current history to its log, unless it has not changed since
+     * the last record. Records end with a marker so that one cut short is ignored on load.
+     */
+    protected static void appendRecord(Project project, Snapshot snapshot, File logFile) throws IOException {
+        Properties options = new Properties();
+        options.setProperty("mode", "save");
+        options.put("pool", new Pool());
+
+        StringWriter stringWriter = new StringWriter();
+        project.history.save(stringWriter, options);
+        String record = stringWriter.toString();
+        if (record.equals(snapshot.lastRecord)) {
+            return;
+        }
+
+        boolean newLog = !logFile.exists() || logFile.length() == 0;
+        FileOutputStream out = new FileOutputStream(logFile, true);
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            if (newLog) {
+                writer.write("snapshot="); writer.write(Long.toString(snapshot.token)); writer.write('\n');
+            }
+            writer.write(record);
+            writer.write("/r/\n"); // end of record marker
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        snapshot.lastRecord = record;
+    }
+
+    static protected void compactInBackground(final Project project) {
+        synchronized (s_snapshots) {
+            if (s_compactor == null) {
+                s_compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "project-compactor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+
+        final Snapshot snapshot = getSnapshot(project.id);
+        s_compactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // skip if the project has since been saved in full, or loaded again
+                if (getSnapshot(project.id) == snapshot) {
+                    saveSnapshot(project);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the files of changes that are neither in the project's history anymore nor
+     * needed to roll the snapshot back.
+     */
+    static protected void deleteUnusedChanges(Project project, File historyDir) {
+        File[] files = historyDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".change.zip")) {
+                try {
+                    long entryID = Long.parseLong(name.substring(0, name.length() - ".change.zip".length()));
+                    if (!project.history.hasEntry(entryID)) {
+                        file.delete();
+                    }
+                } catch (NumberFormatException e) {
+                    // not ours, leave it alone
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the given entry's change is still needed to roll the project's
+     *         snapshot back, and so must not be deleted yet
+     */
+    static public boolean isNeededBySnapshot(HistoryEntry entry) {
+        Snapshot snapshot = getSnapshot(entry.projectID);
+        return snapshot != null && snapshot.entryIDs.contains(entry.id);
+    }
+
+    static public void forgetProject(long id) {
+        setSnapshot(id, null);
+    }
+
+    static protected Snapshot getSnapshot(long id) {
+        synchronized (s_snapshots) {
+            return s_snapshots.get(id);
+        }
+    }
+
+    static protected void setSnapshot(long id, Snapshot snapshot) {
+        synchronized (s_snapshots) {
+            if (snapshot != null) {
+                s_snapshots.put(id, snapshot);
+            } else {
+                s_snapshots.remove(id);
+            }
+        }
+    }
+
+    static protected List<Long> getPastEntryIDs(Project project) {
+        List<HistoryEntry> entries = project.history.getLastPastEntries(0);
+        List<Long> ids = new ArrayList<Long>(entries.size());
+        for (HistoryEntry entry : entries) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+
+    static protected int getCommonPrefixLength(List<Long> ids1, List<Long> ids2) {
+        int length = 0;
+        while (length < ids1.size() && length < ids2.size() && ids1.get(length).equals(ids2.get(length))) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return how many entries must be reverted and applied to go from one history position
+     *         to the other
+     */
+    static protected int getDistance(List<Long> ids1, List<Long> ids2) {
+        int common = getCommonPrefixLength(ids1, ids2);
+        return ids1.size() - common + ids2.size() - common;
+    }
+
     static public Project load(File dir, long id) {
         try {
             File file = new File(dir, "data.zip");
             if (file.exists()) {
-                return loadFromFile(file, id);
+                return loadSnapshotAndLog(dir, file, id);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
+        // the log is only ever replayed on top of data.zip, so the next save of a project
+        // loaded from a fallback file writes a new snapshot
         try {
             File file = new File(dir, "data.temp.zip");
             if (file.exists()) {
@@ -137,25 +406,224 @@ public class ProjectUtilities {
         return null;
     }
 
+    /**
+     * Loads the snapshot and replays the last record of its log. Should that fail, say
+     * because a change file is damaged, earlier records are tried in turn, and the log is
+     * kept aside as data.TOKEN.unreplayed.log along with all change files, so that the
+     * edits past the record replayed are not lost once the project is saved again.
+     */
+    static protected Project loadSnapshotAndLog(File dir, File file, long id) throws Exception {
+        setSnapshot(id, null);
+
+        Project project = loadFromFile(file, id);
+        long token = loadSnapshotToken(file);
+        if (token == 0) {
+            return project; // written before logs were introduced
+        }
+
+        Snapshot snapshot = new Snapshot(token, getPastEntryIDs(project));
+
+        File logFile = new File(dir, "data.log");
+        List<String> records = logFile.exists() ? loadRecords(logFile, token) : new ArrayList<String>();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            String record = records.get(i);
+            try {
+                replayRecord(project, record);
+                snapshot.lastRecord = record;
+                break;
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                logger.warn("Failed to replay record {} of the log of project {}", i, id);
+                keepUnreplayedLog(dir, logFile, token);
+
+                // replaying may have left the project half way
+                project = loadFromFile(file, id);
+            }
+        }
+
+        setSnapshot(id, snapshot);
+        return project;
+    }
+
+    static protected void keepUnreplayedLog(File dir, File logFile, long token) throws IOException {
+        File keptFile = new File(dir, "data." + token + ".unreplayed.log");
+        if (keptFile.exists()) {
+            return;
+        }
+
+        FileInputStream in = new FileInputStream(logFile);
+        try {
+            FileOutputStream out = new FileOutputStream(keptFile);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        logger.warn("Kept the log of project {} as {}", dir.getName(), keptFile.getName());
+    }
+
+    /**
+     * @return whether the project has logs that could not be replayed, whose changes must
+     *         then all be kept
+     */
+    static protected boolean hasUnreplayedLogs(File dir) {
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".unreplayed.log")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the project, as loaded from its snapshot, to the history position of the given
+     * log record by reverting and applying history entries. Their changes are already saved,
+     * so unlike HistoryEntry.apply() this doesn't write them out again.
+     */
+    static protected void replayRecord(Project project, String record) throws Exception {
+        List<HistoryEntry> snapshotEntries = project.history.getLastPastEntries(0);
+
+        project.history.clear();
+        project.history.load(project, new LineNumberReader(new StringReader(record)));
+
+        List<HistoryEntry> entries = project.history.getLastPastEntries(0);
+
+        int common = 0;
+        while (common < snapshotEntries.size() && common < entries.size() &&
+                snapshotEntries.get(common).id == entries.get(common).id) {
+            common++;
+        }
+
+        for (int i = snapshotEntries.size() - 1; i >= common; i--) {
+            HistoryEntry entry = snapshotEntries.get(i);
+            entry.revert(project);
+            entry.setChange(null); // reloaded on demand
+        }
+        for (int i = common; i < entries.size(); i++) {
+            HistoryEntry entry = entries.get(i);
+            if (entry.getChange() == null) {
+                ProjectManager.singleton.getHistoryEntryManager().loadChange(entry);
+            }
+            synchronized (project) {
+                entry.getChange().apply(project);
+            }
+            entry.setChange(null);
+        }
+    }
+
+    /**
+     * @return the complete records of the given log, oldest first, or none if the log was
+     *         not made against the snapshot with the given token
+     */
+    static protected List<String> loadRecords(File logFile, long token) throws IOException {
+        List<String> records = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(logFile), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.equals("snapshot=" + token)) {
+                return records;
+            }
+
+            StringBuffer sb = new StringBuffer();
+            while ((line = reader.readLine()) != null) {
+                if ("/r/".equals(line)) {
+                    records.add(sb.toString());
+                    sb.setLength(0);
+                } else {
+                    sb.append(line);
+                    sb.append('\n');
+                }
+            }
+            return records;
+        } finally {
+            reader.close();
+        }
+    }
+
+    static protected long loadSnapshotToken(File file) throws Exception {
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            ZipEntry entry = zipFile.getEntry("snapshot.txt");
+            if (entry == null) {
+                return 0;
+            }
+
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(zipFile.getInputStream(entry), "UTF-8"));
+            try {
+                return Long.parseLong(reader.readLine().trim());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
     static protected Project loadFromFile(
             File file,
             long id
     ) throws Exception {
         ZipFile zipFile = new ZipFile(file);
         try {
-            Pool pool = new Pool();
-            ZipEntry poolEntry = zipFile.getEntry("pool.txt");
-            if (poolEntry != null) {
-                pool.load(zipFile.getInputStream(poolEntry));
-            } // else, it's a legacy project file
+            Pool pool = loadPool(zipFile);
+
+            ZipEntry rowEntry = zipFile.getEntry("rows.bin");
 
             return Project.loadFromInputStream(
                     zipFile.getInputStream(zipFile.getEntry("data.txt")),
                     id,
-                    pool
+                    pool,
+                    rowEntry != null ? zipFile.getInputStream(rowEntry) : null
             );
         } finally {
             zipFile.close();
         }
     }
+
+    /**
+     * Saves the pool as pool.bin or pool.txt, depending on the format in use.
+     */
+    static public void savePool(ZipOutputStream out, Pool pool) throws IOException {
+        out.putNextEntry(new ZipEntry(binary ? "pool.bin" : "pool.txt"));
+        try {
+            if (binary) {
+                pool.saveBinary(out);
+            } else {
+                pool.save(out);
+            }
+        } finally {
+            out.closeEntry();
+        }
+    }
+
+    /**
+     * Loads the pool saved by savePool(), in whichever format it was saved.
+     */
+    static public Pool loadPool(ZipFile zipFile) throws Exception {
+        Pool pool = new Pool();
+        ZipEntry poolEntry = zipFile.getEntry("pool.bin");
+        if (poolEntry != null) {
+            pool.loadBinary(zipFile.getInputStream(poolEntry));
+        } else {
+            poolEntry = zipFile.getEntry("pool.txt");
+            if (poolEntry != null) {
+                pool.load(zipFile.getInputStream(poolEntry));
+            } // else, it's a legacy project file
+        }
+        return pool;
+    }
 }
@@ -33,6 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.io.Writer;
 import java.util.Calendar;
@@ -49,10 +52,16 @@ import com.google.refine.Jsonizable;
 import com.google.refine.expr.EvalError;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.HasFields;
+import com.google.refine.util.BinaryUtilities;
 import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.Pool;
 
 public class Cell implements HasFields, Jsonizable {
+    static final protected JsonFactory jsonFactory = new JsonFactory();
+    
+    // set in the value tag of binary cells that have a recon
+    static final protected byte RECON_FLAG = (byte) 0x80;
+    
     final public Serializable   value;
     final public Recon          recon;
     
@@ -126,8 +135,31 @@ public class Cell implements HasFields, Jsonizable {
         }
     }
     
+    /**
+     * Writes the cell in the binary format, see BinaryUtilities. A missing cell is written
+     * as a null value.
+     */
+    public void saveBinary(DataOutput out, Pool pool) throws IOException {
+        BinaryUtilities.writeValue(out, value, recon != null ? RECON_FLAG : 0);
+        if (recon != null) {
+            out.writeLong(recon.id);
+            pool.pool(recon);
+        }
+    }
+    
+    static public Cell loadBinary(DataInput in, Pool pool) throws IOException {
+        int tag = in.readUnsignedByte();
+        Serializable value = (Serializable) BinaryUtilities.readValue(in, tag & ~RECON_FLAG & 0xFF);
+        Recon recon = null;
+        if ((tag & RECON_FLAG & 0xFF) != 0) {
+            recon = pool.getRecon(Long.toString(in.readLong()));
+        }
+        
+        // just like the JSON format, cells without values are not kept
+        return value != null ? new Cell(value, recon) : null;
+    }
+    
     static public Cell loadStreaming(String s, Pool pool) throws Exception {
-        JsonFactory jsonFactory = new JsonFactory(); 
         JsonParser jp = jsonFactory.createJsonParser(s);
         
         if (jp.nextToken() != JsonToken.START_OBJECT) {
@@ -0,0 +1,123 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one Cell instance between all the cells of a column that hold the same plain
+ * value. Most columns have far fewer distinct values than rows, so this stores each
+ * distinct value once per column and leaves a single reference in each row.
+ * 
+ * Only cells without recon and with immutable values (strings, numbers and booleans) are
+ * shared, since those are the only cells nobody can modify in place. Cells are told apart
+ * by their values' equals(), so 1 and 1.0 stay distinct. A column stops adding new entries
+ * once it has maxValuesPerColumn distinct values (usually an id or a free text column),
+ * so the dictionary never grows larger than what it can save.
+ */
+public class CellDictionary {
+    static public boolean enabled =
+        !"false".equals(System.getProperty("refine.cellDictionary"));
+    
+    static public int maxValuesPerColumn = 65536;
+    
+    final protected List<Map<Serializable, Cell>> _columns = new ArrayList<Map<Serializable, Cell>>();
+    
+    /**
+     * Shares the cells of all rows of the given project.
+     */
+    static public void compact(Project project) {
+        if (enabled) {
+            CellDictionary dictionary = new CellDictionary();
+            for (Row row : project.rows) {
+                dictionary.compact(row);
+            }
+        }
+    }
+    
+    /**
+     * Replaces the cells of the given row by their shared instances, and trims the row's
+     * cell list to its size.
+     */
+    public void compact(Row row) {
+        List<Cell> cells = row.cells;
+        for (int i = 0; i < cells.size(); i++) {
+            Cell cell = cells.get(i);
+            if (cell != null) {
+                Cell shared = getSharedCell(i, cell);
+                if (shared != cell) {
+                    cells.set(i, shared);
+                }
+            }
+        }
+        if (cells instanceof ArrayList<?>) {
+            ((ArrayList<Cell>) cells).trimToSize();
+        }
+    }
+    
+    /**
+     * @return the shared cell equal to the given one in the given column, or the given cell
+     *         itself if it cannot be or is not shared
+     */
+    public Cell getSharedCell(int cellIndex, Cell cell) {
+        if (cell.recon != null || !isImmutable(cell.value)) {
+            return cell;
+        }
+        
+        while (_columns.size() <= cellIndex) {
+            _columns.add(new HashMap<Serializable, Cell>());
+        }
+        
+        Map<Serializable, Cell> column = _columns.get(cellIndex);
+        Cell shared = column.get(cell.value);
+        if (shared == null) {
+            if (column.size() < maxValuesPerColumn) {
+                column.put(cell.value, cell);
+            }
+            return cell;
+        }
+        return shared;
+    }
+    
+    static protected boolean isImmutable(Object value) {
+        return value instanceof String ||
+            value instanceof Long ||
+            value instanceof Double ||
+            value instanceof Integer ||
+            value instanceof Boolean;
+    }
+}
@@ -35,6 +35,7 @@ package com.google.refine.model;
 
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -55,6 +56,7 @@ public class Column implements Jsonizable {
     private ReconStats      _reconStats;
     
     transient protected Map<String, Object> _precomputes;
+    transient protected ColumnValueIndex _valueIndex;
     
     public Column(int cellIndex, String originalName) {
         _cellIndex = cellIndex;
@@ -93,6 +95,42 @@ public class Column implements Jsonizable {
         return _reconStats;
     }
 
+    /**
+     * Reflect a change to a single cell of the column in its recon stats, if it has any.
+     */
+    public void updateReconStats(Cell oldCell, Cell newCell) {
+        if (_reconStats != null) {
+            _reconStats = _reconStats.update(oldCell, newCell);
+        }
+    }
+
+    /**
+     * Reflect rows of the project being replaced, added or removed in the column's recon
+     * stats, if it has any: the given old rows are gone and the given new rows are in.
+     */
+    public void updateReconStats(List<Row> oldRows, List<Row> newRows) {
+        if (_reconStats == null) {
+            return;
+        }
+        if (oldRows.size() == newRows.size()) {
+            // rows left in place don't count
+            for (int r = 0; r < oldRows.size(); r++) {
+                Row oldRow = oldRows.get(r);
+                Row newRow = newRows.get(r);
+                if (oldRow != newRow) {
+                    _reconStats = _reconStats.update(oldRow.getCell(_cellIndex), newRow.getCell(_cellIndex));
+                }
+            }
+        } else {
+            for (Row row : oldRows) {
+                _reconStats = _reconStats.update(row.getCell(_cellIndex), null);
+            }
+            for (Row row : newRows) {
+                _reconStats = _reconStats.update(null, row.getCell(_cellIndex));
+            }
+        }
+    }
+
     @Override
     public void write(JSONWriter writer, Properties options)
             throws JSONException {
@@ -120,26 +158,55 @@ public class Column implements Jsonizable {
      * {@link InterProjectModel#flushJoinsInvolvingProjectColumn(long, String)}.
      * e.g. ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName())
      */
-    public void clearPrecomputes() {
+    synchronized public void clearPrecomputes() {
         if (_precomputes != null) {
             _precomputes.clear();
         }
     }
     
-    public Object getPrecompute(String key) {
+    synchronized public Object getPrecompute(String key) {
         if (_precomputes != null) {
             return _precomputes.get(key);
         }
         return null;
     }
     
-    public void setPrecompute(String key, Object value) {
+    synchronized public void setPrecompute(String key, Object value) {
         if (_precomputes == null) {
             _precomputes = new HashMap<String, Object>();
         }
         _precomputes.put(key, value);
     }
     
+    /**
+     * Get the index of this column's values, building it if needed. Unlike precomputes,
+     * the index survives cell changes, which update it in place, and is only dropped
+     * when rows are added, removed or reordered.
+     */
+    synchronized public ColumnValueIndex getValueIndex(Project project) {
+        if (_valueIndex == null || _valueIndex.getRowCount() != project.rows.size()) {
+            _valueIndex = new ColumnValueIndex(project, _cellIndex);
+        }
+        return _valueIndex;
+    }
+    
+    synchronized public void updateValueIndex(int rowIndex, Cell cell) {
+        if (_valueIndex != null) {
+            _valueIndex.update(rowIndex, cell);
+        }
+    }
+    
+    /**
+     * @return the estimated memory taken by the trigram index of this column's values, if any
+     */
+    synchronized public long getTextIndexSize() {
+        return _valueIndex != null ? _valueIndex.getTextIndexSize() : 0;
+    }
+    
+    synchronized public void clearValueIndex() {
+        _valueIndex = null;
+    }
+    
     public void save(Writer writer) {
         JSONWriter jsonWriter = new JSONWriter(writer);
         try {
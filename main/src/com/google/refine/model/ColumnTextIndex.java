@@ -0,0 +1,185 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trigram index over the distinct values of a column, as collected by its
+ * {@link ColumnValueIndex}, so that a text search only needs to check the values containing
+ * all trigrams of its query rather than every row. Values are indexed by their characters
+ * lowercased one at a time.
+ * 
+ * The value dictionary only ever grows, so the index simply catches up with it before each
+ * lookup and cell changes never invalidate it.
+ */
+public class ColumnTextIndex {
+    /**
+     * Indexes that would grow larger than this many bytes are given up on, and searches on
+     * their columns go back to checking every distinct value.
+     */
+    static public long maxSize = Long.getLong("refine.textIndexMaxSize", 128L * 1024 * 1024);
+    
+    static final protected int ENTRY_SIZE = 96; // hash map entry, boxed key and postings
+    
+    static protected class Postings {
+        int[] ids = new int[2];
+        int   size;
+    }
+    
+    final protected ColumnValueIndex    _valueIndex;
+    final protected Map<Long, Postings> _postings = new HashMap<Long, Postings>();
+    protected int                       _indexedCount;
+    protected long                      _size;
+    protected boolean                   _overBudget;
+    
+    public ColumnTextIndex(ColumnValueIndex valueIndex) {
+        _valueIndex = valueIndex;
+    }
+    
+    /**
+     * @return the estimated memory taken by the index, in bytes
+     */
+    synchronized public long getSize() {
+        return _size;
+    }
+    
+    static public String fold(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * Get the values that might contain the given text. Any value containing it, once both
+     * are lowercased character by character, is among them.
+     * 
+     * @return the ids of the candidate values in increasing order, or null if all values
+     *         are candidates because the text is too short or the index is too large
+     */
+    synchronized public int[] getCandidates(String text) {
+        String s = fold(text);
+        if (s.length() < 3 || !catchUp()) {
+            return null;
+        }
+        
+        List<Postings> lists = new ArrayList<Postings>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            Postings postings = _postings.get(makeTrigram(s, i));
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        Collections.sort(lists, new Comparator<Postings>() {
+            @Override
+            public int compare(Postings o1, Postings o2) {
+                return o1.size - o2.size;
+            }
+        });
+        
+        int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int count = candidates.length;
+        for (int l = 1; l < lists.size() && count > 0; l++) {
+            Postings postings = lists.get(l);
+            if (postings == lists.get(l - 1)) {
+                continue; // repeated trigram
+            }
+            
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                int found = Arrays.binarySearch(postings.ids, from, postings.size, candidates[i]);
+                if (found >= 0) {
+                    candidates[kept++] = candidates[i];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+            count = kept;
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+    
+    /**
+     * Index values added to the dictionary since the last call.
+     * 
+     * @return false if the index has outgrown its budget
+     */
+    protected boolean catchUp() {
+        int count = _valueIndex.getValueCount();
+        while (!_overBudget && _indexedCount < count) {
+            Object value = _valueIndex.getValue(_indexedCount);
+            add(_indexedCount, fold(value.toString()));
+            _indexedCount++;
+            
+            if (_size > maxSize) {
+                _overBudget = true;
+                _postings.clear();
+                _size = 0;
+            }
+        }
+        return !_overBudget;
+    }
+    
+    protected void add(int id, String s) {
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            Long trigram = makeTrigram(s, i);
+            Postings postings = _postings.get(trigram);
+            if (postings == null) {
+                postings = new Postings();
+                _postings.put(trigram, postings);
+                _size += ENTRY_SIZE + 4 * postings.ids.length;
+            } else if (postings.ids[postings.size - 1] == id) {
+                continue; // trigram seen earlier in the same value
+            } else if (postings.size == postings.ids.length) {
+                postings.ids = Arrays.copyOf(postings.ids, postings.size * 2);
+                _size += 4 * postings.size;
+            }
+            postings.ids[postings.size++] = id;
+        }
+    }
+    
+    static protected long makeTrigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.refine.expr.ExpressionUtils;
+
+/**
+ * A dictionary of the distinct values in a column, plus the dictionary id of the value in
+ * each row. Facets and filters on the plain "value" expression of a column can then work
+ * on integers instead of evaluating the expression on every row.
+ * 
+ * Values are told apart by their string forms, just like list facet choices are, so the
+ * number 1 and the string "1" share an id. Such ids are flagged as mixed, for users of the
+ * index that compare values by type, like filters, to check those rows' actual values. Ids
+ * of values that no longer occur in the column are not reclaimed, so users of the index
+ * must expect some dictionary entries to have no rows.
+ */
+public class ColumnValueIndex {
+    static final public int BLANK = -1;
+    static final public int ERROR = -2;
+    
+    final protected int                  _cellIndex;
+    final protected List<Object>         _values = new ArrayList<Object>();
+    final protected Map<String, Integer> _valueToId = new HashMap<String, Integer>();
+    final protected BitSet               _mixedIds = new BitSet();
+    protected int[]                      _valueIds;
+    protected ColumnTextIndex            _textIndex;
+    
+    /**
+     * @return whether the given facet expression just reads the cell's value, and so can
+     *         be answered with this index
+     */
+    static public boolean isValueExpression(String expression) {
+        String s = expression.trim();
+        return "value".equals(s) || "grel:value".equals(s);
+    }
+    
+    public ColumnValueIndex(Project project, int cellIndex) {
+        _cellIndex = cellIndex;
+        
+        int c = project.rows.size();
+        _valueIds = new int[c];
+        for (int r = 0; r < c; r++) {
+            _valueIds[r] = getOrAddValueId(project.rows.get(r).getCell(cellIndex));
+        }
+    }
+    
+    public int getRowCount() {
+        return _valueIds.length;
+    }
+    
+    /**
+     * @return the dictionary id of the row's value, or BLANK or ERROR
+     */
+    public int getValueId(int rowIndex) {
+        return _valueIds[rowIndex];
+    }
+    
+    /**
+     * @return the number of dictionary entries, including those no longer used
+     */
+    synchronized public int getValueCount() {
+        return _values.size();
+    }
+    
+    synchronized public Object getValue(int valueId) {
+        return _values.get(valueId);
+    }
+    
+    /**
+     * @return whether rows with the given id may hold values other than getValue(valueId),
+     *         that only have the same string form
+     */
+    synchronized public boolean isMixed(int valueId) {
+        return _mixedIds.get(valueId);
+    }
+    
+    /**
+     * Get the trigram index of the dictionary's values, creating it if needed.
+     */
+    synchronized public ColumnTextIndex getTextIndex() {
+        if (_textIndex == null) {
+            _textIndex = new ColumnTextIndex(this);
+        }
+        return _textIndex;
+    }
+    
+    /**
+     * @return the estimated memory taken by the trigram index of the values, if any
+     */
+    synchronized public long getTextIndexSize() {
+        return _textIndex != null ? _textIndex.getSize() : 0;
+    }
+    
+    /**
+     * Reflect a change to a single cell of the column.
+     */
+    synchronized public void update(int rowIndex, Cell cell) {
+        if (rowIndex >= 0 && rowIndex < _valueIds.length) {
+            _valueIds[rowIndex] = getOrAddValueId(cell);
+        }
+    }
+    
+    synchronized protected int getOrAddValueId(Cell cell) {
+        Object value = cell == null ? null : cell.value;
+        if (ExpressionUtils.isError(value)) {
+            return ERROR;
+        } else if (!ExpressionUtils.isNonBlankData(value)) {
+            return BLANK;
+        }
+        
+        String valueString = value.toString();
+        Integer id = _valueToId.get(valueString);
+        if (id == null) {
+            id = _values.size();
+            _values.add(value);
+            _valueToId.put(valueString, id);
+        } else if (!value.equals(_values.get(id))) {
+            _mixedIds.set(id);
+        }
+        return id;
+    }
+}
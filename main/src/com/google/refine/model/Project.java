@@ -33,6 +33,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -59,6 +63,7 @@ import com.google.refine.ProjectMetadata;
 import com.google.refine.RefineServlet;
 import com.google.refine.history.History;
 import com.google.refine.process.ProcessManager;
+import com.google.refine.util.BinaryUtilities;
 import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.Pool;
 
@@ -79,6 +84,8 @@ public class Project {
     
     final public History                    history;
     
+    transient final public ProjectLock      lock = new ProjectLock();
+    
     transient public ProcessManager processManager = new ProcessManager();
     transient private Date _lastSave = new Date();
 
@@ -124,6 +131,14 @@ public class Project {
     }
 
     public void saveToOutputStream(OutputStream out, Pool pool) throws IOException {
+        saveToOutputStream(out, pool, false);
+    }
+    
+    /**
+     * @param binaryRows whether to leave the rows out, for them to be saved separately
+     *                   with saveRowsBinary()
+     */
+    public void saveToOutputStream(OutputStream out, Pool pool, boolean binaryRows) throws IOException {
         for (OverlayModel overlayModel : overlayModels.values()) {
             try {
                 overlayModel.onBeforeSave(this);
@@ -137,6 +152,9 @@ public class Project {
             Properties options = new Properties();
             options.setProperty("mode", "save");
             options.put("pool", pool);
+            if (binaryRows) {
+                options.put("binaryRows", true);
+            }
 
             saveToWriter(writer, options);
         } finally {
@@ -173,20 +191,48 @@ public class Project {
             writer.write('\n');
         }
         
-        writer.write("rowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
+        if (options.containsKey("binaryRows")) {
+            writer.write("binaryRowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
+        } else {
+            writer.write("rowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
+            for (Row row : rows) {
+                row.save(writer, options); writer.write('\n');
+            }
+        }
+    }
+    
+    /**
+     * Writes the rows in the binary format, see BinaryUtilities, pooling their recons.
+     */
+    public void saveRowsBinary(OutputStream out, Pool pool) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        BinaryUtilities.writeHeader(dos, BinaryUtilities.ROWS_MAGIC);
+        dos.writeInt(rows.size());
+        
+        BinaryUtilities.RecordBuffer buffer = new BinaryUtilities.RecordBuffer();
         for (Row row : rows) {
-            row.save(writer, options); writer.write('\n');
+            row.saveBinary(buffer.out, pool);
+            buffer.writeRecord(dos);
         }
+        dos.flush();
     }
     
     static public Project loadFromInputStream(InputStream is, long id, Pool pool) throws Exception {
-        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool);
+        return loadFromInputStream(is, id, pool, null);
+    }
+    
+    /**
+     * @param rowStream the rows saved by saveRowsBinary(), if they were saved separately
+     */
+    static public Project loadFromInputStream(InputStream is, long id, Pool pool, InputStream rowStream) throws Exception {
+        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool, rowStream);
     }
     
     static private Project loadFromReader(
         LineNumberReader reader,
         long id,
-        Pool pool
+        Pool pool,
+        InputStream rowStream
     ) throws Exception {
         long start = System.currentTimeMillis();
         
@@ -212,15 +258,38 @@ public class Project {
                 project.history.load(project, reader);
             } else if ("rowCount".equals(field)) {
                 int count = Integer.parseInt(value);
+                CellDictionary dictionary = CellDictionary.enabled ? new CellDictionary() : null;
 
                 for (int i = 0; i < count; i++) {
                     line = reader.readLine();
                     if (line != null) {
                         Row row = Row.load(line, pool);
+                        if (dictionary != null) {
+                            dictionary.compact(row);
+                        }
                         project.rows.add(row);
                         maxCellCount = Math.max(maxCellCount, row.cells.size());
                     }
                 }
+            } else if ("binaryRowCount".equals(field)) {
+                if (rowStream == null) {
+                    throw new IOException("Missing binary rows");
+                }
+                
+                DataInputStream in = new DataInputStream(new BufferedInputStream(rowStream));
+                BinaryUtilities.readHeader(in, BinaryUtilities.ROWS_MAGIC);
+                
+                int count = in.readInt();
+                CellDictionary dictionary = CellDictionary.enabled ? new CellDictionary() : null;
+                
+                for (int i = 0; i < count; i++) {
+                    Row row = Row.loadBinary(BinaryUtilities.readRecord(in), pool);
+                    if (dictionary != null) {
+                        dictionary.compact(row);
+                    }
+                    project.rows.add(row);
+                    maxCellCount = Math.max(maxCellCount, row.cells.size());
+                }
             } else if (field.startsWith("overlayModel:")) {
                 String modelName = field.substring("overlayModel:".length());
                 if (s_overlayModelClasses.containsKey(modelName)) {
@@ -252,9 +321,44 @@ public class Project {
     }
 
     public void update() {
+        // rows might have been added, removed or reordered
+        for (Column column : columnModel.columns) {
+            column.clearValueIndex();
+        }
         columnModel.update();
         recordModel.update(this);
     }
+    
+    /**
+     * Cell changes maintain the columns' recon stats, but changes that add, remove or
+     * replace rows must tell them which rows are gone and which ones took their place.
+     */
+    public void updateReconStats(List<Row> oldRows, List<Row> newRows) {
+        for (Column column : columnModel.columns) {
+            column.updateReconStats(oldRows, newRows);
+        }
+    }
+    
+    /**
+     * Counts the recon stats of the columns that have some afresh, after a change that
+     * replaced both rows and columns.
+     */
+    public void recountReconStats() {
+        for (Column column : columnModel.columns) {
+            if (column.getReconStats() != null) {
+                column.setReconStats(ReconStats.create(this, column.getCellIndex()));
+            }
+        }
+    }
+    
+    /**
+     * Brings the models up to date after a change that kept every row in place and only
+     * made cells blank or non-blank within the given range of rows, or added columns.
+     */
+    public void updateRows(int fromRowIndex, int toRowIndex) {
+        columnModel.update();
+        recordModel.update(this, fromRowIndex, toRowIndex);
+    }
 
 
     //wrapper of processManager variable to allow unit testing
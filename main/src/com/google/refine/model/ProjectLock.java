@@ -0,0 +1,127 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+/**
+ * Coordinates access to a project: changes get applied under the write lock, one at a time,
+ * while commands that only read the project and saves hold the read lock, so that they see
+ * a consistent project without waiting on each other.
+ * 
+ * The write lock must be acquired before the project's monitor or its history's, and a thread
+ * holding the read lock must not ask for the write lock. Neither lock may be asked for while
+ * holding the project manager's monitor, as threads holding them do go on to look up projects.
+ */
+public class ProjectLock {
+    
+    /**
+     * How long threads waited for one kind of lock, across all projects.
+     */
+    static public class WaitStats {
+        final protected AtomicLong _count = new AtomicLong();
+        final protected AtomicLong _totalNanos = new AtomicLong();
+        final protected AtomicLong _maxNanos = new AtomicLong();
+        
+        protected void record(long nanos) {
+            _count.incrementAndGet();
+            _totalNanos.addAndGet(nanos);
+            
+            long max = _maxNanos.get();
+            while (nanos > max && !_maxNanos.compareAndSet(max, nanos)) {
+                max = _maxNanos.get();
+            }
+        }
+        
+        public long getCount() {
+            return _count.get();
+        }
+        
+        public long getTotalWaitMillis() {
+            return _totalNanos.get() / 1000000;
+        }
+        
+        public long getMaxWaitMillis() {
+            return _maxNanos.get() / 1000000;
+        }
+        
+        public void write(JSONWriter writer) throws JSONException {
+            writer.object();
+            writer.key("count"); writer.value(getCount());
+            writer.key("totalWaitMillis"); writer.value(getTotalWaitMillis());
+            writer.key("maxWaitMillis"); writer.value(getMaxWaitMillis());
+            writer.endObject();
+        }
+    }
+    
+    static final public WaitStats readStats = new WaitStats();
+    static final public WaitStats writeStats = new WaitStats();
+    
+    final protected ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+    
+    public void lockRead() {
+        long start = System.nanoTime();
+        _lock.readLock().lock();
+        readStats.record(System.nanoTime() - start);
+    }
+    
+    public void unlockRead() {
+        _lock.readLock().unlock();
+    }
+    
+    public void lockWrite() {
+        long start = System.nanoTime();
+        _lock.writeLock().lock();
+        writeStats.record(System.nanoTime() - start);
+    }
+    
+    /**
+     * @return whether the write lock was free and is now held
+     */
+    public boolean tryLockWrite() {
+        return _lock.writeLock().tryLock();
+    }
+    
+    public void unlockWrite() {
+        _lock.writeLock().unlock();
+    }
+    
+    public boolean isWriteLockedByCurrentThread() {
+        return _lock.isWriteLockedByCurrentThread();
+    }
+}
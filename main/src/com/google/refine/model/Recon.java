@@ -33,6 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -47,12 +50,15 @@ import org.json.JSONWriter;
 
 import com.google.refine.Jsonizable;
 import com.google.refine.expr.HasFields;
+import com.google.refine.util.BinaryUtilities;
 import com.google.refine.util.Pool;
  
 public class Recon implements HasFields, Jsonizable {
     
     private static final String FREEBASE_SCHEMA_SPACE = "http://rdf.freebase.com/ns/type.object.id";
     private static final String FREEBASE_IDENTIFIER_SPACE = "http://rdf.freebase.com/ns/type.object.mid";
+    
+    static final protected JsonFactory jsonFactory = new JsonFactory();
 
     static public enum Judgment {
         None,
@@ -312,8 +318,78 @@ public class Recon implements HasFields, Jsonizable {
         writer.endObject();
     }
     
+    /**
+     * Writes the recon in the binary format, see BinaryUtilities. This always includes
+     * what the JSON format only writes in save mode.
+     */
+    public void saveBinary(DataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeLong(judgmentHistoryEntry);
+        BinaryUtilities.writeString(out, service);
+        BinaryUtilities.writeString(out, identifierSpace);
+        BinaryUtilities.writeString(out, schemaSpace);
+        
+        out.writeByte(judgment.ordinal());
+        BinaryUtilities.writeString(out, judgmentAction);
+        out.writeInt(judgmentBatchSize);
+        
+        out.writeBoolean(match != null);
+        if (match != null) {
+            match.saveBinary(out);
+            out.writeInt(matchRank);
+        }
+        
+        out.writeInt(candidates != null ? candidates.size() : 0);
+        if (candidates != null) {
+            for (ReconCandidate c : candidates) {
+                c.saveBinary(out);
+            }
+        }
+        
+        out.writeInt(features.length);
+        for (Object o : features) {
+            BinaryUtilities.writeValue(out, o);
+        }
+    }
+    
+    static public Recon loadBinary(DataInput in) throws IOException {
+        Recon recon = new Recon(in.readLong(), in.readLong());
+        recon.service = BinaryUtilities.readString(in);
+        recon.identifierSpace = BinaryUtilities.readString(in);
+        if (recon.identifierSpace == null) {
+            recon.identifierSpace = FREEBASE_IDENTIFIER_SPACE;
+        }
+        recon.schemaSpace = BinaryUtilities.readString(in);
+        if (recon.schemaSpace == null) {
+            recon.schemaSpace = FREEBASE_SCHEMA_SPACE;
+        }
+        
+        recon.judgment = Judgment.values()[in.readUnsignedByte()];
+        recon.judgmentAction = BinaryUtilities.readString(in);
+        recon.judgmentBatchSize = in.readInt();
+        
+        if (in.readBoolean()) {
+            recon.match = ReconCandidate.loadBinary(in);
+            recon.matchRank = in.readInt();
+        }
+        
+        int candidateCount = in.readInt();
+        for (int i = 0; i < candidateCount; i++) {
+            recon.addCandidate(ReconCandidate.loadBinary(in));
+        }
+        
+        int featureCount = in.readInt();
+        for (int i = 0; i < featureCount; i++) {
+            Object feature = BinaryUtilities.readValue(in);
+            if (i < recon.features.length) {
+                recon.features[i] = feature;
+            }
+        }
+        
+        return recon;
+    }
+    
     static public Recon loadStreaming(String s, Pool pool) throws Exception {
-        JsonFactory jsonFactory = new JsonFactory(); 
         JsonParser jp = jsonFactory.createJsonParser(s);
         
         if (jp.nextToken() != JsonToken.START_OBJECT) {
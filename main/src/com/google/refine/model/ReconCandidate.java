@@ -33,6 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -45,8 +48,11 @@ import org.json.JSONWriter;
 
 import com.google.refine.Jsonizable;
 import com.google.refine.expr.HasFields;
+import com.google.refine.util.BinaryUtilities;
 
 public class ReconCandidate implements HasFields, Jsonizable {
+    static final protected JsonFactory jsonFactory = new JsonFactory();
+    
     final public String     id;
     final public String     name;
     final public String[]   types;
@@ -98,8 +104,28 @@ public class ReconCandidate implements HasFields, Jsonizable {
         writer.endObject();
     }
     
+    public void saveBinary(DataOutput out) throws IOException {
+        BinaryUtilities.writeString(out, id);
+        BinaryUtilities.writeString(out, name);
+        out.writeDouble(score);
+        out.writeInt(types.length);
+        for (String typeID : types) {
+            BinaryUtilities.writeString(out, typeID);
+        }
+    }
+    
+    static public ReconCandidate loadBinary(DataInput in) throws IOException {
+        String id = BinaryUtilities.readString(in);
+        String name = BinaryUtilities.readString(in);
+        double score = in.readDouble();
+        String[] types = new String[in.readInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = BinaryUtilities.readString(in);
+        }
+        return new ReconCandidate(id, name, types, score);
+    }
+    
     static public ReconCandidate loadStreaming(String s) throws Exception {
-        JsonFactory jsonFactory = new JsonFactory(); 
         JsonParser jp = jsonFactory.createJsonParser(s);
         
         if (jp.nextToken() != JsonToken.START_OBJECT) {
@@ -39,12 +39,21 @@ import java.util.Properties;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.refine.Jsonizable;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Recon.Judgment;
 
 public class ReconStats implements Jsonizable {
+    final static Logger logger = LoggerFactory.getLogger("recon-stats");
+    
+    /**
+     * Whether to check incrementally maintained stats against a full count of the column.
+     */
+    static public boolean selfCheck = Boolean.getBoolean("refine.reconStatsSelfCheck");
+    
     static public ReconStats load(JSONObject obj) throws Exception {
         return new ReconStats(
                 obj.getInt("nonBlanks"),
@@ -74,6 +83,70 @@ public class ReconStats implements Jsonizable {
         writer.endObject();
     }
     
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof ReconStats) {
+            ReconStats stats = (ReconStats) o;
+            return nonBlanks == stats.nonBlanks &&
+                newTopics == stats.newTopics &&
+                matchedTopics == stats.matchedTopics;
+        }
+        return false;
+    }
+    
+    @Override
+    public int hashCode() {
+        return (nonBlanks * 31 + newTopics) * 31 + matchedTopics;
+    }
+    
+    /**
+     * @return the stats of the column once one of its cells is replaced by another
+     */
+    public ReconStats update(Cell oldCell, Cell newCell) {
+        int nonBlankChange = countNonBlank(newCell) - countNonBlank(oldCell);
+        int newChange = countJudgment(newCell, Judgment.New) - countJudgment(oldCell, Judgment.New);
+        int matchChange = countJudgment(newCell, Judgment.Matched) - countJudgment(oldCell, Judgment.Matched);
+        
+        if (nonBlankChange == 0 && newChange == 0 && matchChange == 0) {
+            return this;
+        }
+        return new ReconStats(
+            nonBlanks + nonBlankChange,
+            newTopics + newChange,
+            matchedTopics + matchChange);
+    }
+    
+    static protected int countNonBlank(Cell cell) {
+        return cell != null && ExpressionUtils.isNonBlankData(cell.value) ? 1 : 0;
+    }
+    
+    static protected int countJudgment(Cell cell, Judgment judgment) {
+        return countNonBlank(cell) == 1 && cell.recon != null && cell.recon.judgment == judgment ? 1 : 0;
+    }
+    
+    /**
+     * In self-check mode, count the column's stats afresh and report if the given
+     * incrementally maintained stats differ.
+     * 
+     * @return the counted stats in self-check mode, the given stats otherwise
+     */
+    static public ReconStats check(Project project, int cellIndex, ReconStats stats) {
+        if (selfCheck && stats != null) {
+            ReconStats counted = create(project, cellIndex);
+            if (!counted.equals(stats)) {
+                logger.warn("Recon stats of column " + cellIndex + " in project " + project.id +
+                    " drifted: maintained " + stats.toString() + " but counted " + counted.toString());
+            }
+            return counted;
+        }
+        return stats;
+    }
+    
+    @Override
+    public String toString() {
+        return nonBlanks + " non-blank, " + newTopics + " new, " + matchedTopics + " matched";
+    }
+    
     static public ReconStats create(Project project, int cellIndex) {
         int nonBlanks = 0;
         int newTopics = 0;
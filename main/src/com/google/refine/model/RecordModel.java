@@ -69,38 +69,72 @@ public class RecordModel implements Jsonizable {
     final static public class RowDependency {
         public int recordIndex;
         public CellDependency[] cellDependencies;
-        public List<Integer> contextRows;
+        public int[] contextRows;
         
         @Override
         public String toString() {
-            return "Idx: "+recordIndex+" CellDeps: "+Arrays.toString(cellDependencies)+" Rows:"+contextRows;
+            return "Idx: "+recordIndex+" CellDeps: "+Arrays.toString(cellDependencies)+" Rows:"+Arrays.toString(contextRows);
         }
     }
 
-    protected List<RowDependency> _rowDependencies;
-    protected List<Record> _records;
+    /**
+     * For each row, null if the row depends on no other row, or else a run of triples
+     * holding a dependent cell's index, its context row's index and that row's key cell
+     * index, ordered by dependent cell index.
+     */
+    protected int[][] _dependencies;
+    
+    /**
+     * Indices of the rows that start records, that is, the rows that depend on no
+     * other row, in increasing order.
+     */
+    protected int[] _recordStarts;
+    
+    protected int _cellCount; // length of the cell dependency arrays handed out
+    protected String _keyedGroupsSignature; // what the dependencies were computed against
 
     public RowDependency getRowDependency(int rowIndex) {
-        return _rowDependencies != null && rowIndex >= 0 && rowIndex < _rowDependencies.size() ?
-                _rowDependencies.get(rowIndex) : null;
+        if (_dependencies == null || rowIndex < 0 || rowIndex >= _dependencies.length) {
+            return null;
+        }
+        
+        RowDependency rowDependency = new RowDependency();
+        int[] dependencies = _dependencies[rowIndex];
+        if (dependencies == null) {
+            rowDependency.recordIndex = Arrays.binarySearch(_recordStarts, rowIndex);
+        } else {
+            rowDependency.recordIndex = -1;
+            rowDependency.cellDependencies = new CellDependency[_cellCount];
+            rowDependency.contextRows = new int[dependencies.length / 3];
+            for (int i = 0; i < dependencies.length; i += 3) {
+                rowDependency.cellDependencies[dependencies[i]] =
+                    new CellDependency(dependencies[i + 1], dependencies[i + 2]);
+                rowDependency.contextRows[i / 3] = dependencies[i + 1];
+            }
+            Arrays.sort(rowDependency.contextRows);
+        }
+        return rowDependency;
     }
 
     public int getRecordCount() {
-        return _records.size();
+        return _recordStarts != null ? _recordStarts.length : 0;
     }
 
     public Record getRecord(int recordIndex) {
-        return _records != null && recordIndex >= 0 && recordIndex < _records.size() ?
-                _records.get(recordIndex) : null;
+        if (_recordStarts != null && recordIndex >= 0 && recordIndex < _recordStarts.length) {
+            return new Record(
+                _recordStarts[recordIndex],
+                recordIndex + 1 < _recordStarts.length ? _recordStarts[recordIndex + 1] : _dependencies.length,
+                recordIndex
+            );
+        }
+        return null;
     }
 
     public Record getRecordOfRow(int rowIndex) {
-        RowDependency rd = getRowDependency(rowIndex);
-        if (rd != null) {
-            if (rd.recordIndex < 0) {
-                rd = getRowDependency(rd.contextRows.get(0));
-            }
-            return getRecord(rd.recordIndex);
+        if (_dependencies != null && rowIndex >= 0 && rowIndex < _dependencies.length) {
+            int recordIndex = Arrays.binarySearch(_recordStarts, rowIndex);
+            return getRecord(recordIndex >= 0 ? recordIndex : -(recordIndex + 1) - 1);
         }
         return null;
     }
@@ -112,14 +146,15 @@ public class RecordModel implements Jsonizable {
         writer.object();
         writer.key("hasRecords");
         writer.value(
-            _records != null && _rowDependencies != null &&
-            _records.size() < _rowDependencies.size());
+            _recordStarts != null && _dependencies != null &&
+            _recordStarts.length < _dependencies.length);
         writer.endObject();
     }
 
     static protected class KeyedGroup {
         int[]   cellIndices;
         int     keyCellIndex;
+        boolean root;
         
         @Override
         public String toString() {
@@ -130,85 +165,218 @@ public class RecordModel implements Jsonizable {
             return "key: " + keyCellIndex + " cells: " + sb.toString();
         }
     }
+    
+    /**
+     * Scratch space for working out one row's dependencies at a time.
+     */
+    static protected class DependencyBuilder {
+        final int[] contextRows;
+        final int[] contextCells;
+        final boolean[] dependent;
+        final int[] dependentCells;
+        int count;
+        
+        DependencyBuilder(int cellCount) {
+            contextRows = new int[cellCount];
+            contextCells = new int[cellCount];
+            dependent = new boolean[cellCount];
+            dependentCells = new int[cellCount];
+        }
+        
+        void set(int cellIndex, int contextRowIndex, int contextCellIndex) {
+            if (!dependent[cellIndex]) {
+                dependent[cellIndex] = true;
+                dependentCells[count++] = cellIndex;
+            }
+            contextRows[cellIndex] = contextRowIndex; // later groups win
+            contextCells[cellIndex] = contextCellIndex;
+        }
+        
+        int[] build() {
+            if (count == 0) {
+                return null;
+            }
+            Arrays.sort(dependentCells, 0, count);
+            
+            int[] dependencies = new int[count * 3];
+            for (int i = 0; i < count; i++) {
+                int cellIndex = dependentCells[i];
+                dependencies[i * 3] = cellIndex;
+                dependencies[i * 3 + 1] = contextRows[cellIndex];
+                dependencies[i * 3 + 2] = contextCells[cellIndex];
+                dependent[cellIndex] = false;
+            }
+            count = 0;
+            return dependencies;
+        }
+    }
 
+    /**
+     * Recomputes the dependencies and records of all rows.
+     */
     synchronized public void update(Project project) {
         synchronized (project) {
+            rebuild(project, computeKeyedGroups(project.columnModel));
+        }
+    }
+    
+    /**
+     * Recomputes the dependencies and records affected by a change that didn't add, remove or
+     * move any row and that only changed whether cells are blank in the given range of rows.
+     * That is only the rows in the range and the rows after it that take context from them.
+     * Falls back on recomputing everything if the rows or the column groups have changed.
+     */
+    synchronized public void update(Project project, int fromRowIndex, int toRowIndex) {
+        synchronized (project) {
+            List<KeyedGroup> keyedGroups = computeKeyedGroups(project.columnModel);
             List<Row> rows = project.rows;
             int rowCount = rows.size();
-
-            ColumnModel columnModel = project.columnModel;
-            List<KeyedGroup> keyedGroups = computeKeyedGroups(columnModel);
-            int groupCount = keyedGroups.size();
-
-            int[] lastNonBlankRowsByGroup = new int[keyedGroups.size()];
-            for (int i = 0; i < lastNonBlankRowsByGroup.length; i++) {
-                lastNonBlankRowsByGroup[i] = -1;
+            
+            if (_dependencies == null || _dependencies.length != rowCount ||
+                    !getSignature(keyedGroups).equals(_keyedGroupsSignature)) {
+                rebuild(project, keyedGroups);
+                return;
             }
-
-            _rowDependencies = new ArrayList<RowDependency>(rowCount);
-
-            int recordIndex = 0;
-            for (int r = 0; r < rowCount; r++) {
+            
+            // the root group takes in new columns, whose cells can only be in the range
+            _cellCount = Math.max(_cellCount, project.columnModel.getMaxCellIndex() + 1);
+            
+            fromRowIndex = Math.max(0, fromRowIndex);
+            toRowIndex = Math.min(rowCount, toRowIndex);
+            if (fromRowIndex >= toRowIndex) {
+                return;
+            }
+            
+            int groupCount = keyedGroups.size();
+            int[] lastNonBlankRowsByGroup = new int[groupCount];
+            Arrays.fill(lastNonBlankRowsByGroup, -1);
+            
+            int found = 0;
+            for (int r = fromRowIndex - 1; r >= 0 && found < groupCount; r--) {
                 Row row = rows.get(r);
-                RowDependency rowDependency = new RowDependency();
-
                 for (int g = 0; g < groupCount; g++) {
-                    KeyedGroup group = keyedGroups.get(g);
-
-                    if (!ExpressionUtils.isNonBlankData(row.getCellValue(group.keyCellIndex))) {
-                        int contextRowIndex = lastNonBlankRowsByGroup[g];
-                        if (contextRowIndex >= 0) {
-                            for (int dependentCellIndex : group.cellIndices) {
-                                if (ExpressionUtils.isNonBlankData(row.getCellValue(dependentCellIndex))) {
-                                    setRowDependency(
-                                            project,
-                                            rowDependency,
-                                            dependentCellIndex,
-                                            contextRowIndex,
-                                            group.keyCellIndex
-                                    );
-                                }
-                            }
-                        }
-                    } else {
+                    if (lastNonBlankRowsByGroup[g] < 0 &&
+                            ExpressionUtils.isNonBlankData(row.getCellValue(keyedGroups.get(g).keyCellIndex))) {
                         lastNonBlankRowsByGroup[g] = r;
+                        found++;
                     }
                 }
-
-                if (rowDependency.cellDependencies != null && rowDependency.cellDependencies.length > 0) {
-                    rowDependency.recordIndex = -1;
-                    rowDependency.contextRows = new ArrayList<Integer>();
-                    for (CellDependency cd : rowDependency.cellDependencies) {
-                        if (cd != null) {
-                            rowDependency.contextRows.add(cd.rowIndex);
-                        }
-                    }
-                    Collections.sort(rowDependency.contextRows);
-                } else {
-                    rowDependency.recordIndex = recordIndex++;
+            }
+            
+            DependencyBuilder builder = new DependencyBuilder(_cellCount);
+            int r = fromRowIndex;
+            for (; r < rowCount; r++) {
+                if (r >= toRowIndex && allAtLeast(lastNonBlankRowsByGroup, toRowIndex)) {
+                    break; // later rows take all their context from unchanged rows
                 }
-
-                _rowDependencies.add(rowDependency);
+                _dependencies[r] = computeRowDependencies(rows.get(r), r, keyedGroups, lastNonBlankRowsByGroup, builder);
             }
-
-            _records = new ArrayList<Record>(recordIndex);
-            if (recordIndex > 0) {
-                recordIndex = 0;
-
-                int recordRowIndex = 0;
-                for (int r = 1; r < rowCount; r++) {
-                    RowDependency rd = _rowDependencies.get(r);
-                    if (rd.recordIndex >= 0) {
-                        _records.add(new Record(recordRowIndex, r, recordIndex++));
-
-                        recordIndex = rd.recordIndex;
-                        recordRowIndex = r;
+            
+            spliceRecordStarts(fromRowIndex, r);
+        }
+    }
+    
+    protected void rebuild(Project project, List<KeyedGroup> keyedGroups) {
+        List<Row> rows = project.rows;
+        int rowCount = rows.size();
+        
+        _keyedGroupsSignature = getSignature(keyedGroups);
+        _cellCount = project.columnModel.getMaxCellIndex() + 1;
+        _dependencies = new int[rowCount][];
+        
+        int[] lastNonBlankRowsByGroup = new int[keyedGroups.size()];
+        Arrays.fill(lastNonBlankRowsByGroup, -1);
+        
+        DependencyBuilder builder = new DependencyBuilder(_cellCount);
+        int[] recordStarts = new int[rowCount];
+        int recordCount = 0;
+        for (int r = 0; r < rowCount; r++) {
+            _dependencies[r] = computeRowDependencies(rows.get(r), r, keyedGroups, lastNonBlankRowsByGroup, builder);
+            if (_dependencies[r] == null) {
+                recordStarts[recordCount++] = r;
+            }
+        }
+        _recordStarts = Arrays.copyOf(recordStarts, recordCount);
+    }
+    
+    protected int[] computeRowDependencies(
+        Row row,
+        int rowIndex,
+        List<KeyedGroup> keyedGroups,
+        int[] lastNonBlankRowsByGroup,
+        DependencyBuilder builder
+    ) {
+        for (int g = 0; g < keyedGroups.size(); g++) {
+            KeyedGroup group = keyedGroups.get(g);
+
+            if (!ExpressionUtils.isNonBlankData(row.getCellValue(group.keyCellIndex))) {
+                int contextRowIndex = lastNonBlankRowsByGroup[g];
+                if (contextRowIndex >= 0) {
+                    for (int dependentCellIndex : group.cellIndices) {
+                        if (ExpressionUtils.isNonBlankData(row.getCellValue(dependentCellIndex))) {
+                            builder.set(dependentCellIndex, contextRowIndex, group.keyCellIndex);
+                        }
                     }
                 }
-
-                _records.add(new Record(recordRowIndex, rowCount, recordIndex++));
+            } else {
+                lastNonBlankRowsByGroup[g] = rowIndex;
+            }
+        }
+        return builder.build();
+    }
+    
+    static protected boolean allAtLeast(int[] a, int min) {
+        for (int i : a) {
+            if (i < min) {
+                return false;
             }
         }
+        return true;
+    }
+    
+    /**
+     * Replaces the record starts in the given range of rows by those rows that now depend
+     * on no other row.
+     */
+    protected void spliceRecordStarts(int fromRowIndex, int toRowIndex) {
+        int from = lowerBound(_recordStarts, fromRowIndex);
+        int to = lowerBound(_recordStarts, toRowIndex);
+        
+        int count = 0;
+        for (int r = fromRowIndex; r < toRowIndex; r++) {
+            if (_dependencies[r] == null) {
+                count++;
+            }
+        }
+        
+        int[] recordStarts = new int[_recordStarts.length - (to - from) + count];
+        System.arraycopy(_recordStarts, 0, recordStarts, 0, from);
+        int i = from;
+        for (int r = fromRowIndex; r < toRowIndex; r++) {
+            if (_dependencies[r] == null) {
+                recordStarts[i++] = r;
+            }
+        }
+        System.arraycopy(_recordStarts, to, recordStarts, i, _recordStarts.length - to);
+        _recordStarts = recordStarts;
+    }
+    
+    static protected int lowerBound(int[] a, int key) {
+        int i = Arrays.binarySearch(a, key);
+        return i >= 0 ? i : -(i + 1);
+    }
+    
+    /**
+     * Describes the keyed groups in order, leaving out which cells the root group takes in
+     * as that only grows when columns are added.
+     */
+    static protected String getSignature(List<KeyedGroup> keyedGroups) {
+        StringBuffer sb = new StringBuffer();
+        for (KeyedGroup group : keyedGroups) {
+            sb.append(group.keyCellIndex).append(':');
+            sb.append(group.root ? "*" : Arrays.toString(group.cellIndices)).append(';');
+        }
+        return sb.toString();
     }
 
     protected List<KeyedGroup> computeKeyedGroups(ColumnModel columnModel) {
@@ -270,6 +438,7 @@ public class RecordModel implements Jsonizable {
 
             rootKeyedGroup.cellIndices = new int[count - 1];
             rootKeyedGroup.keyCellIndex = columnModel.columns.get(columnModel.getKeyColumnIndex()).getCellIndex();
+            rootKeyedGroup.root = true;
 
             for (int i = 0; i < count; i++) {
                 if (i < rootKeyedGroup.keyCellIndex) {
@@ -282,21 +451,4 @@ public class RecordModel implements Jsonizable {
         }
     }
 
-    protected void setRowDependency(
-            Project project, 
-            RowDependency rowDependency, 
-            int cellIndex, 
-            int contextRowIndex, 
-            int contextCellIndex
-    ) {
-        if (rowDependency.cellDependencies == null) {
-            int count = project.columnModel.getMaxCellIndex() + 1;
-
-            rowDependency.cellDependencies = new CellDependency[count];
-        }
-
-        rowDependency.cellDependencies[cellIndex] = 
-            new CellDependency(contextRowIndex, contextCellIndex);
-    }
-
 }
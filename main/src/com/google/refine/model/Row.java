@@ -33,6 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,6 +51,7 @@ import org.json.JSONWriter;
 import com.google.refine.Jsonizable;
 import com.google.refine.expr.CellTuple;
 import com.google.refine.expr.HasFields;
+import com.google.refine.util.BinaryUtilities;
 import com.google.refine.util.Pool;
 
 /**
@@ -62,6 +66,8 @@ public class Row implements HasFields, Jsonizable {
     private static final String FLAGGED = "flagged";
     private static final String STARRED = "starred";
     
+    static final protected JsonFactory jsonFactory = new JsonFactory();
+    
     /**
      * Construct a new Row.
      * 
@@ -218,8 +224,34 @@ public class Row implements HasFields, Jsonizable {
             loadStreaming(s, pool);
     }
     
+    /**
+     * Writes the row in the binary format, see BinaryUtilities.
+     */
+    public void saveBinary(DataOutput out, Pool pool) throws IOException {
+        out.writeByte((flagged ? 1 : 0) | (starred ? 2 : 0));
+        out.writeInt(cells.size());
+        for (Cell cell : cells) {
+            if (cell != null) {
+                cell.saveBinary(out, pool);
+            } else {
+                out.writeByte(BinaryUtilities.VALUE_NULL);
+            }
+        }
+    }
+    
+    static public Row loadBinary(DataInput in, Pool pool) throws IOException {
+        int flags = in.readUnsignedByte();
+        int cellCount = in.readInt();
+        
+        List<Cell> cells = new ArrayList<Cell>(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            cells.add(Cell.loadBinary(in, pool));
+        }
+        
+        return new Row(cells, (flags & 1) != 0, (flags & 2) != 0);
+    }
+    
     static public Row loadStreaming(String s, Pool pool) throws Exception {
-        JsonFactory jsonFactory = new JsonFactory(); 
         JsonParser jp = jsonFactory.createJsonParser(s);
         
         if (jp.nextToken() != JsonToken.START_OBJECT) {
@@ -39,6 +39,7 @@ import java.io.Writer;
 import java.util.Properties;
 
 import com.google.refine.ProjectManager;
+import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.history.Change;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Column;
@@ -64,7 +65,13 @@ public class CellChange implements Change {
         
         Column column = project.columnModel.getColumnByCellIndex(cellIndex);
         column.clearPrecomputes();
+        column.updateValueIndex(row, newCell);
+        column.updateReconStats(oldCell, newCell);
         ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName());
+        
+        if (changesBlankness()) {
+            project.recordModel.update(project, row, row + 1);
+        }
     }
 
     @Override
@@ -73,7 +80,21 @@ public class CellChange implements Change {
         
         Column column = project.columnModel.getColumnByCellIndex(cellIndex);
         column.clearPrecomputes();
+        column.updateValueIndex(row, oldCell);
+        column.updateReconStats(newCell, oldCell);
         ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName());
+        
+        if (changesBlankness()) {
+            project.recordModel.update(project, row, row + 1);
+        }
+    }
+    
+    /**
+     * Whether the cell turns from blank to non-blank or back, which can move record boundaries.
+     */
+    public boolean changesBlankness() {
+        return ExpressionUtils.isNonBlankData(oldCell != null ? oldCell.value : null) !=
+            ExpressionUtils.isNonBlankData(newCell != null ? newCell.value : null);
     }
     
     @Override
@@ -41,6 +41,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 
+import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.history.Change;
 import com.google.refine.model.Column;
 import com.google.refine.model.ColumnGroup;
@@ -107,7 +108,8 @@ public class ColumnAdditionChange extends ColumnChange {
                 e.printStackTrace();
             }
             
-            project.update();
+            // rows stay in place, so only records around the new cells can change
+            updateRows(project);
         }
     }
 
@@ -124,10 +126,22 @@ public class ColumnAdditionChange extends ColumnChange {
             project.columnModel.columnGroups.clear();
             project.columnModel.columnGroups.addAll(_oldColumnGroups);
             
-            project.update();
+            updateRows(project);
         }
     }
 
+    protected void updateRows(Project project) {
+        int fromRowIndex = Integer.MAX_VALUE;
+        int toRowIndex = -1;
+        for (CellAtRow cell : _newCells) {
+            if (cell.cell != null && ExpressionUtils.isNonBlankData(cell.cell.value)) {
+                fromRowIndex = Math.min(fromRowIndex, cell.row);
+                toRowIndex = Math.max(toRowIndex, cell.row + 1);
+            }
+        }
+        project.updateRows(fromRowIndex, toRowIndex);
+    }
+    
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         writer.write("columnName="); writer.write(_columnName); writer.write('\n');
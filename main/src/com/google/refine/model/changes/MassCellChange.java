@@ -90,6 +90,7 @@ public class MassCellChange implements Change {
             for (CellChange cellChange : _cellChanges) {
                 rows.get(cellChange.row).setCell(cellChange.cellIndex, cellChange.newCell);
             }
+            updateValueIndexes(project, true);
             
             if (_commonColumnName != null) {
                 Column column = project.columnModel.getColumnByName(_commonColumnName);
@@ -98,7 +99,7 @@ public class MassCellChange implements Change {
             }
             
             if (_updateRowContextDependencies) {
-                project.update();
+                updateRecords(project);
             }
         }
     }
@@ -111,6 +112,7 @@ public class MassCellChange implements Change {
             for (CellChange cellChange : _cellChanges) {
                 rows.get(cellChange.row).setCell(cellChange.cellIndex, cellChange.oldCell);
             }
+            updateValueIndexes(project, false);
             
             if (_commonColumnName != null) {
                 Column column = project.columnModel.getColumnByName(_commonColumnName);
@@ -119,11 +121,44 @@ public class MassCellChange implements Change {
             }
             
             if (_updateRowContextDependencies) {
-                project.update();
+                updateRecords(project);
             }
         }
     }
     
+    protected void updateValueIndexes(Project project, boolean applying) {
+        Column column = null;
+        for (CellChange cellChange : _cellChanges) {
+            if (column == null || column.getCellIndex() != cellChange.cellIndex) {
+                column = project.columnModel.getColumnByCellIndex(cellChange.cellIndex);
+            }
+            if (column != null) {
+                column.updateValueIndex(cellChange.row, applying ? cellChange.newCell : cellChange.oldCell);
+                column.updateReconStats(
+                    applying ? cellChange.oldCell : cellChange.newCell,
+                    applying ? cellChange.newCell : cellChange.oldCell);
+            }
+        }
+    }
+    
+    /**
+     * No row was added, removed or moved, so only the records around cells that turned
+     * blank or non-blank need recomputing.
+     */
+    protected void updateRecords(Project project) {
+        int fromRowIndex = Integer.MAX_VALUE;
+        int toRowIndex = -1;
+        for (CellChange cellChange : _cellChanges) {
+            if (cellChange.changesBlankness()) {
+                fromRowIndex = Math.min(fromRowIndex, cellChange.row);
+                toRowIndex = Math.max(toRowIndex, cellChange.row + 1);
+            }
+        }
+        if (toRowIndex >= 0) {
+            project.recordModel.update(project, fromRowIndex, toRowIndex);
+        }
+    }
+    
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         if (_commonColumnName != null) {
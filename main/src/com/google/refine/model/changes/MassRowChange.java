@@ -45,20 +45,39 @@ import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 import com.google.refine.util.Pool;
 
+/**
+ * Replaces all rows of a project. The change is saved as a pair of deltas, the new rows in
+ * terms of the old rows and the other way around, so that its size on disk depends on how
+ * many rows were actually modified, inserted or removed rather than on the project's size.
+ */
 public class MassRowChange implements Change {
     final protected List<Row> _newRows;
     protected List<Row>       _oldRows;
     
+    // set when the change is saved or loaded
+    protected RowListDelta    _newRowsDelta;
+    protected RowListDelta    _oldRowsDelta;
+    
     public MassRowChange(List<Row> newRows) {
         _newRows = newRows;
     }
     
+    protected MassRowChange(RowListDelta newRowsDelta, RowListDelta oldRowsDelta) {
+        _newRows = null;
+        _newRowsDelta = newRowsDelta;
+        _oldRowsDelta = oldRowsDelta;
+    }
+    
     @Override
     public void apply(Project project) {
         synchronized (project) {
-            _oldRows = new ArrayList<Row>(project.rows);
+            List<Row> newRows = _newRows != null ? _newRows : _newRowsDelta.getRows(project.rows);
+            if (_newRows != null) {
+                _oldRows = new ArrayList<Row>(project.rows);
+            }
+            project.updateReconStats(project.rows, newRows);
             project.rows.clear();
-            project.rows.addAll(_newRows);
+            project.rows.addAll(newRows);
             
             project.update();
         }
@@ -67,8 +86,10 @@ public class MassRowChange implements Change {
     @Override
     public void revert(Project project) {
         synchronized (project) {
+            List<Row> oldRows = _oldRows != null ? _oldRows : _oldRowsDelta.getRows(project.rows);
+            project.updateReconStats(project.rows, oldRows);
             project.rows.clear();
-            project.rows.addAll(_oldRows);
+            project.rows.addAll(oldRows);
             
             project.update();
         }
@@ -76,25 +97,38 @@ public class MassRowChange implements Change {
 
     @Override
     public void save(Writer writer, Properties options) throws IOException {
-        writer.write("newRowCount="); writer.write(Integer.toString(_newRows.size())); writer.write('\n');
-        for (Row row : _newRows) {
-            row.save(writer, options);
-            writer.write('\n');
-        }
-        writer.write("oldRowCount="); writer.write(Integer.toString(_oldRows.size())); writer.write('\n');
-        for (Row row : _oldRows) {
-            row.save(writer, options);
-            writer.write('\n');
+        if (_newRowsDelta == null) {
+            int[] newToOld = RowListDelta.matchRows(_oldRows, _newRows);
+            int[] oldToNew = RowListDelta.invertMatches(newToOld, _oldRows.size());
+            
+            _newRowsDelta = RowListDelta.create(_newRows, newToOld);
+            _oldRowsDelta = RowListDelta.create(_oldRows, oldToNew);
         }
+        
+        writer.write("newRowDelta\n");
+        _newRowsDelta.save(writer, options);
+        writer.write("oldRowDelta\n");
+        _oldRowsDelta.save(writer, options);
         writer.write("/ec/\n"); // end of change marker
     }
     
     static public Change load(LineNumberReader reader, Pool pool) throws Exception {
         List<Row> oldRows = null;
         List<Row> newRows = null;
+        RowListDelta oldRowsDelta = null;
+        RowListDelta newRowsDelta = null;
         
         String line;
         while ((line = reader.readLine()) != null && !"/ec/".equals(line)) {
+            if ("newRowDelta".equals(line)) {
+                newRowsDelta = RowListDelta.load(reader, pool);
+                continue;
+            } else if ("oldRowDelta".equals(line)) {
+                oldRowsDelta = RowListDelta.load(reader, pool);
+                continue;
+            }
+            
+            // changes saved before deltas were introduced list all rows
             int equal = line.indexOf('=');
             CharSequence field = line.subSequence(0, equal);
             
@@ -121,6 +155,10 @@ public class MassRowChange implements Change {
             }
         }
         
+        if (newRowsDelta != null) {
+            return new MassRowChange(newRowsDelta, oldRowsDelta);
+        }
+        
         MassRowChange change = new MassRowChange(newRows);
         change._oldRows = oldRows;
         
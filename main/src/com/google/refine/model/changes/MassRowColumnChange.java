@@ -80,6 +80,7 @@ public class MassRowColumnChange implements Change {
             project.rows.clear();
             project.rows.addAll(_newRows);
             
+            project.recountReconStats();
             project.update();
         }
     }
@@ -96,6 +97,7 @@ public class MassRowColumnChange implements Change {
             project.rows.clear();
             project.rows.addAll(_oldRows);
             
+            project.recountReconStats();
             project.update();
         }
     }
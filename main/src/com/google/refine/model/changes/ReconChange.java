@@ -94,17 +94,23 @@ public class ReconChange extends MassCellChange {
     @Override
     public void apply(Project project) {
         synchronized (project) {
-            super.apply(project);
-            
             Column column = project.columnModel.getColumnByName(_commonColumnName);
             
-            if (_newReconStats == null) {
-                _newReconStats = ReconStats.create(project, column.getCellIndex());
-            }
-            
             _oldReconConfig = column.getReconConfig();
             _oldReconStats = column.getReconStats();
             
+            // the cell changes update the column's stats by the differences between cells
+            super.apply(project);
+            
+            if (_newReconStats == null) {
+                _newReconStats = column.getReconStats();
+                if (_newReconStats == null) {
+                    _newReconStats = ReconStats.create(project, column.getCellIndex());
+                } else {
+                    _newReconStats = ReconStats.check(project, column.getCellIndex(), _newReconStats);
+                }
+            }
+            
             column.setReconConfig(_newReconConfig);
             column.setReconStats(_newReconStats);
             
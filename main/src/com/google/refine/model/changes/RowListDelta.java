@@ -0,0 +1,261 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.model.changes;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.refine.model.Row;
+import com.google.refine.util.Pool;
+
+/**
+ * Describes a list of rows in terms of another list of rows, as a sequence of segments.
+ * Each segment is either a range of consecutive rows taken from the other list, or a run of
+ * rows that have no equal in the other list and so are stored in the delta itself. Changes
+ * that rewrite all rows of a project but only modify a few of them can then save and load
+ * just those few rows.
+ */
+public class RowListDelta {
+    /**
+     * How many rows ahead in the other list to look for an equal row before giving up and
+     * storing a row.
+     */
+    static public int lookAhead = 64;
+    
+    final protected int       _rowCount;
+    final protected int[]     _segments; // pairs of start row and length, start is -1 for stored rows
+    final protected List<Row> _storedRows;
+    
+    protected RowListDelta(int rowCount, int[] segments, List<Row> storedRows) {
+        _rowCount = rowCount;
+        _segments = segments;
+        _storedRows = storedRows;
+    }
+    
+    /**
+     * Matches rows of the second list with equal rows of the first list, in order.
+     * 
+     * @return for each row of the second list, the index of its equal row in the first list
+     *         or -1 if there is none
+     */
+    static public int[] matchRows(List<Row> fromRows, List<Row> toRows) {
+        int[] matches = new int[toRows.size()];
+        int from = 0;
+        int fromCount = fromRows.size();
+        
+        for (int to = 0; to < matches.length; to++) {
+            Row row = toRows.get(to);
+            
+            matches[to] = -1;
+            
+            int limit = Math.min(fromCount, from + lookAhead);
+            for (int r = from; r < limit; r++) {
+                if (sameRow(fromRows.get(r), row)) {
+                    matches[to] = r;
+                    from = r + 1;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * @return the inverse of the given matches, for each row of a list of the given count
+     */
+    static public int[] invertMatches(int[] matches, int count) {
+        int[] inverse = new int[count];
+        for (int i = 0; i < count; i++) {
+            inverse[i] = -1;
+        }
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] >= 0) {
+                inverse[matches[i]] = i;
+            }
+        }
+        return inverse;
+    }
+    
+    /**
+     * Rows are compared by their flags and by the identities of their cells: cells are
+     * immutable and rows duplicated by operations share their cells, so this is both cheap
+     * and safe.
+     */
+    static protected boolean sameRow(Row a, Row b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.flagged != b.flagged || a.starred != b.starred) {
+            return false;
+        }
+        int count = Math.max(a.cells.size(), b.cells.size());
+        for (int i = 0; i < count; i++) {
+            if (a.getCell(i) != b.getCell(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @param rows the rows to describe
+     * @param matches for each of the rows, the index of its equal row in the other list, or -1
+     */
+    static public RowListDelta create(List<Row> rows, int[] matches) {
+        List<Row> storedRows = new ArrayList<Row>();
+        int[] segments = new int[16];
+        int segmentCount = 0;
+        
+        int i = 0;
+        while (i < matches.length) {
+            int start = matches[i];
+            int length = 1;
+            if (start < 0) {
+                storedRows.add(rows.get(i));
+                while (i + length < matches.length && matches[i + length] < 0) {
+                    storedRows.add(rows.get(i + length));
+                    length++;
+                }
+            } else {
+                while (i + length < matches.length && matches[i + length] == start + length) {
+                    length++;
+                }
+            }
+            
+            if (segmentCount * 2 + 2 > segments.length) {
+                int[] newSegments = new int[segments.length * 2];
+                System.arraycopy(segments, 0, newSegments, 0, segments.length);
+                segments = newSegments;
+            }
+            segments[segmentCount * 2] = start;
+            segments[segmentCount * 2 + 1] = length;
+            segmentCount++;
+            
+            i += length;
+        }
+        
+        int[] trimmedSegments = new int[segmentCount * 2];
+        System.arraycopy(segments, 0, trimmedSegments, 0, trimmedSegments.length);
+        
+        return new RowListDelta(matches.length, trimmedSegments, storedRows);
+    }
+    
+    public int getRowCount() {
+        return _rowCount;
+    }
+    
+    public int getStoredRowCount() {
+        return _storedRows.size();
+    }
+    
+    /**
+     * @param otherRows the list of rows this delta was made against
+     * @return the list of rows this delta describes
+     */
+    public List<Row> getRows(List<Row> otherRows) {
+        List<Row> rows = new ArrayList<Row>(_rowCount);
+        int stored = 0;
+        for (int s = 0; s < _segments.length; s += 2) {
+            int start = _segments[s];
+            int length = _segments[s + 1];
+            if (start < 0) {
+                rows.addAll(_storedRows.subList(stored, stored + length));
+                stored += length;
+            } else {
+                rows.addAll(otherRows.subList(start, start + length));
+            }
+        }
+        return rows;
+    }
+    
+    public void save(Writer writer, Properties options) throws IOException {
+        writer.write("rowCount="); writer.write(Integer.toString(_rowCount)); writer.write('\n');
+        writer.write("segmentCount="); writer.write(Integer.toString(_segments.length / 2)); writer.write('\n');
+        for (int s = 0; s < _segments.length; s += 2) {
+            writer.write(Integer.toString(_segments[s]));
+            writer.write(',');
+            writer.write(Integer.toString(_segments[s + 1]));
+            writer.write('\n');
+        }
+        writer.write("storedRowCount="); writer.write(Integer.toString(_storedRows.size())); writer.write('\n');
+        for (Row row : _storedRows) {
+            row.save(writer, options);
+            writer.write('\n');
+        }
+        writer.write("/ed/\n"); // end of delta marker
+    }
+    
+    static public RowListDelta load(LineNumberReader reader, Pool pool) throws Exception {
+        int rowCount = 0;
+        int[] segments = null;
+        List<Row> storedRows = null;
+        
+        String line;
+        while ((line = reader.readLine()) != null && !"/ed/".equals(line)) {
+            int equal = line.indexOf('=');
+            CharSequence field = line.subSequence(0, equal);
+            
+            if ("rowCount".equals(field)) {
+                rowCount = Integer.parseInt(line.substring(equal + 1));
+            } else if ("segmentCount".equals(field)) {
+                int count = Integer.parseInt(line.substring(equal + 1));
+                
+                segments = new int[count * 2];
+                for (int i = 0; i < count; i++) {
+                    line = reader.readLine();
+                    if (line != null) {
+                        int comma = line.indexOf(',');
+                        segments[i * 2] = Integer.parseInt(line.substring(0, comma));
+                        segments[i * 2 + 1] = Integer.parseInt(line.substring(comma + 1));
+                    }
+                }
+            } else if ("storedRowCount".equals(field)) {
+                int count = Integer.parseInt(line.substring(equal + 1));
+                
+                storedRows = new ArrayList<Row>(count);
+                for (int i = 0; i < count; i++) {
+                    line = reader.readLine();
+                    if (line != null) {
+                        storedRows.add(Row.load(line, pool));
+                    }
+                }
+            }
+        }
+        
+        return new RowListDelta(rowCount, segments, storedRows);
+    }
+}
@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -57,19 +58,27 @@ public class RowRemovalChange implements Change {
     public void apply(Project project) {
         synchronized (project) {
             int count = _rowIndices.size();
+            int rowCount = project.rows.size();
             
             _rows = new ArrayList<Row>(count);
             
-            int offset = 0;
-            for (int i = 0; i < count; i++) {
-                int index = _rowIndices.get(i);
-                
-                Row row = project.rows.remove(index + offset);
-                _rows.add(row);
-                
-                offset--;
+            // rebuild the row list in one pass rather than removing rows one by one
+            List<Row> keptRows = new ArrayList<Row>(rowCount - count);
+            int next = 0;
+            for (int r = 0; r < rowCount; r++) {
+                Row row = project.rows.get(r);
+                if (next < count && _rowIndices.get(next) == r) {
+                    _rows.add(row);
+                    next++;
+                } else {
+                    keptRows.add(row);
+                }
             }
             
+            project.rows.clear();
+            project.rows.addAll(keptRows);
+            
+            project.updateReconStats(_rows, Collections.<Row>emptyList());
             project.update();
         }
     }
@@ -78,14 +87,25 @@ public class RowRemovalChange implements Change {
     public void revert(Project project) {
         synchronized (project) {
             int count = _rowIndices.size();
+            int rowCount = project.rows.size() + count;
             
-            for (int i = 0; i < count; i++) {
-                int index = _rowIndices.get(i);
-                Row row = _rows.get(i);
-                
-                project.rows.add(index, row);
+            List<Row> rows = new ArrayList<Row>(rowCount);
+            int next = 0;
+            int kept = 0;
+            for (int r = 0; r < rowCount; r++) {
+                if (next < count && _rowIndices.get(next) == r) {
+                    rows.add(_rows.get(next));
+                    next++;
+                } else {
+                    rows.add(project.rows.get(kept));
+                    kept++;
+                }
             }
             
+            project.rows.clear();
+            project.rows.addAll(rows);
+            
+            project.updateReconStats(Collections.<Row>emptyList(), _rows);
             project.update();
         }
     }
@@ -0,0 +1,214 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.model.recon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.json.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the candidates that reconciliation services returned for queries, so that
+ * reconciling the same values again, after an undo or in another project, doesn't
+ * need to go back to the services. Entries are evicted least recently used first, and
+ * expire after a time to live. If given a file, the cache is kept there across restarts.
+ */
+public class ReconCache {
+    final static Logger logger = LoggerFactory.getLogger("recon-cache");
+    
+    static public int maxEntries = Integer.getInteger("refine.reconCacheMaxEntries", 100000);
+    static public long timeToLive = Long.getLong("refine.reconCacheTTLHours", 24 * 7) * 60 * 60 * 1000; // ms
+    
+    static protected class Entry {
+        final String results; // JSON array of candidates
+        final long time;
+        
+        Entry(String results, long time) {
+            this.results = results;
+            this.time = time;
+        }
+    }
+    
+    final protected File _file;
+    final protected Map<String, Entry> _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 8174262517829342217L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    
+    protected boolean _dirty = false;
+    protected long    _hits = 0;
+    protected long    _misses = 0;
+    
+    /**
+     * @param file where to keep the cache, or null to keep it in memory only
+     */
+    public ReconCache(File file) {
+        _file = file;
+    }
+    
+    static protected String makeKey(String service, String typeID, String jobKey) {
+        return service + "\n" + (typeID == null ? "" : typeID) + "\n" + jobKey;
+    }
+    
+    /**
+     * @return the JSON array of candidates cached for the query, or null
+     */
+    synchronized public String get(String service, String typeID, String jobKey) {
+        String key = makeKey(service, typeID, jobKey);
+        Entry entry = _entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.time > timeToLive) {
+            _entries.remove(key);
+            _dirty = true;
+            entry = null;
+        }
+        
+        if (entry != null) {
+            _hits++;
+            return entry.results;
+        } else {
+            _misses++;
+            return null;
+        }
+    }
+    
+    synchronized public void put(String service, String typeID, String jobKey, String results) {
+        _entries.put(makeKey(service, typeID, jobKey), new Entry(results, System.currentTimeMillis()));
+        _dirty = true;
+    }
+    
+    synchronized public void clear() {
+        _entries.clear();
+        _dirty = true;
+    }
+    
+    synchronized public int size() {
+        return _entries.size();
+    }
+    
+    synchronized public long getHits() {
+        return _hits;
+    }
+    
+    synchronized public long getMisses() {
+        return _misses;
+    }
+    
+    /**
+     * Loads the cache's file, if it has one, skipping expired entries.
+     */
+    synchronized public void load() {
+        if (_file == null || !_file.exists()) {
+            return;
+        }
+        
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(_file), "UTF-8");
+            try {
+                JSONObject obj = (JSONObject) new JSONTokener(reader).nextValue();
+                JSONArray a = obj.getJSONArray("entries");
+                
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < a.length(); i++) {
+                    JSONObject o = a.getJSONObject(i);
+                    long time = o.getLong("time");
+                    if (now - time <= timeToLive) {
+                        _entries.put(o.getString("key"), new Entry(o.getString("results"), time));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            _dirty = false;
+        } catch (Exception e) {
+            logger.warn("Failed to load recon cache from " + _file.getAbsolutePath(), e);
+        }
+    }
+    
+    /**
+     * Saves the cache to its file, if it has one and anything changed, writing to a
+     * temporary file first and renaming it to the real file.
+     */
+    synchronized public void save() {
+        if (_file == null || !_dirty) {
+            return;
+        }
+        
+        File tempFile = new File(_file.getParentFile(), _file.getName() + ".temp");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            try {
+                JSONWriter jsonWriter = new JSONWriter(writer);
+                jsonWriter.object();
+                jsonWriter.key("entries");
+                jsonWriter.array();
+                for (Map.Entry<String, Entry> e : _entries.entrySet()) { // least recently used first
+                    jsonWriter.object();
+                    jsonWriter.key("key"); jsonWriter.value(e.getKey());
+                    jsonWriter.key("time"); jsonWriter.value(e.getValue().time);
+                    jsonWriter.key("results"); jsonWriter.value(e.getValue().results);
+                    jsonWriter.endObject();
+                }
+                jsonWriter.endArray();
+                jsonWriter.endObject();
+            } finally {
+                writer.close();
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to save recon cache to " + _file.getAbsolutePath(), e);
+            return;
+        }
+        
+        if (_file.exists()) {
+            _file.delete();
+        }
+        tempFile.renameTo(_file);
+        _dirty = false;
+    }
+}
@@ -115,6 +115,15 @@ abstract public class ReconConfig implements Jsonizable {
     
     abstract public List<Recon> batchRecon(List<ReconJob> jobs, long historyEntryID);
     
+    /**
+     * Like batchRecon, but throws if the whole batch failed rather than making
+     * up empty recons, so that callers can back off and retry. A null in the
+     * returned list marks a job that failed on its own.
+     */
+    public List<Recon> tryBatchRecon(List<ReconJob> jobs, long historyEntryID) throws Exception {
+        return batchRecon(jobs, historyEntryID);
+    }
+    
     abstract public Recon createNewRecon(long historyEntryID);
     
     public void save(Writer writer) {
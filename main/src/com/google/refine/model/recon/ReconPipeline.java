@@ -0,0 +1,244 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.model.recon;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.model.Recon;
+
+/**
+ * Sends recon jobs to a recon config's service in batches, keeping several
+ * batches in flight at once. Batches grow while the service answers quickly
+ * and shrink when it slows down or fails, and a batch that fails as a whole
+ * delays the next one by an exponentially growing backoff.
+ */
+public class ReconPipeline {
+    final static Logger logger = LoggerFactory.getLogger("recon-pipeline");
+    
+    static public int maxInFlight = Integer.getInteger("refine.reconMaxInFlight", 4);
+    static public int maxBatchSize = Integer.getInteger("refine.reconMaxBatchSize", 100);
+    static public long targetLatency = Long.getLong("refine.reconTargetLatency", 2000); // ms per batch
+    static public long initialBackoff = Long.getLong("refine.reconInitialBackoff", 500); // ms
+    static public long maxBackoff = Long.getLong("refine.reconMaxBackoff", 30000); // ms
+    static public int maxTrials = 3;
+    
+    public interface ProgressListener {
+        /**
+         * Called on the pipeline's own thread after each batch comes back.
+         */
+        public void onBatchDone(int jobsDone, int jobsTotal);
+    }
+    
+    static protected class Batch {
+        final int[] jobIndices;
+        final List<ReconJob> jobs;
+        
+        Batch(int[] jobIndices, List<ReconJob> jobs) {
+            this.jobIndices = jobIndices;
+            this.jobs = jobs;
+        }
+    }
+    
+    static protected class BatchResult {
+        final Batch batch;
+        final List<Recon> recons; // null if the whole batch failed
+        final long latency;
+        
+        BatchResult(Batch batch, List<Recon> recons, long latency) {
+            this.batch = batch;
+            this.recons = recons;
+            this.latency = latency;
+        }
+    }
+    
+    final protected ReconConfig _reconConfig;
+    final protected long        _historyEntryID;
+    
+    protected int   _batchSize;
+    protected int   _failures; // consecutive failures of whole batches
+    
+    public ReconPipeline(ReconConfig reconConfig, long historyEntryID) {
+        _reconConfig = reconConfig;
+        _historyEntryID = historyEntryID;
+        _batchSize = Math.max(1, Math.min(reconConfig.getBatchSize(), maxBatchSize));
+    }
+    
+    public int getBatchSize() {
+        return _batchSize;
+    }
+    
+    /**
+     * Reconciles the given jobs, giving up on a job after maxTrials failures.
+     * 
+     * @return the recons in the same order as the jobs, with null for the jobs given up on
+     * @throws InterruptedException if the calling thread is interrupted, e.g., on cancellation
+     */
+    public Recon[] run(List<ReconJob> jobs, ProgressListener listener) throws InterruptedException {
+        Recon[] recons = new Recon[jobs.size()];
+        int[] trials = new int[jobs.size()];
+        int done = 0;
+        
+        LinkedList<Integer> pending = new LinkedList<Integer>();
+        for (int i = 0; i < jobs.size(); i++) {
+            pending.add(i);
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, maxInFlight));
+        CompletionService<BatchResult> completionService = new ExecutorCompletionService<BatchResult>(executor);
+        try {
+            int inFlight = 0;
+            long nextSubmitTime = 0;
+            
+            while (done < jobs.size()) {
+                long now = System.currentTimeMillis();
+                while (inFlight < maxInFlight && pending.size() > 0 && now >= nextSubmitTime) {
+                    completionService.submit(makeTask(takeBatch(jobs, pending)));
+                    inFlight++;
+                }
+                
+                Future<BatchResult> future;
+                if (inFlight == 0) {
+                    // everything left is waiting out a backoff
+                    Thread.sleep(Math.max(1, nextSubmitTime - now));
+                    continue;
+                } else if (pending.size() > 0 && inFlight < maxInFlight) {
+                    future = completionService.poll(Math.max(1, nextSubmitTime - now), TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        continue;
+                    }
+                } else {
+                    future = completionService.take();
+                }
+                inFlight--;
+                
+                BatchResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause()); // the task catches everything itself
+                }
+                
+                int failedJobs = 0;
+                for (int j = result.batch.jobIndices.length - 1; j >= 0; j--) {
+                    int jobIndex = result.batch.jobIndices[j];
+                    Recon recon = result.recons != null && j < result.recons.size() ? result.recons.get(j) : null;
+                    
+                    if (recon == null) {
+                        failedJobs++;
+                        if (++trials[jobIndex] < maxTrials) {
+                            pending.addFirst(jobIndex); // try again soon
+                            continue;
+                        }
+                        logger.warn("Failed after " + maxTrials + " trials for recon job " + jobs.get(jobIndex).getStringKey());
+                    }
+                    recons[jobIndex] = recon;
+                    done++;
+                }
+                
+                adapt(result, failedJobs);
+                if (result.recons == null) {
+                    nextSubmitTime = System.currentTimeMillis() +
+                        Math.min(maxBackoff, initialBackoff << Math.min(_failures - 1, 20));
+                }
+                
+                if (listener != null) {
+                    listener.onBatchDone(done, jobs.size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return recons;
+    }
+    
+    /**
+     * Shrinks the batch size by half on failure or when the service is slower than the
+     * target latency, and otherwise grows it by a quarter.
+     */
+    protected void adapt(BatchResult result, int failedJobs) {
+        int size = result.batch.jobIndices.length;
+        if (result.recons == null) {
+            _failures++;
+        } else {
+            _failures = 0;
+        }
+        
+        if (result.recons == null || failedJobs * 2 > size || result.latency > targetLatency) {
+            _batchSize = Math.max(1, Math.min(_batchSize, size) / 2);
+        } else if (size >= _batchSize) {
+            _batchSize = Math.min(maxBatchSize, _batchSize + Math.max(1, _batchSize / 4));
+        }
+    }
+    
+    protected Batch takeBatch(List<ReconJob> jobs, LinkedList<Integer> pending) {
+        int size = Math.min(_batchSize, pending.size());
+        int[] jobIndices = new int[size];
+        List<ReconJob> batchJobs = new ArrayList<ReconJob>(size);
+        for (int i = 0; i < size; i++) {
+            jobIndices[i] = pending.removeFirst();
+            batchJobs.add(jobs.get(jobIndices[i]));
+        }
+        return new Batch(jobIndices, batchJobs);
+    }
+    
+    protected Callable<BatchResult> makeTask(final Batch batch) {
+        return new Callable<BatchResult>() {
+            @Override
+            public BatchResult call() {
+                long start = System.currentTimeMillis();
+                List<Recon> recons;
+                try {
+                    recons = _reconConfig.tryBatchRecon(batch.jobs, _historyEntryID);
+                } catch (Exception e) {
+                    logger.warn("Recon batch of " + batch.jobs.size() + " jobs failed: " + e.toString());
+                    recons = null;
+                }
+                return new BatchResult(batch, recons, System.currentTimeMillis() - start);
+            }
+        };
+    }
+}
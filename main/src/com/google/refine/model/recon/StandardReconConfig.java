@@ -39,6 +39,7 @@ import java.io.StringWriter;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -52,6 +53,7 @@ import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.refine.ProjectManager;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
@@ -138,6 +140,9 @@ public class StandardReconConfig extends ReconConfig {
     final public boolean    autoMatch;
     final public List<ColumnDetail> columnDetails;
     
+    transient protected long _cacheHits = 0;
+    transient protected long _cacheMisses = 0;
+    
     public StandardReconConfig(
         String service,
         String identifierSpace,
@@ -271,17 +276,57 @@ public class StandardReconConfig extends ReconConfig {
     
     @Override
     public List<Recon> batchRecon(List<ReconJob> jobs, long historyEntryID) {
-        List<Recon> recons = new ArrayList<Recon>(jobs.size());
+        List<Recon> recons;
+        try {
+            recons = tryBatchRecon(jobs, historyEntryID);
+        } catch (Exception e) {
+            recons = new ArrayList<Recon>(jobs.size());
+        }
         
-        StringWriter stringWriter = new StringWriter();
+        while (recons.size() < jobs.size()) {
+            Recon recon = new Recon(historyEntryID, identifierSpace, schemaSpace);
+            recon.service = service;
+            recon.identifierSpace = identifierSpace;
+            recon.schemaSpace = schemaSpace;
+
+            recons.add(recon);
+        }
         
-        stringWriter.write("{");
+        return recons;
+    }
+    
+    @Override
+    public List<Recon> tryBatchRecon(List<ReconJob> jobs, long historyEntryID) throws Exception {
+        Recon[] recons = new Recon[jobs.size()];
+        
+        // only the jobs whose results aren't cached go to the service
+        ReconCache cache = ProjectManager.singleton != null ? ProjectManager.singleton.getReconCache() : null;
+        List<Integer> queried = new ArrayList<Integer>(jobs.size());
         for (int i = 0; i < jobs.size(); i++) {
             StandardReconJob job = (StandardReconJob) jobs.get(i);
-            if (i > 0) {
+            String results = cache != null ? cache.get(service, typeID, job.code) : null;
+            if (results != null) {
+                recons[i] = createReconServiceResults(job.text, new JSONArray(results), historyEntryID);
+                recons[i].service = service;
+            } else {
+                queried.add(i);
+            }
+        }
+        countCacheLookups(jobs.size() - queried.size(), queried.size());
+        
+        if (queried.size() == 0) {
+            return new ArrayList<Recon>(Arrays.asList(recons));
+        }
+        
+        StringWriter stringWriter = new StringWriter();
+        
+        stringWriter.write("{");
+        for (int q = 0; q < queried.size(); q++) {
+            StandardReconJob job = (StandardReconJob) jobs.get(queried.get(q));
+            if (q > 0) {
                 stringWriter.write(",");
             }
-            stringWriter.write("\"q" + i + "\":");
+            stringWriter.write("\"q" + q + "\":");
             stringWriter.write(job.code);
         }
         stringWriter.write("}");
@@ -293,6 +338,7 @@ public class StandardReconConfig extends ReconConfig {
             {
                 connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
                 connection.setConnectTimeout(30000);
+                connection.setReadTimeout(60000);
                 connection.setDoOutput(true);
                 
                 DataOutputStream dos = new DataOutputStream(connection.getOutputStream());
@@ -313,18 +359,22 @@ public class StandardReconConfig extends ReconConfig {
                 String s = ParsingUtilities.inputStreamToString(is);
                 JSONObject o = ParsingUtilities.evaluateJsonStringToObject(s);
                 
-                for (int i = 0; i < jobs.size(); i++) {
+                for (int q = 0; q < queried.size(); q++) {
+                    int i = queried.get(q);
                     StandardReconJob job = (StandardReconJob) jobs.get(i);
                     Recon recon = null;
                     
                     String text = job.text;
-                    String key = "q" + i;
+                    String key = "q" + q;
                     if (o.has(key)) {
                         JSONObject o2 = o.getJSONObject(key);
                         if (o2.has("result")) {
                             JSONArray results = o2.getJSONArray("result");
                             
                             recon = createReconServiceResults(text, results, historyEntryID);
+                            if (cache != null) {
+                                cache.put(service, typeID, job.code, results.toString());
+                            }
                         } else {
                             logger.warn("Service error for text: " + text + "\n  Job code: " + job.code + "\n  Response: " + o2.toString());
                         }
@@ -335,27 +385,33 @@ public class StandardReconConfig extends ReconConfig {
                     if (recon != null) {
                         recon.service = service;
                     }
-                    recons.add(recon);
+                    recons[i] = recon;
                 }
             } finally {
                 is.close();
             }
-//        } catch (IOException e) {
-//            // TODO: Retry on HTTP 500 errors?
         } catch (Exception e) {
             logger.error("Failed to batch recon with load:\n" + queriesString, e);
+            throw e;
         }
         
-        while (recons.size() < jobs.size()) {
-            Recon recon = new Recon(historyEntryID, identifierSpace, schemaSpace);
-            recon.service = service;
-            recon.identifierSpace = identifierSpace;
-            recon.schemaSpace = schemaSpace;
-
-            recons.add(recon);
-        }
-        
-        return recons;
+        return new ArrayList<Recon>(Arrays.asList(recons));
+    }
+    
+    synchronized protected void countCacheLookups(int hits, int misses) {
+        _cacheHits += hits;
+        _cacheMisses += misses;
+    }
+    
+    /**
+     * @return how many of this config's queries were answered from the recon cache
+     */
+    synchronized public long getCacheHits() {
+        return _cacheHits;
+    }
+    
+    synchronized public long getCacheMisses() {
+        return _cacheMisses;
     }
     
     @Override
@@ -33,21 +33,21 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.operations.column;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.File;
 import java.io.Serializable;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONWriter;
 
+import com.google.refine.ProjectManager;
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RowVisitor;
@@ -57,6 +57,7 @@ import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.WrappedCell;
 import com.google.refine.history.HistoryEntry;
+import com.google.refine.io.FileProjectManager;
 import com.google.refine.model.AbstractOperation;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Column;
@@ -70,7 +71,7 @@ import com.google.refine.operations.OperationRegistry;
 import com.google.refine.operations.cell.TextTransformOperation;
 import com.google.refine.process.LongRunningProcess;
 import com.google.refine.process.Process;
-import com.google.refine.util.ParsingUtilities;
+import com.google.refine.util.URLFetcher;
 
 public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperation {
     final protected String     _baseColumnName;
@@ -80,6 +81,7 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
     final protected String     _newColumnName;
     final protected int        _columnInsertIndex;
     final protected int        _delay;
+    final protected boolean    _cacheResponses;
 
     static public AbstractOperation reconstruct(Project project, JSONObject obj) throws Exception {
         JSONObject engineConfig = obj.getJSONObject("engineConfig");
@@ -91,7 +93,8 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             TextTransformOperation.stringToOnError(obj.getString("onError")),
             obj.getString("newColumnName"),
             obj.getInt("columnInsertIndex"),
-            obj.getInt("delay")
+            obj.getInt("delay"),
+            obj.has("cacheResponses") && obj.getBoolean("cacheResponses")
         );
     }
     
@@ -102,7 +105,8 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
         OnError        onError,
         String         newColumnName, 
         int            columnInsertIndex,
-        int            delay
+        int            delay,
+        boolean        cacheResponses
     ) {
         super(engineConfig);
         
@@ -114,6 +118,7 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
         _columnInsertIndex = columnInsertIndex;
         
         _delay = delay;
+        _cacheResponses = cacheResponses;
     }
 
     @Override
@@ -130,6 +135,7 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
         writer.key("urlExpression"); writer.value(_urlExpression);
         writer.key("onError"); writer.value(TextTransformOperation.onErrorToString(_onError));
         writer.key("delay"); writer.value(_delay);
+        writer.key("cacheResponses"); writer.value(_cacheResponses);
         writer.endObject();
     }
 
@@ -219,22 +225,47 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             FilteredRows filteredRows = _engine.getAllFilteredRows();
             filteredRows.accept(_project, createRowVisitor(urls));
             
+            // requests are spaced out per host by the fetcher rather than by sleeping here
+            URLFetcher fetcher = new URLFetcher(_delay, _cacheResponses ? getCacheDir() : null);
             List<CellAtRow> responseBodies = new ArrayList<CellAtRow>(urls.size());
-            for (int i = 0; i < urls.size(); i++) {
-                CellAtRow urlData = urls.get(i);
-                CellAtRow cellAtRow = fetch(urlData);
-                if (cellAtRow != null) {
-                    responseBodies.add(cellAtRow);
+            try {
+                List<Future<URLFetcher.Response>> responses = new ArrayList<Future<URLFetcher.Response>>(urls.size());
+                for (CellAtRow urlData : urls) {
+                    String urlString = urlData.cell.value.toString();
+                    try {
+                        new URL(urlString);
+                        responses.add(fetcher.fetch(urlString));
+                    } catch (MalformedURLException e) {
+                        responses.add(null);
+                    }
                 }
                 
-                _progress = i * 100 / urls.size();
-                try {
-                    Thread.sleep(_delay);
-                } catch (InterruptedException e) {
-                    if (_canceled) {
-                        break;
+                for (int i = 0; i < urls.size(); i++) {
+                    if (responses.get(i) != null) {
+                        URLFetcher.Response response;
+                        try {
+                            response = responses.get(i).get();
+                        } catch (InterruptedException e) {
+                            if (_canceled) {
+                                break;
+                            }
+                            continue;
+                        } catch (ExecutionException e) {
+                            response = new URLFetcher.Response(null, e.getCause().getMessage());
+                        }
+                        
+                        int row = urls.get(i).row;
+                        if (response.body != null) {
+                            responseBodies.add(new CellAtRow(row, new Cell(response.body, null)));
+                        } else if (_onError == OnError.StoreError) {
+                            responseBodies.add(new CellAtRow(row, new Cell(new EvalError(response.error), null)));
+                        }
                     }
+                    
+                    _progress = (i + 1) * 100 / urls.size();
                 }
+            } finally {
+                fetcher.shutdown();
             }
             
             if (!_canceled) {
@@ -255,66 +286,11 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             }
         }
         
-        CellAtRow fetch(CellAtRow urlData) {
-            String urlString = urlData.cell.value.toString();
-            URL url = null;
-            
-            try {
-                url = new URL(urlString);
-            } catch (MalformedURLException e) {
-                return null;
-            }
-            
-            try {
-                URLConnection urlConnection = url.openConnection();
-//                    urlConnection.setRequestProperty(_headerKey, _headerValue);
-                
-                try {
-                    InputStream is = urlConnection.getInputStream();
-                    try {
-                        String encoding = urlConnection.getContentEncoding();
-                        if (encoding == null) {
-                            String contentType = urlConnection.getContentType();
-                            if (contentType != null) {
-                                final String charsetEqual = "charset=";
-                                int c = contentType.lastIndexOf(charsetEqual);
-                                if (c > 0) {
-                                    encoding = contentType.substring(c + charsetEqual.length());
-                                }
-                            }
-                        }
-                        return new CellAtRow(
-                                urlData.row,
-                                new Cell(
-                                        ParsingUtilities.inputStreamToString(
-                                                is, encoding != null ? encoding : "UTF-8"),
-                                                null));
-
-                    } finally {
-                        is.close();
-                    }
-                } catch (IOException e) {
-                    String message;
-                    if (urlConnection instanceof HttpURLConnection) {
-                        int status = ((HttpURLConnection)urlConnection).getResponseCode();
-                        String errorString = "";
-                        InputStream errorStream = ((HttpURLConnection)urlConnection).getErrorStream();
-                        if (errorStream != null) {
-                            errorString = ParsingUtilities.inputStreamToString(errorStream);
-                        }
-                        message = String.format("HTTP error %d : %s | %s",status,
-                                ((HttpURLConnection)urlConnection).getResponseMessage(),
-                                errorString);
-                    } else {
-                        message = e.toString();
-                    }
-                    return _onError == OnError.StoreError ?
-                            new CellAtRow(urlData.row, new Cell(new EvalError(message), null)) : null;
-                }
-            } catch (Exception e) {
-                return _onError == OnError.StoreError ?
-                        new CellAtRow(urlData.row, new Cell(new EvalError(e.getMessage()), null)) : null;
+        protected File getCacheDir() {
+            if (ProjectManager.singleton instanceof FileProjectManager) {
+                return new File(((FileProjectManager) ProjectManager.singleton).getWorkspaceDir(), "fetch-cache");
             }
+            return null;
         }
 
         RowVisitor createRowVisitor(List<CellAtRow> cellsAtRows) {
@@ -43,15 +43,13 @@ import org.json.JSONWriter;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.Engine.Mode;
-import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.history.HistoryEntry;
 import com.google.refine.model.AbstractOperation;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
-import com.google.refine.model.Row;
 import com.google.refine.model.changes.RowReorderChange;
 import com.google.refine.operations.OperationRegistry;
+import com.google.refine.sorting.BaseSorter;
 import com.google.refine.sorting.SortingRecordVisitor;
 import com.google.refine.sorting.SortingRowVisitor;
 
@@ -91,34 +89,36 @@ public class RowReorderOperation extends AbstractOperation {
 
     @Override
     protected HistoryEntry createHistoryEntry(Project project, long historyEntryID) throws Exception {
-        Engine engine = new Engine(project);
-        engine.setMode(_mode);
-
-        List<Integer> rowIndices = new ArrayList<Integer>();
-        if (_mode == Mode.RowBased) {
-            RowVisitor visitor = new IndexingVisitor(rowIndices);
-            if (_sorting != null) {
-                SortingRowVisitor srv = new SortingRowVisitor(visitor);
-
-                srv.initializeFromJSON(project, _sorting);
-                if (srv.hasCriteria()) {
-                    visitor = srv;
-                }
+        boolean rowBased = _mode == Mode.RowBased;
+
+        BaseSorter sorter = null;
+        if (_sorting != null) {
+            sorter = rowBased ? new SortingRowVisitor(null) : new SortingRecordVisitor(null);
+            sorter.initializeFromJSON(project, _sorting);
+            if (!sorter.hasCriteria()) {
+                sorter = null;
             }
+        }
 
-            engine.getAllRows().accept(project, visitor);
-        } else {
-            RecordVisitor visitor = new IndexingVisitor(rowIndices);
-            if (_sorting != null) {
-                SortingRecordVisitor srv = new SortingRecordVisitor(visitor);
+        // every row or record gets reordered, so sort their indices directly
+        int[] indices = new int[rowBased ? project.rows.size() : project.recordModel.getRecordCount()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        if (sorter != null) {
+            sorter.sortIndices(project, indices);
+        }
 
-                srv.initializeFromJSON(project, _sorting);
-                if (srv.hasCriteria()) {
-                    visitor = srv;
+        List<Integer> rowIndices = new ArrayList<Integer>(project.rows.size());
+        for (int index : indices) {
+            if (rowBased) {
+                rowIndices.add(index);
+            } else {
+                Record record = project.recordModel.getRecord(index);
+                for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
+                    rowIndices.add(r);
                 }
             }
-
-            engine.getAllRecords().accept(project, visitor);
         }
 
         return new HistoryEntry(
@@ -129,34 +129,4 @@ public class RowReorderOperation extends AbstractOperation {
                 new RowReorderChange(rowIndices)
         );
     }
-
-    static protected class IndexingVisitor implements RowVisitor, RecordVisitor {
-        List<Integer> _indices;
-
-        IndexingVisitor(List<Integer> indices) {
-            _indices = indices;
-        }
-
-        @Override
-        public void start(Project project) {
-        }
-
-        @Override
-        public void end(Project project) {
-        }
-
-        @Override
-        public boolean visit(Project project, int rowIndex, Row row) {
-            _indices.add(rowIndex);
-            return false;
-        }
-
-        @Override
-        public boolean visit(Project project, Record record) {
-            for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
-                _indices.add(r);
-            }
-            return false;
-        }
-    }
 }
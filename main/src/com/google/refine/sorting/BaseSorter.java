@@ -33,7 +33,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
-import java.util.List;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -46,61 +47,94 @@ import com.google.refine.sorting.Criterion.KeyMaker;
 abstract public class BaseSorter {
     protected Criterion[] _criteria;
     protected KeyMaker[] _keyMakers;
-    protected ComparatorWrapper[] _comparatorWrappers;
-    protected List<Object[]> _keys;
 
-    public class ComparatorWrapper {
-        final public int criterionIndex;
-        final protected int multiplier;
-
-        public ComparatorWrapper(int criterionIndex) {
-            this.criterionIndex = criterionIndex;
-            this.multiplier = _criteria[criterionIndex].reverse ? -1 : 1;
-        }
+    static final protected byte VALUE = 0;
+    static final protected byte BLANK = 1;
+    static final protected byte ERROR = 2;
+
+    /**
+     * The keys of some rows or records by position, each worked out once up front so that
+     * comparisons only look up arrays: numbers, dates and booleans as primitive doubles,
+     * strings as collation keys.
+     */
+    protected class SortKeys implements ParallelMergeSort.IntComparator {
+        final protected int[] indices;
+        final protected byte[][] kinds;
+        final protected double[][] numbers;
+        final protected Object[][] objects;
+
+        protected SortKeys(Project project, int[] indices) {
+            int count = indices.length;
+
+            this.indices = indices;
+            kinds = new byte[_criteria.length][count];
+            numbers = new double[_criteria.length][];
+            objects = new Object[_criteria.length][];
+            for (int c = 0; c < _criteria.length; c++) {
+                if (_keyMakers[c].hasNumericSortKeys()) {
+                    numbers[c] = new double[count];
+                } else {
+                    objects[c] = new Object[count];
+                }
+            }
 
-        public Object getKey(Project project, Object o, int index) {
-            while (index >= _keys.size()) {
-                _keys.add(null);
+            for (int p = 0; p < count; p++) {
+                Object[] keys = makeKeys(project, getObject(project, indices[p]), indices[p]);
+                for (int c = 0; c < keys.length; c++) {
+                    Object key = keys[c];
+                    if (key == null) {
+                        kinds[c][p] = BLANK;
+                    } else if (key instanceof EvalError) {
+                        kinds[c][p] = ERROR;
+                    } else {
+                        Object sortKey = _keyMakers[c].makeSortKey(key);
+                        if (numbers[c] != null) {
+                            numbers[c][p] = ((Number) sortKey).doubleValue();
+                        } else {
+                            objects[c][p] = sortKey;
+                        }
+                    }
+                }
             }
+        }
 
-            Object[] keys = _keys.get(index);
-            if (keys == null) {
-                keys = makeKeys(project, o, index);
-                _keys.set(index, keys);
+        /**
+         * Compares the rows or records at the given positions, and failing that their indices,
+         * so that equal ones keep their relative order like in a stable sort.
+         */
+        @Override
+        public int compare(int p1, int p2) {
+            for (int c = 0; c < _criteria.length; c++) {
+                int result = compare(c, p1, p2);
+                if (result != 0) {
+                    return result;
+                }
             }
-            return keys[criterionIndex];
+            return indices[p1] < indices[p2] ? -1 : (indices[p1] > indices[p2] ? 1 : 0);
         }
 
-        public int compare(Project project, Object o1, int i1, Object o2, int i2) {
-            Criterion c = _criteria[criterionIndex];
-            Object key1 = getKey(project, o1, i1);
-            Object key2 = getKey(project, o2, i2);
+        protected int compare(int c, int p1, int p2) {
+            Criterion criterion = _criteria[c];
+            byte kind1 = kinds[c][p1];
+            byte kind2 = kinds[c][p2];
+            if (kind1 != VALUE || kind2 != VALUE) {
+                // blanks and errors go where their positions say, regardless of reverse
+                return getPosition(criterion, kind1) - getPosition(criterion, kind2);
+            }
 
-            if (key1 == null) {
-                if (key2 == null) {
-                    return 0;
-                } else if (key2 instanceof EvalError) {
-                    return c.blankPosition - c.errorPosition;
-                } else {
-                    return c.blankPosition;
-                }
-            } else if (key1 instanceof EvalError) {
-                if (key2 == null) {
-                    return c.errorPosition - c.blankPosition;
-                } else if (key2 instanceof EvalError) {
-                    return 0;
-                } else {
-                    return c.errorPosition;
-                }
+            int result;
+            if (numbers[c] != null) {
+                double d1 = numbers[c][p1];
+                double d2 = numbers[c][p2];
+                result = d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
             } else {
-                if (key2 == null) {
-                    return -c.blankPosition;
-                } else if (key2 instanceof EvalError) {
-                    return -c.errorPosition;
-                } else {
-                    return _keyMakers[criterionIndex].compareKeys(key1, key2) * multiplier;
-                }
+                result = _keyMakers[c].compareSortKeys(objects[c][p1], objects[c][p2]);
             }
+            return criterion.reverse ? -result : result;
+        }
+
+        protected int getPosition(Criterion criterion, byte kind) {
+            return kind == BLANK ? criterion.blankPosition : (kind == ERROR ? criterion.errorPosition : 0);
         }
     }
 
@@ -111,19 +145,16 @@ abstract public class BaseSorter {
 
             _criteria = new Criterion[count];
             _keyMakers = new KeyMaker[count];
-            _comparatorWrappers = new ComparatorWrapper[count];
 
             for (int i = 0; i < count; i++) {
                 JSONObject obj2 = a.getJSONObject(i);
 
                 _criteria[i] = createCriterionFromJSON(project, obj2);
                 _keyMakers[i] = _criteria[i].createKeyMaker();
-                _comparatorWrappers[i] = new ComparatorWrapper(i);
             }
         } else {
             _criteria = new Criterion[0];
             _keyMakers = new KeyMaker[0];
-            _comparatorWrappers = new ComparatorWrapper[0];
         }
     }
 
@@ -163,11 +194,62 @@ abstract public class BaseSorter {
         return keys;
     }
 
-    protected int compare(Project project, Object o1, int i1, Object o2, int i2) {
-        int c = 0;
-        for (int i = 0; c == 0 && i < _comparatorWrappers.length; i++) {
-            c = _comparatorWrappers[i].compare(project, o1, i1, o2, i2);
+    /**
+     * @return the row or record with the given index
+     */
+    abstract protected Object getObject(Project project, int index);
+
+    /**
+     * Sorts the given row or record indices in place, like a stable sort of them in
+     * increasing order would.
+     */
+    public void sortIndices(Project project, int[] indices) {
+        SortKeys keys = new SortKeys(project, indices.clone());
+
+        int[] positions = new int[indices.length];
+        for (int p = 0; p < positions.length; p++) {
+            positions[p] = p;
         }
-        return c;
+        ParallelMergeSort.sort(positions, keys);
+
+        for (int i = 0; i < positions.length; i++) {
+            indices[i] = keys.indices[positions[i]];
+        }
+    }
+
+    /**
+     * Selects the first indices in sorted order with a bounded heap, which is much cheaper
+     * than sorting all indices when only the first few are needed.
+     *
+     * @return the first count indices, or fewer if there aren't as many, in sorted order
+     */
+    public int[] selectFirstIndices(Project project, int[] indices, int count) {
+        count = Math.min(count, indices.length);
+        if (count == 0) {
+            return new int[0];
+        }
+
+        final SortKeys keys = new SortKeys(project, indices);
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return keys.compare(o2, o1); // largest first
+            }
+        });
+
+        for (int p = 0; p < indices.length; p++) {
+            if (heap.size() < count) {
+                heap.add(p);
+            } else if (keys.compare(p, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(p);
+            }
+        }
+
+        int[] first = new int[heap.size()];
+        for (int i = first.length - 1; i >= 0; i--) {
+            first[i] = indices[heap.poll()];
+        }
+        return first;
     }
 }
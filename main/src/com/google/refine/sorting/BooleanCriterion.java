@@ -53,13 +53,23 @@ public class BooleanCriterion extends Criterion {
                         return s_error;
                     }
                 }
-                return value;
+                return null;
             }
 
             @Override
             public int compareKeys(Object key1, Object key2) {
                 return ((Boolean) key1).compareTo((Boolean) key2);
             }
+            
+            @Override
+            public Object makeSortKey(Object key) {
+                return ((Boolean) key).booleanValue() ? 1 : 0;
+            }
+            
+            @Override
+            public boolean hasNumericSortKeys() {
+                return true;
+            }
         };
     }
 }
@@ -123,6 +123,25 @@ abstract public class Criterion {
         abstract public int compareKeys(Object key1, Object key2);
 
         abstract protected Object makeKey(Object value);
+        
+        /**
+         * Turns a key that is neither blank nor an error into what sorting compares. Sorts
+         * work out these once per row or record, so they should be cheap to compare.
+         */
+        public Object makeSortKey(Object key) {
+            return key;
+        }
+        
+        public int compareSortKeys(Object sortKey1, Object sortKey2) {
+            return compareKeys(sortKey1, sortKey2);
+        }
+        
+        /**
+         * @return whether sort keys are Numbers that compare like their double values
+         */
+        public boolean hasNumericSortKeys() {
+            return false;
+        }
     }
     abstract public KeyMaker createKeyMaker();
 }
@@ -63,6 +63,16 @@ public class DateCriterion extends Criterion {
             public int compareKeys(Object key1, Object key2) {
                 return ((Date) key1).compareTo((Date) key2);
             }
+            
+            @Override
+            public Object makeSortKey(Object key) {
+                return ((Date) key).getTime(); // exact as a double for any date within 285,000 years
+            }
+            
+            @Override
+            public boolean hasNumericSortKeys() {
+                return true;
+            }
         };
     }
 }
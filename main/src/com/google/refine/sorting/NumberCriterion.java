@@ -69,7 +69,7 @@ public class NumberCriterion extends Criterion {
                     }
                     return s_error;
                 }
-                return value;
+                return null;
             }
 
             @Override
@@ -78,6 +78,11 @@ public class NumberCriterion extends Criterion {
                 double d2 = ((Number) key2).doubleValue();
                 return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
             }
+            
+            @Override
+            public boolean hasNumericSortKeys() {
+                return true;
+            }
         };
     }
 }
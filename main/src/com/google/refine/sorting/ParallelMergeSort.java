@@ -0,0 +1,180 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.sorting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stable merge sort of int arrays, typically positions into arrays of precomputed keys, by
+ * a comparator over those ints. Large arrays get sorted as chunks on several threads, and
+ * the sorted chunks then get merged pairwise, also in parallel.
+ */
+public class ParallelMergeSort {
+    static public int parallelThreshold = Integer.getInteger("refine.sortParallelThreshold", 1 << 16);
+    static public int maxThreads = Integer.getInteger("refine.sortMaxThreads", Runtime.getRuntime().availableProcessors());
+    
+    static final protected int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Compares two ints, which must be safe to call from several threads at once.
+     */
+    public interface IntComparator {
+        public int compare(int i1, int i2);
+    }
+
+    static public void sort(int[] a, IntComparator comparator) {
+        int threads = Math.min(maxThreads, a.length / Math.max(1, parallelThreshold / 4));
+        if (a.length < parallelThreshold || threads < 2) {
+            mergeSort(a.clone(), a, 0, a.length, comparator);
+        } else {
+            parallelSort(a, comparator, Integer.highestOneBit(threads));
+        }
+    }
+    
+    static protected void parallelSort(final int[] a, final IntComparator comparator, int chunkCount) {
+        final int[] scratch = a.clone();
+        final int[] bounds = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            bounds[i] = (int) ((long) a.length * i / chunkCount);
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(chunkCount);
+        try {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                final int low = bounds[i];
+                final int high = bounds[i + 1];
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        mergeSort(scratch, a, low, high, comparator);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+            
+            int[] src = a;
+            int[] dest = scratch;
+            for (int width = 1; width < chunkCount; width *= 2) {
+                tasks.clear();
+                for (int i = 0; i < chunkCount; i += 2 * width) {
+                    final int[] from = src;
+                    final int[] to = dest;
+                    final int low = bounds[i];
+                    final int mid = bounds[i + width];
+                    final int high = bounds[i + 2 * width];
+                    tasks.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            merge(from, low, mid, high, to, comparator);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(executor, tasks);
+                
+                int[] t = src; src = dest; dest = t;
+            }
+            
+            if (src != a) {
+                System.arraycopy(src, 0, a, 0, a.length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    static protected void invokeAll(ExecutorService executor, List<Callable<Object>> tasks) {
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sorting", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Sorts dest[low, high), using src[low, high), which must hold the same ints, as scratch space.
+     */
+    static protected void mergeSort(int[] src, int[] dest, int low, int high, IntComparator comparator) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                int v = dest[i];
+                int j = i;
+                for (; j > low && comparator.compare(dest[j - 1], v) > 0; j--) {
+                    dest[j] = dest[j - 1];
+                }
+                dest[j] = v;
+            }
+            return;
+        }
+        
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, comparator);
+        mergeSort(dest, src, mid, high, comparator);
+        
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low); // already in order
+        } else {
+            merge(src, low, mid, high, dest, comparator);
+        }
+    }
+    
+    /**
+     * Merges the sorted runs src[low, mid) and src[mid, high) into dest[low, high), taking
+     * from the first run on ties to keep the sort stable.
+     */
+    static protected void merge(int[] src, int low, int mid, int high, int[] dest, IntComparator comparator) {
+        int i = low;
+        int j = mid;
+        for (int k = low; k < high; k++) {
+            if (j >= high || (i < mid && comparator.compare(src[i], src[j]) <= 0)) {
+                dest[k] = src[i++];
+            } else {
+                dest[k] = src[j++];
+            }
+        }
+    }
+}
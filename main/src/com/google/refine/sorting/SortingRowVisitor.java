@@ -33,10 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Arrays;
 
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.model.Project;
@@ -45,17 +42,8 @@ import com.google.refine.sorting.Criterion.KeyMaker;
 
 public class SortingRowVisitor extends BaseSorter implements RowVisitor {
     final protected RowVisitor _visitor;
-    protected List<IndexedRow> _indexedRows;
-
-    static protected class IndexedRow {
-        final int index;
-        final Row row;
-
-        IndexedRow(int index, Row row) {
-            this.index = index;
-            this.row = row;
-        }
-    }
+    protected int[] _rowIndices;
+    protected int _rowCount;
 
     public SortingRowVisitor(RowVisitor visitor) {
         _visitor = visitor;
@@ -63,31 +51,19 @@ public class SortingRowVisitor extends BaseSorter implements RowVisitor {
 
     @Override
     public void start(Project project) {
-        int count = project.rows.size();
-        _indexedRows = new ArrayList<IndexedRow>(count);
-        _keys = new ArrayList<Object[]>(count);
+        _rowIndices = new int[project.rows.size()];
+        _rowCount = 0;
     }
 
     @Override
     public void end(Project project) {
         _visitor.start(project);
 
-        Collections.sort(_indexedRows, new Comparator<IndexedRow>() {
-            Project project;
-
-            Comparator<IndexedRow> init(Project project) {
-                this.project = project;
-                return this;
-            }
+        int[] rowIndices = Arrays.copyOf(_rowIndices, _rowCount);
+        sortIndices(project, rowIndices);
 
-            @Override
-            public int compare(IndexedRow o1, IndexedRow o2) {
-                return SortingRowVisitor.this.compare(project, o1.row, o1.index, o2.row, o2.index);
-            }
-        }.init(project));
-
-        for (IndexedRow indexedRow : _indexedRows) {
-            _visitor.visit(project, indexedRow.index, indexedRow.row);
+        for (int rowIndex : rowIndices) {
+            _visitor.visit(project, rowIndex, project.rows.get(rowIndex));
         }
 
         _visitor.end(project);
@@ -95,10 +71,18 @@ public class SortingRowVisitor extends BaseSorter implements RowVisitor {
 
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
-        _indexedRows.add(new IndexedRow(rowIndex, row));
+        if (_rowCount == _rowIndices.length) {
+            _rowIndices = Arrays.copyOf(_rowIndices, Math.max(16, _rowCount * 2));
+        }
+        _rowIndices[_rowCount++] = rowIndex;
         return false;
     }
 
+    @Override
+    protected Object getObject(Project project, int index) {
+        return project.rows.get(index);
+    }
+
     @Override
     protected Object makeKey(
             Project project, KeyMaker keyMaker, Criterion c, Object o, int index) {
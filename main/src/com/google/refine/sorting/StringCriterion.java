@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
+import java.text.CollationKey;
 import java.text.Collator;
 
 import org.json.JSONException;
@@ -78,6 +79,17 @@ public class StringCriterion extends Criterion {
             public int compareKeys(Object key1, Object key2) {
                 return collator.compare(key1, key2);
             }
+            
+            @Override
+            public Object makeSortKey(Object key) {
+                // collation keys compare as bytes, without decomposing both strings each time
+                return collator.getCollationKey(key.toString());
+            }
+            
+            @Override
+            public int compareSortKeys(Object sortKey1, Object sortKey2) {
+                return ((CollationKey) sortKey1).compareTo((CollationKey) sortKey2);
+            }
         };
     }
 }
@@ -0,0 +1,237 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+
+import com.google.refine.expr.EvalError;
+
+/**
+ * Helpers for the binary format of rows, cells and recons in project and change files.
+ * Files start with a magic number naming their content and a format version, so that
+ * readers can tell them apart from the older text files and from future versions.
+ * Strings are written as their UTF-8 length followed by their UTF-8 bytes, with a length of
+ * -1 for null, as DataOutput.writeUTF() cannot write strings longer than 64KB. Each row
+ * or recon is written as a record prefixed by its length in bytes.
+ */
+public class BinaryUtilities {
+    static final public int VERSION = 1;
+    
+    static final public int ROWS_MAGIC = 0x52465257; // "RFRW"
+    static final public int POOL_MAGIC = 0x5246504C; // "RFPL"
+    
+    static final public byte VALUE_NULL = 0;
+    static final public byte VALUE_STRING = 1;
+    static final public byte VALUE_LONG = 2;
+    static final public byte VALUE_DOUBLE = 3;
+    static final public byte VALUE_TRUE = 4;
+    static final public byte VALUE_FALSE = 5;
+    static final public byte VALUE_DATE = 6;
+    static final public byte VALUE_ERROR = 7;
+    
+    /**
+     * Buffers one record so that it can be written after its length.
+     */
+    static public class RecordBuffer extends ByteArrayOutputStream {
+        final public DataOutputStream out = new DataOutputStream(this);
+        
+        public void writeRecord(DataOutput dest) throws IOException {
+            out.flush();
+            dest.writeInt(count);
+            dest.write(buf, 0, count);
+            reset();
+        }
+    }
+    
+    static public DataInputStream readRecord(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupted record length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+    
+    static public void writeHeader(DataOutput out, int magic) throws IOException {
+        out.writeInt(magic);
+        out.writeInt(VERSION);
+    }
+    
+    /**
+     * @return the format version of the file
+     * @throws IOException if the file does not start with the given magic number or was
+     *         written by a later version
+     */
+    static public int readHeader(DataInput in, int magic) throws IOException {
+        if (in.readInt() != magic) {
+            throw new IOException("Not a binary file of the expected kind");
+        }
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported binary format version " + version);
+        }
+        return version;
+    }
+    
+    static public void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+    
+    static public String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+    
+    /**
+     * Writes a tag for the type of the given value, followed by the value. Other numbers,
+     * like BigInteger or BigDecimal, are written as longs when integral and doubles otherwise,
+     * so that they reload as numbers just like from the JSON format. Values of other types the
+     * format does not know are written as their string forms, just like the JSON format does.
+     */
+    static public void writeValue(DataOutput out, Object value) throws IOException {
+        writeValue(out, value, (byte) 0);
+    }
+    
+    /**
+     * @param flags bits or'ed into the tag, beyond the value tag bits
+     */
+    static public void writeValue(DataOutput out, Object value, byte flags) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL | flags);
+        } else if (value instanceof String) {
+            out.writeByte(VALUE_STRING | flags);
+            writeString(out, (String) value);
+        } else if (value instanceof Long || value instanceof Integer ||
+                value instanceof Short || value instanceof Byte) {
+            out.writeByte(VALUE_LONG | flags);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(VALUE_DOUBLE | flags);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            Number number = (Number) value;
+            if (isLong(number)) {
+                out.writeByte(VALUE_LONG | flags);
+                out.writeLong(number.longValue());
+            } else {
+                out.writeByte(VALUE_DOUBLE | flags);
+                out.writeDouble(number.doubleValue());
+            }
+        } else if (value instanceof Boolean) {
+            out.writeByte((((Boolean) value).booleanValue() ? VALUE_TRUE : VALUE_FALSE) | flags);
+        } else if (value instanceof Calendar) {
+            out.writeByte(VALUE_DATE | flags);
+            out.writeLong(((Calendar) value).getTimeInMillis());
+        } else if (value instanceof Date) {
+            out.writeByte(VALUE_DATE | flags);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof EvalError) {
+            out.writeByte(VALUE_ERROR | flags);
+            writeString(out, ((EvalError) value).message);
+        } else {
+            out.writeByte(VALUE_STRING | flags);
+            writeString(out, value.toString());
+        }
+    }
+    
+    /**
+     * @return whether the number is integral and fits in a long
+     */
+    static protected boolean isLong(Number number) {
+        if (number instanceof BigInteger) {
+            return ((BigInteger) number).bitLength() < 64;
+        } else if (number instanceof BigDecimal) {
+            try {
+                ((BigDecimal) number).longValueExact();
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        } else {
+            double d = number.doubleValue();
+            return d == Math.rint(d) && Math.abs(d) < Long.MAX_VALUE;
+        }
+    }
+    
+    /**
+     * @param tag the tag of the value, already read and stripped of any flags
+     */
+    static public Object readValue(DataInput in, int tag) throws IOException {
+        switch (tag) {
+        case VALUE_NULL:
+            return null;
+        case VALUE_STRING:
+            return readString(in);
+        case VALUE_LONG:
+            return in.readLong();
+        case VALUE_DOUBLE:
+            return in.readDouble();
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_DATE:
+            return new Date(in.readLong());
+        case VALUE_ERROR:
+            return new EvalError(readString(in));
+        default:
+            throw new IOException("Unknown value tag " + tag);
+        }
+    }
+    
+    static public Object readValue(DataInput in) throws IOException {
+        return readValue(in, in.readByte());
+    }
+}
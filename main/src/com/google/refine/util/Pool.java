@@ -33,6 +33,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -120,6 +124,34 @@ public class Pool implements Jsonizable {
         }
     }
     
+    /**
+     * Writes the pooled recons in the binary format, see BinaryUtilities.
+     */
+    public void saveBinary(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        BinaryUtilities.writeHeader(dos, BinaryUtilities.POOL_MAGIC);
+        
+        Collection<Recon> recons2 = recons.values();
+        dos.writeInt(recons2.size());
+        
+        BinaryUtilities.RecordBuffer buffer = new BinaryUtilities.RecordBuffer();
+        for (Recon recon : recons2) {
+            recon.saveBinary(buffer.out);
+            buffer.writeRecord(dos);
+        }
+        dos.flush();
+    }
+    
+    public void loadBinary(InputStream is) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        BinaryUtilities.readHeader(in, BinaryUtilities.POOL_MAGIC);
+        
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            pool(Recon.loadBinary(BinaryUtilities.readRecord(in)));
+        }
+    }
+    
     public void load(InputStream is) throws Exception {
         load(new InputStreamReader(is, "UTF-8"));
     }
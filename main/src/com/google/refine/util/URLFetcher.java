@@ -0,0 +1,336 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches URLs on a bounded pool of workers over pooled, kept-alive HTTP connections.
+ * Requests to each host are limited in number and spaced out by a delay, identical URLs
+ * are fetched only once, and successful responses can be kept in a directory so that
+ * fetching them again is free. Like the recon cache, that directory is bounded: responses
+ * expire after a time to live, and the least recently used ones are evicted first once
+ * there are too many.
+ */
+public class URLFetcher {
+    final static Logger logger = LoggerFactory.getLogger("url-fetcher");
+    
+    static public int maxWorkers = Integer.getInteger("refine.fetchMaxWorkers", 8);
+    static public int maxPerHost = Integer.getInteger("refine.fetchMaxPerHost", 2);
+    static public int maxConnections = Integer.getInteger("refine.fetchMaxConnections", 32);
+    static public int maxCachedResponses = Integer.getInteger("refine.fetchCacheMaxEntries", 10000);
+    static public long cacheTimeToLive = Long.getLong("refine.fetchCacheTTLHours", 24 * 7) * 60 * 60 * 1000; // ms
+    
+    static protected HttpClient s_client;
+    
+    static synchronized protected HttpClient getClient() {
+        if (s_client == null) {
+            ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+            
+            s_client = new DefaultHttpClient(connectionManager);
+            HttpConnectionParams.setConnectionTimeout(s_client.getParams(), 30000);
+            HttpConnectionParams.setSoTimeout(s_client.getParams(), 60000);
+        }
+        return s_client;
+    }
+    
+    static public class Response {
+        final public String body;  // null on error
+        final public String error; // null on success
+        
+        public Response(String body, String error) {
+            this.body = body;
+            this.error = error;
+        }
+    }
+    
+    static protected class Host {
+        final Semaphore permits = new Semaphore(Math.max(1, maxPerHost));
+        long nextStart = 0;
+    }
+    
+    final protected int              _delay; // ms between the starts of requests to the same host
+    final protected File             _cacheDir;
+    final protected ExecutorService  _executor;
+    
+    final protected Map<String, Future<Response>> _fetches = new HashMap<String, Future<Response>>();
+    final protected Map<String, Host>             _hosts = new HashMap<String, Host>();
+    
+    protected int _requests = 0;
+    protected int _cacheHits = 0;
+    
+    /**
+     * @param delay ms to wait between starting requests to the same host
+     * @param cacheDir where to keep responses, or null not to keep them
+     */
+    public URLFetcher(int delay, File cacheDir) {
+        _delay = delay;
+        _cacheDir = cacheDir;
+        _executor = Executors.newFixedThreadPool(Math.max(1, maxWorkers));
+        
+        if (_cacheDir != null && !_cacheDir.exists() && !_cacheDir.mkdirs()) {
+            logger.warn("Failed to create directory : " + _cacheDir);
+        }
+        pruneCache();
+    }
+    
+    /**
+     * Starts fetching the URL, unless it has been asked for already.
+     */
+    synchronized public Future<Response> fetch(final String url) {
+        Future<Response> future = _fetches.get(url);
+        if (future == null) {
+            future = _executor.submit(new Callable<Response>() {
+                @Override
+                public Response call() throws Exception {
+                    return fetchNow(url);
+                }
+            });
+            _fetches.put(url, future);
+        }
+        return future;
+    }
+    
+    /**
+     * Stops the workers, interrupting the fetches in progress.
+     */
+    public void shutdown() {
+        _executor.shutdownNow();
+        pruneCache();
+    }
+    
+    synchronized public int getRequestCount() {
+        return _requests;
+    }
+    
+    synchronized public int getCacheHits() {
+        return _cacheHits;
+    }
+    
+    protected Response fetchNow(String urlString) throws Exception {
+        File cacheFile = _cacheDir != null ? new File(_cacheDir, DigestUtils.md5Hex(urlString)) : null;
+        if (cacheFile != null && cacheFile.exists()) {
+            String body = loadFromCache(cacheFile, urlString);
+            if (body != null) {
+                synchronized (this) {
+                    _cacheHits++;
+                }
+                return new Response(body, null);
+            }
+        }
+        
+        URL url = new URL(urlString);
+        Host host = getHost(url.getHost());
+        host.permits.acquire();
+        try {
+            waitForTurn(host);
+            synchronized (this) {
+                _requests++;
+            }
+            
+            Response response = "http".equals(url.getProtocol()) || "https".equals(url.getProtocol()) ?
+                    fetchHttp(urlString) : fetchOther(url);
+            if (cacheFile != null && response.body != null) {
+                saveToCache(cacheFile, response.body);
+            }
+            return response;
+        } finally {
+            host.permits.release();
+        }
+    }
+    
+    synchronized protected Host getHost(String name) {
+        Host host = _hosts.get(name);
+        if (host == null) {
+            host = new Host();
+            _hosts.put(name, host);
+        }
+        return host;
+    }
+    
+    protected void waitForTurn(Host host) throws InterruptedException {
+        long wait;
+        synchronized (host) {
+            long now = System.currentTimeMillis();
+            long start = Math.max(now, host.nextStart);
+            host.nextStart = start + _delay;
+            wait = start - now;
+        }
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+    
+    protected Response fetchHttp(String url) {
+        HttpGet get;
+        try {
+            get = new HttpGet(url);
+        } catch (IllegalArgumentException e) {
+            return new Response(null, e.getMessage());
+        }
+        
+        try {
+            HttpResponse response = getClient().execute(get);
+            HttpEntity entity = response.getEntity();
+            String body = entity != null ? EntityUtils.toString(entity, "UTF-8") : "";
+            
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= 400) {
+                return new Response(null, String.format("HTTP error %d : %s | %s",
+                        status, response.getStatusLine().getReasonPhrase(), body));
+            }
+            return new Response(body, null);
+        } catch (Exception e) {
+            get.abort();
+            return new Response(null, e.getMessage());
+        }
+    }
+    
+    protected Response fetchOther(URL url) {
+        try {
+            InputStream is = url.openStream();
+            try {
+                return new Response(ParsingUtilities.inputStreamToString(is, "UTF-8"), null);
+            } finally {
+                is.close();
+            }
+        } catch (Exception e) {
+            return new Response(null, e.getMessage());
+        }
+    }
+    
+    /**
+     * @return the cached response body, or null if it has expired or can't be read
+     */
+    protected String loadFromCache(File cacheFile, String url) {
+        try {
+            String s = ParsingUtilities.inputStreamToString(new FileInputStream(cacheFile), "UTF-8");
+            int newline = s.indexOf('\n');
+            long now = System.currentTimeMillis();
+            if (newline > 0 && now - Long.parseLong(s.substring(0, newline)) <= cacheTimeToLive) {
+                cacheFile.setLastModified(now); // the file's time tells when the response was last used
+                return s.substring(newline + 1);
+            }
+            cacheFile.delete();
+        } catch (Exception e) {
+            logger.warn("Failed to read cached response for " + url, e);
+        }
+        return null;
+    }
+    
+    /**
+     * Saves a response body, preceded by a line with the time it was fetched at.
+     */
+    protected void saveToCache(File cacheFile, String body) {
+        File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".temp");
+        try {
+            OutputStream os = new FileOutputStream(tempFile);
+            try {
+                os.write((System.currentTimeMillis() + "\n").getBytes("UTF-8"));
+                os.write(body.getBytes("UTF-8"));
+            } finally {
+                os.close();
+            }
+            tempFile.renameTo(cacheFile);
+        } catch (Exception e) {
+            logger.warn("Failed to cache response in " + cacheFile, e);
+        }
+    }
+    
+    /**
+     * Deletes the cached responses that haven't been used for longer than they live, and
+     * then the least recently used ones beyond the maximum number of cached responses.
+     */
+    protected void pruneCache() {
+        if (_cacheDir == null) {
+            return;
+        }
+        File[] files = _cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        
+        final Map<File, Long> lastUsed = new HashMap<File, Long>();
+        for (File file : files) {
+            lastUsed.put(file, file.lastModified());
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return lastUsed.get(f2).compareTo(lastUsed.get(f1)); // most recently used first
+            }
+        });
+        
+        long now = System.currentTimeMillis();
+        int kept = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".temp")) {
+                continue;
+            }
+            if (kept < maxCachedResponses && now - lastUsed.get(file) <= cacheTimeToLive) {
+                kept++;
+            } else if (!file.delete()) {
+                logger.warn("Failed to delete cached response " + file);
+            }
+        }
+    }
+}
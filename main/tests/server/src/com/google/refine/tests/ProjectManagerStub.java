@@ -100,6 +100,12 @@ public class ProjectManagerStub extends ProjectManager {
         super.saveProjects(allModified);
     }
 
+    //Overridden to make public for testing
+    @Override
+    public void forgetLoadedProject(long projectID) {
+        super.forgetLoadedProject(projectID);
+    }
+
     @Override
     protected void saveWorkspace() {
         // empty
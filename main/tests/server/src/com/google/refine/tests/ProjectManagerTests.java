@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.tests;
 
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -52,8 +53,11 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
+import com.google.refine.ProjectManager;
 import com.google.refine.ProjectMetadata;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.Row;
 import com.google.refine.process.ProcessManager;
 import com.google.refine.tests.model.ProjectStub;
 
@@ -163,6 +167,7 @@ public class ProjectManagerTests extends RefineTest {
         verify(project, times(1)).getProcessManager();
         verify(project, times(2)).getLastSave();
         verify(project, times(1)).dispose();
+        verify(SUT, times(1)).forgetLoadedProject(0);
         verify(SUT, never()).saveProject(project);
         Assert.assertEquals(SUT.getProject(0), null);
         verifyNoMoreInteractions(project);
@@ -199,8 +204,93 @@ public class ProjectManagerTests extends RefineTest {
     }
     //TODO test canSaveAllModifiedWithRaceCondition
 
+    @Test
+    public void canEvictLeastRecentlyUsed(){
+        long budget = ProjectManager.s_projectCacheBudget;
+        long pinMillis = ProjectManager.s_projectPinMillis;
+        ProjectManager.s_projectPinMillis = 0;
+        try {
+            Project project1 = createProjectWithRows(1, 100);
+            ProjectMetadata metadata1 = mock(ProjectMetadata.class);
+            whenMetadataGetModified(metadata1, -10); // saved after the last modification
+            Project project2 = createProjectWithRows(2, 100);
+            ProjectMetadata metadata2 = mock(ProjectMetadata.class);
+
+            long size = ProjectManager.estimateSize(project1);
+            Assert.assertTrue(size > 0);
+            ProjectManager.s_projectCacheBudget = size * 3 / 2;
+
+            registerProject(project1, metadata1);
+            Assert.assertSame(SUT.getProject(1), project1);
+            registerProject(project2, metadata2);
+
+            verify(SUT, never()).saveProject(project1);
+            verify(project1, times(1)).dispose();
+            verify(SUT, times(1)).forgetLoadedProject(1);
+            Assert.assertEquals(SUT.getProjectCacheEvictions(), 1);
+            Assert.assertEquals(SUT.getProjectCacheCount(), 1);
+
+            Assert.assertSame(SUT.getProject(2), project2);
+            Assert.assertNull(SUT.getProject(1)); // the stub can't load it back
+            Assert.assertEquals(SUT.getProjectCacheHits(), 2);
+            Assert.assertEquals(SUT.getProjectCacheMisses(), 1);
+        } finally {
+            ProjectManager.s_projectCacheBudget = budget;
+            ProjectManager.s_projectPinMillis = pinMillis;
+        }
+    }
+
+    @Test
+    public void cannotEvictProjectsInUse(){
+        long budget = ProjectManager.s_projectCacheBudget;
+        long pinMillis = ProjectManager.s_projectPinMillis;
+        try {
+            Project project1 = createProjectWithRows(1, 100);
+            ProjectMetadata metadata1 = mock(ProjectMetadata.class);
+            whenMetadataGetModified(metadata1, -10);
+            Project project2 = createProjectWithRows(2, 100);
+            ProjectMetadata metadata2 = mock(ProjectMetadata.class);
+            whenMetadataGetModified(metadata2, -10);
+            Project project3 = createProjectWithRows(3, 100);
+
+            ProjectManager.s_projectCacheBudget = ProjectManager.estimateSize(project1) * 3 / 2;
+
+            // used a moment ago
+            ProjectManager.s_projectPinMillis = 60 * 1000;
+            registerProject(project1, metadata1);
+            registerProject(project2, metadata2);
+            verify(project1, never()).dispose();
+
+            // being read
+            ProjectManager.s_projectPinMillis = 0;
+            project1.lock.lockRead();
+            try {
+                registerProject(project3, mock(ProjectMetadata.class));
+                verify(project1, never()).dispose();
+            } finally {
+                project1.lock.unlockRead();
+            }
+            Assert.assertSame(SUT.getProject(1), project1);
+        } finally {
+            ProjectManager.s_projectCacheBudget = budget;
+            ProjectManager.s_projectPinMillis = pinMillis;
+        }
+    }
+
     //-------------helpers-------------
 
+    protected Project createProjectWithRows(long id, int rowCount){
+        Project proj = spy(new ProjectStub(id));
+        for (int i = 0; i < rowCount; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("value " + i, null));
+            proj.rows.add(row);
+        }
+        whenProjectGetLastSave(proj);
+        doNothing().when(proj).dispose();
+        return proj;
+    }
+
     protected void registerProject(){
         this.registerProject(project, metadata);
     }
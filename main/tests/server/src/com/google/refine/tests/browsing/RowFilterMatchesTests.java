@@ -0,0 +1,166 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.browsing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.util.RowFilterMatches;
+import com.google.refine.browsing.util.RowScanner;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class RowFilterMatchesTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    List<RowFilter> filters;
+    int evaluations;
+
+    @BeforeMethod
+    public void SetUp() {
+        project = new Project();
+        for (int i = 0; i < 12; i++) {
+            project.rows.add(new Row(0));
+        }
+        evaluations = 0;
+
+        filters = new ArrayList<RowFilter>();
+        filters.add(new DivisibleRowFilter(2));
+        filters.add(new DivisibleRowFilter(3));
+    }
+
+    @Test
+    public void visitRowsMatchingAllFilters() {
+        RowFilterMatches matches = new RowFilterMatches(project, filters);
+        Assert.assertEquals(collect(matches, RowFilterMatches.MATCHES_ALL), "0,6,");
+    }
+
+    @Test
+    public void visitRowsMatchingAllButOneFilter() {
+        RowFilterMatches matches = new RowFilterMatches(project, filters);
+        Assert.assertEquals(collect(matches, 0), "0,3,6,9,");
+        Assert.assertEquals(collect(matches, 1), "0,2,4,6,8,10,");
+    }
+
+    @Test
+    public void evaluateEachFilterAtMostOncePerRow() {
+        new RowFilterMatches(project, filters);
+        Assert.assertTrue(evaluations <= project.rows.size() * filters.size());
+    }
+
+    @Test
+    public void matchRowsInParallelAsInSequence() {
+        for (int i = 12; i < 1000; i++) {
+            project.rows.add(new Row(0));
+        }
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        filters.add(new DivisibleRowFilter(5) {
+            @Override
+            public boolean filterRow(Project project, int rowIndex, Row row) {
+                threads.add(Thread.currentThread());
+                return super.filterRow(project, rowIndex, row);
+            }
+        });
+
+        int minRowsPerPartition = RowScanner.minRowsPerPartition;
+        RowFilterMatches sequential;
+        RowFilterMatches parallel;
+        try {
+            RowScanner.minRowsPerPartition = Integer.MAX_VALUE;
+            sequential = new RowFilterMatches(project, filters);
+            Assert.assertEquals(threads.size(), 1);
+
+            RowScanner.minRowsPerPartition = 10;
+            parallel = new RowFilterMatches(project, filters);
+        } finally {
+            RowScanner.minRowsPerPartition = minRowsPerPartition;
+        }
+
+        for (int except = RowFilterMatches.MATCHES_ALL; except < filters.size(); except++) {
+            Assert.assertEquals(collect(parallel, except), collect(sequential, except));
+        }
+    }
+
+    protected String collect(RowFilterMatches matches, int except) {
+        final StringBuffer sb = new StringBuffer();
+        matches.getFilteredRows(except).accept(project, new RowVisitor() {
+            @Override
+            public void start(Project project) {
+            }
+
+            @Override
+            public boolean visit(Project project, int rowIndex, Row row) {
+                sb.append(rowIndex).append(',');
+                return false;
+            }
+
+            @Override
+            public void end(Project project) {
+            }
+        });
+        return sb.toString();
+    }
+
+    protected class DivisibleRowFilter implements RowFilter {
+        final int divisor;
+
+        DivisibleRowFilter(int divisor) {
+            this.divisor = divisor;
+        }
+
+        @Override
+        public boolean filterRow(Project project, int rowIndex, Row row) {
+            evaluations++;
+            return rowIndex % divisor == 0;
+        }
+    }
+}
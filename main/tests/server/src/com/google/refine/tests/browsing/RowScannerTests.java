@@ -0,0 +1,178 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.browsing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.ParallelRowVisitor;
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.util.RowScanner;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class RowScannerTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    int savedMinRowsPerPartition;
+
+    @BeforeMethod
+    public void SetUp() {
+        project = new Project();
+        for (int i = 0; i < 1000; i++) {
+            project.rows.add(new Row(0));
+        }
+        savedMinRowsPerPartition = RowScanner.minRowsPerPartition;
+        RowScanner.minRowsPerPartition = 10;
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        RowScanner.minRowsPerPartition = savedMinRowsPerPartition;
+        project = null;
+    }
+
+    @Test
+    public void mergePartialResultsInRowOrder() {
+        CollectingRowVisitor visitor = new CollectingRowVisitor();
+        RowScanner.accept(project, visitor, new RowFilter() {
+            @Override
+            public boolean filterRow(Project project, int rowIndex, Row row) {
+                return rowIndex % 3 == 0;
+            }
+        });
+
+        Assert.assertTrue(visitor.started);
+        Assert.assertTrue(visitor.ended);
+        Assert.assertEquals(visitor.rowIndices.size(), 334);
+        for (int i = 0; i < visitor.rowIndices.size(); i++) {
+            Assert.assertEquals(visitor.rowIndices.get(i).intValue(), i * 3);
+        }
+    }
+
+    @Test
+    public void visitAllRowsWithoutFilter() {
+        CollectingRowVisitor visitor = new CollectingRowVisitor();
+        RowScanner.accept(project, visitor, null);
+
+        Assert.assertEquals(visitor.rowIndices.size(), project.rows.size());
+    }
+
+    @Test(timeOut = 30000)
+    public void scanSequentiallyWithinParallelScans() {
+        final List<Set<Thread>> nestedThreads = Collections.synchronizedList(new ArrayList<Set<Thread>>());
+        CollectingRowVisitor visitor = new CollectingRowVisitor() {
+            @Override
+            public boolean visit(Project project, int rowIndex, Row row) {
+                if (rowIndex % 50 == 0) {
+                    // like facetCount() evaluated on a pool thread
+                    final Set<Thread> threads = new HashSet<Thread>();
+                    RowScanner.accept(project, new CollectingRowVisitor() {
+                        @Override
+                        public boolean visit(Project project, int rowIndex, Row row) {
+                            threads.add(Thread.currentThread());
+                            return false;
+                        }
+                    }, null);
+                    nestedThreads.add(threads);
+                }
+                return false;
+            }
+
+            @Override
+            public ParallelRowVisitor fork() {
+                return this;
+            }
+
+            @Override
+            public void merge(ParallelRowVisitor partial) {
+            }
+        };
+        RowScanner.accept(project, visitor, null);
+
+        Assert.assertEquals(nestedThreads.size(), 20);
+        for (Set<Thread> threads : nestedThreads) {
+            Assert.assertEquals(threads.size(), 1);
+        }
+    }
+
+    static protected class CollectingRowVisitor implements ParallelRowVisitor {
+        List<Integer> rowIndices = new ArrayList<Integer>();
+        boolean started;
+        boolean ended;
+
+        @Override
+        public void start(Project project) {
+            started = true;
+        }
+
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            rowIndices.add(rowIndex);
+            return false;
+        }
+
+        @Override
+        public void end(Project project) {
+            ended = true;
+        }
+
+        @Override
+        public ParallelRowVisitor fork() {
+            return new CollectingRowVisitor();
+        }
+
+        @Override
+        public void merge(ParallelRowVisitor partial) {
+            rowIndices.addAll(((CollectingRowVisitor) partial).rowIndices);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.commands.row;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.commands.row.GetRowsCommand;
+import com.google.refine.commands.row.RowIndexCache;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.io.ProjectUtilities;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.ParsingUtilities;
+
+public class GetRowsCommandTests extends RefineTest {
+
+    static final String TEXT_ENGINE =
+        "{\"mode\":\"row-based\",\"facets\":[{\"type\":\"text\",\"name\":\"Column\",\"columnName\":\"Column\"," +
+        "\"mode\":\"text\",\"caseSensitive\":false,\"query\":\"a\"}]}";
+
+    static final String CROSS_ENGINE =
+        "{\"mode\":\"row-based\",\"facets\":[{\"type\":\"list\",\"name\":\"Other\",\"columnName\":\"Column\"," +
+        "\"expression\":\"grel:cell.cross('Other', 'Column').length() > 0\"," +
+        "\"omitBlank\":false,\"omitError\":false,\"selectBlank\":false,\"selectError\":false,\"invert\":false," +
+        "\"selection\":[{\"v\":{\"v\":true,\"l\":\"true\"}}]}]}";
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    // System Under Test
+    GetRowsCommand SUT;
+
+    File workspaceDir;
+    ProjectManager oldProjectManager;
+    List<Project> projects;
+
+    @BeforeMethod
+    public void SetUp() throws IOException {
+        SUT = new GetRowsCommand();
+        RowIndexCache.clear();
+
+        workspaceDir = File.createTempFile("refine-test", "");
+        workspaceDir.delete();
+        workspaceDir.mkdirs();
+
+        oldProjectManager = ProjectManager.singleton;
+        ProjectManager.singleton = new FileProjectManager(workspaceDir) {};
+        projects = new ArrayList<Project>();
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        for (Project project : projects) {
+            ProjectUtilities.forgetProject(project.id);
+        }
+        ProjectManager.singleton = oldProjectManager;
+        deleteDir(workspaceDir);
+        RowIndexCache.clear();
+        SUT = null;
+    }
+
+    private void deleteDir(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                deleteDir(file);
+            } else {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private Project createProject(String name, String... values) throws Exception {
+        Project project = new Project();
+        project.columnModel.addColumn(0, new Column(0, "Column"), false);
+        for (String value : values) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(value, null));
+            project.rows.add(row);
+        }
+        project.update();
+
+        ProjectMetadata metadata = new ProjectMetadata();
+        metadata.setName(name);
+        ProjectManager.singleton.registerProject(project, metadata);
+        ProjectUtilities.saveSnapshot(project);
+        projects.add(project);
+        return project;
+    }
+
+    private void editCell(Project project, int rowIndex, String value) {
+        Cell oldCell = project.rows.get(rowIndex).getCell(0);
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "Edit", null,
+            new CellChange(rowIndex, 0, oldCell, new Cell(value, null))));
+    }
+
+    private JSONObject getRows(Project project, String engine, int start, int limit) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("project")).thenReturn(Long.toString(project.id));
+        when(request.getParameter("engine")).thenReturn(engine);
+        when(request.getParameter("start")).thenReturn(Integer.toString(start));
+        when(request.getParameter("limit")).thenReturn(Integer.toString(limit));
+
+        StringWriter sw = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(sw));
+
+        SUT.doPost(request, response);
+        return ParsingUtilities.evaluateJsonStringToObject(sw.toString());
+    }
+
+    private String rowIndices(JSONObject o) throws Exception {
+        JSONArray rows = o.getJSONArray("rows");
+        int[] indices = new int[rows.length()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = rows.getJSONObject(i).getInt("i");
+        }
+        return Arrays.toString(indices);
+    }
+
+    @Test
+    public void pagingHitsCachedIndices() throws Exception {
+        Project project = createProject("Main", "a0", "b1", "a2", "b3", "a4", "b5");
+
+        long hits = RowIndexCache.getHits();
+        long misses = RowIndexCache.getMisses();
+
+        JSONObject o = getRows(project, TEXT_ENGINE, 0, 2);
+        Assert.assertEquals(o.getInt("filtered"), 3);
+        Assert.assertEquals(rowIndices(o), "[0, 2]");
+        Assert.assertEquals(RowIndexCache.getHits(), hits);
+        Assert.assertEquals(RowIndexCache.getMisses(), misses + 1);
+
+        o = getRows(project, TEXT_ENGINE, 2, 2);
+        Assert.assertEquals(o.getInt("filtered"), 3);
+        Assert.assertEquals(rowIndices(o), "[4]");
+        Assert.assertEquals(RowIndexCache.getHits(), hits + 1);
+        Assert.assertEquals(RowIndexCache.getMisses(), misses + 1);
+    }
+
+    @Test
+    public void historyChangesInvalidateCachedIndices() throws Exception {
+        Project project = createProject("Main", "a0", "b1", "a2", "b3");
+
+        Assert.assertEquals(rowIndices(getRows(project, TEXT_ENGINE, 0, 10)), "[0, 2]");
+
+        editCell(project, 1, "a1");
+        long misses = RowIndexCache.getMisses();
+        Assert.assertEquals(rowIndices(getRows(project, TEXT_ENGINE, 0, 10)), "[0, 1, 2]");
+        Assert.assertEquals(RowIndexCache.getMisses(), misses + 1);
+
+        project.history.undoRedo(0);
+        misses = RowIndexCache.getMisses();
+        Assert.assertEquals(rowIndices(getRows(project, TEXT_ENGINE, 0, 10)), "[0, 2]");
+        Assert.assertEquals(RowIndexCache.getMisses(), misses + 1);
+    }
+
+    @Test
+    public void changesToCrossedProjectsInvalidateCachedIndices() throws Exception {
+        Project project = createProject("Main", "a", "b", "c");
+        Project other = createProject("Other", "a", "x");
+
+        Assert.assertEquals(rowIndices(getRows(project, CROSS_ENGINE, 0, 10)), "[0]");
+
+        editCell(other, 1, "c");
+        long misses = RowIndexCache.getMisses();
+        Assert.assertEquals(rowIndices(getRows(project, CROSS_ENGINE, 0, 10)), "[0, 2]");
+        Assert.assertEquals(RowIndexCache.getMisses(), misses + 1);
+    }
+}
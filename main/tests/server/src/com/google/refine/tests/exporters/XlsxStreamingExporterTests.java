@@ -0,0 +1,190 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.exporters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.browsing.Engine;
+import com.google.refine.exporters.XlsxStreamingExporter;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.ProjectManagerStub;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.IOUtils;
+
+public class XlsxStreamingExporterTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    Engine engine;
+    int maxRowsPerSheet;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        ProjectManager.singleton = new ProjectManagerStub();
+        ProjectMetadata projectMetadata = new ProjectMetadata();
+        project = new Project();
+        projectMetadata.setName("xlsx exporter test project");
+        ProjectManager.singleton.registerProject(project, projectMetadata);
+        engine = new Engine(project);
+        maxRowsPerSheet = XlsxStreamingExporter.maxRowsPerSheet;
+
+        project.columnModel.addColumn(0, new Column(0, "name"), true);
+        project.columnModel.addColumn(1, new Column(1, "count"), true);
+        String[] names = { "a & b", "<c>", "a & b", "d\u0001e", "f" };
+        for (int i = 0; i < names.length; i++) {
+            Row row = new Row(2);
+            row.cells.add(new Cell(names[i], null));
+            row.cells.add(new Cell(i * 1.5, null));
+            project.rows.add(row);
+        }
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        XlsxStreamingExporter.maxRowsPerSheet = maxRowsPerSheet;
+        ProjectManager.singleton.deleteProject(project.id);
+        project = null;
+        engine = null;
+    }
+
+    protected Map<String, Document> export(Properties params) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new XlsxStreamingExporter().export(project, params, engine, stream);
+
+        Map<String, Document> parts = new HashMap<String, Document>();
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            IOUtils.copy(zis, bytes);
+            parts.put(entry.getName(), DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+        return parts;
+    }
+
+    protected String[] getCells(Document sheet, Document sharedStrings) {
+        NodeList cells = sheet.getElementsByTagName("c");
+        String[] values = new String[cells.getLength()];
+        for (int i = 0; i < values.length; i++) {
+            Element c = (Element) cells.item(i);
+            String text = c.getTextContent();
+            if ("s".equals(c.getAttribute("t"))) {
+                text = sharedStrings.getElementsByTagName("si").item(Integer.parseInt(text)).getTextContent();
+            }
+            values[i] = c.getAttribute("r") + "=" + text;
+        }
+        return values;
+    }
+
+    @Test
+    public void exportInlineStrings() throws Exception {
+        Map<String, Document> parts = export(new Properties());
+
+        Assert.assertTrue(parts.containsKey("[Content_Types].xml"));
+        Assert.assertTrue(parts.containsKey("xl/workbook.xml"));
+        Assert.assertFalse(parts.containsKey("xl/sharedStrings.xml"));
+        Assert.assertEquals(parts.get("xl/workbook.xml").getElementsByTagName("sheet").getLength(), 1);
+
+        String[] cells = getCells(parts.get("xl/worksheets/sheet1.xml"), null);
+        Assert.assertEquals(cells.length, 12);
+        Assert.assertEquals(cells[0], "A1=name");
+        Assert.assertEquals(cells[1], "B1=count");
+        Assert.assertEquals(cells[2], "A2=a & b");
+        Assert.assertEquals(cells[5], "B3=1.5");
+        Assert.assertEquals(cells[8], "A5=de");
+    }
+
+    @Test
+    public void exportSharedStrings() throws Exception {
+        Properties params = new Properties();
+        params.setProperty("options", "{\"sharedStrings\":true}");
+        Map<String, Document> parts = export(params);
+
+        Document sst = parts.get("xl/sharedStrings.xml");
+        Assert.assertEquals(sst.getDocumentElement().getAttribute("count"), "7");
+        Assert.assertEquals(sst.getDocumentElement().getAttribute("uniqueCount"), "6");
+
+        String[] cells = getCells(parts.get("xl/worksheets/sheet1.xml"), sst);
+        Assert.assertEquals(cells[2], "A2=a & b");
+        Assert.assertEquals(cells[4], "A3=<c>");
+        Assert.assertEquals(cells[6], "A4=a & b");
+    }
+
+    @Test
+    public void rollOverSheets() throws Exception {
+        XlsxStreamingExporter.maxRowsPerSheet = 3;
+        Map<String, Document> parts = export(new Properties());
+
+        NodeList sheets = parts.get("xl/workbook.xml").getElementsByTagName("sheet");
+        Assert.assertEquals(sheets.getLength(), 3);
+        Assert.assertEquals(((Element) sheets.item(2)).getAttribute("name"), "xlsx exporter test project (3)");
+
+        // each sheet starts with the header row
+        for (int i = 1; i <= 3; i++) {
+            String[] cells = getCells(parts.get("xl/worksheets/sheet" + i + ".xml"), null);
+            Assert.assertEquals(cells[0], "A1=name");
+            Assert.assertEquals(cells.length, i < 3 ? 6 : 4);
+        }
+        String[] cells = getCells(parts.get("xl/worksheets/sheet3.xml"), null);
+        Assert.assertEquals(cells[2], "A2=f");
+    }
+}
@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.tests.grel;
 
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.slf4j.LoggerFactory;
@@ -47,7 +48,10 @@ import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.ParsingException;
+import com.google.refine.grel.Parser;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.Row;
 import com.google.refine.tests.RefineTest;
 
 public class GrelTests extends RefineTest {
@@ -166,6 +170,97 @@ public class GrelTests extends RefineTest {
             parseEval(bindings, test);
         }
     }
+
+    @Test
+    public void testRebindRows() throws ParsingException {
+        Row row1 = new Row(1);
+        row1.setCell(0, new Cell("a b", null));
+        Row row2 = new Row(1);
+        row2.setCell(0, new Cell("c", null));
+
+        ExpressionUtils.bind(bindings, row1, 0, "Column", row1.getCell(0));
+        parseEval(bindings, new String[] { "forEach(value.split(' '), value, value.toUppercase()).join('')", "AB" });
+        parseEval(bindings, new String[] { "value + rowIndex + cell.value", "a b0a b" });
+
+        ExpressionUtils.bind(bindings, row2, 1, "Column", row2.getCell(0));
+        parseEval(bindings, new String[] { "value + rowIndex + cell.value", "c1c" });
+
+        ExpressionUtils.bind(bindings, row2, 2, "Column", null);
+        parseEval(bindings, new String[] { "isNull(value) + ' ' + isNull(cell) + ' ' + row.index", "true true 2" });
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() throws ParsingException {
+        Row row = new Row(1);
+        row.setCell(0, new Cell(3L, null));
+        ExpressionUtils.bind(bindings, row, 0, "Column", row.getCell(0));
+
+        String tests[] = {
+                "value + 1", "value - 1.5", "value * value", "value / 2", "value / 2.0", "value % 2",
+                "value + 'a'", "'a' + value", "'a' + 'b'", "value + null", "null + null", "'a' - 'b'",
+                "value > 2", "value >= 3.0", "value < 'a'", "value <= null", "value == 3", "value == 3.0",
+                "value != 3", "'a' == 'a'", "'a' != 'b'", "null == null", "null != value", "value == '3'",
+                "toString(value)", "[]", "[value, 1]", "value.toString().length()", "now() == null",
+                "value.foo + 1", "1 + value.foo", "toNumber('x') + 1", "value.toString().substring(0, 1)",
+                "1 + 2 * value", "2 * 3 + value", "'a' + 'b' + value", "(1 + 2) + 'x'",
+                "match('a3c', 'a(\\d)c')", "match(value.toString(), '(\\d)')", "'a.b.c'.replace('.', '$')",
+                "'a.b.c'.replace(/\\./, '-')", "toDate('2012-01-02', 'yyyy-MM-dd').toString()",
+                "toDate('x', 'yyyy-MM-dd')", "toDate('2012/01/02', 'yyyy-MM-dd', 'yyyy/MM/dd').toString()",
+                "smartSplit('a;\"b;c\"', ';')", "smartSplit('a,b')",
+        };
+        for (String test : tests) {
+            Object compiled = new Parser(test, true).getExpression().evaluate(bindings);
+            Object interpreted = new Parser(test, false).getExpression().evaluate(bindings);
+            Assert.assertEquals(String.valueOf(toComparable(compiled)), String.valueOf(toComparable(interpreted)),
+                    "Compiled and interpreted results differ for expression: " + test);
+        }
+    }
+
+    @Test
+    public void testConstantsFoldedAtParseTime() throws ParsingException {
+        Assert.assertEquals(new Parser("2 * 3 + 1", true).getExpression().toString(), "7");
+        Assert.assertEquals(new Parser("'a' + 'b'", true).getExpression().toString(), "\"ab\"");
+        Assert.assertEquals(new Parser("2 * 3 + 1", false).getExpression().toString(), "2 * 3 + 1");
+    }
+
+    @Test
+    public void testInvalidConstantArgumentsFailAtParseTime() {
+        String tests[] = {
+                "match(value, '(')",
+                "toDate(value, 'yyyy-MM-dd', 'qqq')",
+                "smartSplit(value, '')",
+                };
+        for (String test : tests) {
+            try {
+                new Parser(test, true);
+            } catch (ParsingException e) {
+                continue;
+            }
+            Assert.fail("Expression with an invalid constant argument parsed: " + test);
+        }
+    }
+
+    @Test
+    public void testParsedExpressionsAreCached() throws ParsingException {
+        long hits = MetaParser.getCacheHits();
+        Evaluable eval = MetaParser.parse("grel:value + 'cached'");
+        Assert.assertSame(MetaParser.parse("value + 'cached'"), eval);
+        Assert.assertSame(MetaParser.parse("grel:value + 'cached'"), eval);
+        Assert.assertEquals(MetaParser.getCacheHits(), hits + 2);
+        Assert.assertNotSame(MetaParser.parse("grel:value + 'other'"), eval);
+    }
+
+    private Object toComparable(Object o) {
+        if (o instanceof Object[]) {
+            return Arrays.asList((Object[]) o);
+        } else if (o instanceof EvalError) {
+            return "error: " + ((EvalError) o).message;
+        } else if (o != null) {
+            return o.getClass().getSimpleName() + ":" + o;
+        }
+        return o;
+    }
+
     private void parseEval(Properties bindings, String[] test)
             throws ParsingException {
         Evaluable eval = MetaParser.parse("grel:" + test[0]);
@@ -33,12 +33,20 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.tests.importers;
 
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -47,7 +55,11 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.google.refine.importers.ImporterUtilities.MultiFileReadingProgress;
+import com.google.refine.importers.ParallelSeparatorReader;
 import com.google.refine.importers.SeparatorBasedImporter;
+import com.google.refine.importing.ImportingJob;
+import com.google.refine.model.Project;
 
 public class TsvCsvImporterTests extends ImporterTest {
 
@@ -532,6 +544,93 @@ public class TsvCsvImporterTests extends ImporterTest {
         verifyOptions();
     }
 
+    @Test
+    public void readInParallelChunks() throws Exception {
+        StringBuilder sb = new StringBuilder("id,name,note\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append(i).append(",name ").append(i).append(',');
+            if (i % 7 == 0) {
+                sb.append("\"spans\nlines, with \"\"quotes\"\"\"");
+            } else {
+                sb.append(i * 0.5);
+            }
+            sb.append('\n');
+        }
+        // the stub servlet's temp dir is a plain file, so the job gets a raw data dir of its own
+        File dir = File.createTempFile("refine-test-raw-data", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        ImportingJob job = mock(ImportingJob.class);
+        when(job.getRawDataDir()).thenReturn(dir);
+        
+        File file = new File(dir, "parallel.csv");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+        
+        JSONObject fileRecord = new JSONObject();
+        fileRecord.put("location", "parallel.csv");
+        fileRecord.put("fileName", "parallel.csv");
+        fileRecord.put("encoding", "UTF-8");
+        
+        JSONObject jsonOptions = new JSONObject();
+        jsonOptions.put("separator", ",");
+        jsonOptions.put("headerLines", 1);
+        jsonOptions.put("guessCellValueTypes", true);
+        jsonOptions.put("processQuotes", true);
+        
+        MultiFileReadingProgress progress = new MultiFileReadingProgress() {
+            @Override
+            public void startFile(String fileSource) {
+            }
+            @Override
+            public void readingFile(String fileSource, long bytesRead) {
+            }
+            @Override
+            public void endFile(String fileSource, long bytesRead) {
+            }
+        };
+        
+        int oldThreshold = SeparatorBasedImporter.parallelThreshold;
+        int oldThreads = SeparatorBasedImporter.parallelThreads;
+        int oldChunkSize = ParallelSeparatorReader.chunkSize;
+        Project serialProject = new Project();
+        try {
+            SeparatorBasedImporter.parallelThreshold = 0;
+            SeparatorBasedImporter.parallelThreads = 3;
+            ParallelSeparatorReader.chunkSize = 512;
+            SUT.parseOneFile(project, metadata, job, fileRecord, -1, jsonOptions,
+                new ArrayList<Exception>(), progress);
+            project.update();
+            
+            SeparatorBasedImporter.parallelThreshold = Integer.MAX_VALUE;
+            SUT.parseOneFile(serialProject, metadata, job, fileRecord, -1, jsonOptions,
+                new ArrayList<Exception>(), progress);
+            serialProject.update();
+        } finally {
+            SeparatorBasedImporter.parallelThreshold = oldThreshold;
+            SeparatorBasedImporter.parallelThreads = oldThreads;
+            ParallelSeparatorReader.chunkSize = oldChunkSize;
+        }
+        
+        Assert.assertEquals(project.columnModel.columns.size(), 3);
+        Assert.assertEquals(project.columnModel.columns.get(2).getName(), "note");
+        Assert.assertEquals(project.rows.size(), 500);
+        Assert.assertEquals(serialProject.rows.size(), 500);
+        Assert.assertEquals(project.rows.get(7).cells.get(2).value, "spans\nlines, with \"quotes\"");
+        Assert.assertEquals(project.rows.get(8).cells.get(0).value, 8L);
+        for (int r = 0; r < 500; r++) {
+            for (int c = 0; c < 3; c++) {
+                Assert.assertEquals(project.rows.get(r).getCellValue(c), serialProject.rows.get(r).getCellValue(c));
+            }
+        }
+    }
+
     //--helpers--
     /**
      * Used for parameterized testing for both SeparatorParser and TsvCsvParser.
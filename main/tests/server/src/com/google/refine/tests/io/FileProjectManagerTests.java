@@ -0,0 +1,167 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.io;
+
+import java.io.File;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.io.ProjectMetadataUtilities;
+import com.google.refine.model.Project;
+import com.google.refine.tests.RefineTest;
+
+public class FileProjectManagerTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    static protected class FileProjectManagerStub extends FileProjectManager {
+        protected FileProjectManagerStub(File dir) {
+            super(dir);
+        }
+
+        public void saveWorkspaceNow() {
+            saveWorkspace();
+        }
+    }
+
+    File workspaceDir;
+    ProjectManager oldProjectManager;
+    FileProjectManagerStub manager;
+    Project project1;
+    Project project2;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        workspaceDir = File.createTempFile("refine-test", "");
+        workspaceDir.delete();
+        workspaceDir.mkdirs();
+
+        oldProjectManager = ProjectManager.singleton;
+        manager = new FileProjectManagerStub(workspaceDir);
+        ProjectManager.singleton = manager;
+
+        project1 = registerProject("one");
+        project2 = registerProject("two");
+        manager.saveWorkspaceNow();
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        ProjectManager.singleton = oldProjectManager;
+        deleteDir(workspaceDir);
+    }
+
+    private void deleteDir(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                deleteDir(file);
+            } else {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    protected Project registerProject(String name) {
+        Project project = new Project();
+        ProjectMetadata metadata = new ProjectMetadata();
+        metadata.setName(name);
+        manager.registerProject(project, metadata);
+        return project;
+    }
+
+    protected File getMetadataFile(Project project) {
+        return new File(manager.getProjectDir(project.id), "metadata.json");
+    }
+
+    @Test
+    public void savesOnlyChangedMetadata() {
+        Assert.assertTrue(getMetadataFile(project1).exists());
+        Assert.assertTrue(getMetadataFile(project2).exists());
+        Assert.assertFalse(manager.getProjectMetadata(project1.id).isDirty());
+
+        getMetadataFile(project2).delete();
+        manager.getProjectMetadata(project1.id).setName("one again");
+        manager.saveWorkspaceNow();
+
+        Assert.assertEquals(ProjectMetadataUtilities.load(manager.getProjectDir(project1.id)).getName(), "one again");
+        Assert.assertFalse(getMetadataFile(project2).exists());
+        Assert.assertTrue(new File(workspaceDir, "workspace-index.json").exists());
+    }
+
+    @Test
+    public void loadsFromIndexUnlessMetadataFileChanged() throws Exception {
+        // metadata.json files changed without their times changing go unnoticed: the index is used
+        File file2 = getMetadataFile(project2);
+        long time2 = file2.lastModified();
+        ProjectMetadata changed2 = new ProjectMetadata();
+        changed2.setName("two on disk");
+        ProjectMetadataUtilities.save(changed2, manager.getProjectDir(project2.id));
+        file2.setLastModified(time2);
+
+        // those whose times changed get loaded from their files
+        File file1 = getMetadataFile(project1);
+        long time1 = file1.lastModified();
+        ProjectMetadata changed1 = new ProjectMetadata();
+        changed1.setName("one on disk");
+        ProjectMetadataUtilities.save(changed1, manager.getProjectDir(project1.id));
+        file1.setLastModified(time1 + 10000);
+
+        FileProjectManagerStub reloaded = new FileProjectManagerStub(workspaceDir);
+        Assert.assertEquals(reloaded.getProjectMetadata(project1.id).getName(), "one on disk");
+        Assert.assertEquals(reloaded.getProjectMetadata(project2.id).getName(), "two");
+        Assert.assertFalse(reloaded.getProjectMetadata(project2.id).isDirty());
+    }
+
+    @Test
+    public void loadsWithoutIndex() {
+        new File(workspaceDir, "workspace-index.json").delete();
+
+        FileProjectManagerStub reloaded = new FileProjectManagerStub(workspaceDir);
+        Assert.assertEquals(reloaded.getProjectMetadata(project1.id).getName(), "one");
+        Assert.assertEquals(reloaded.getProjectMetadata(project2.id).getName(), "two");
+    }
+}
@@ -0,0 +1,228 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.history.HistoryEntryManager;
+import com.google.refine.io.FileHistoryEntryManager;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.io.ProjectUtilities;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.tests.RefineTest;
+
+public class ProjectUtilitiesTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    /**
+     * Can stand in for another history entry manager, say one failing to save changes.
+     */
+    static class TestProjectManager extends FileProjectManager {
+        HistoryEntryManager historyEntryManager;
+
+        TestProjectManager(File dir) {
+            super(dir);
+        }
+
+        @Override
+        public HistoryEntryManager getHistoryEntryManager() {
+            return historyEntryManager != null ? historyEntryManager : super.getHistoryEntryManager();
+        }
+    }
+
+    File workspaceDir;
+    File projectDir;
+    Project project;
+    ProjectManager oldProjectManager;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        workspaceDir = File.createTempFile("refine-test", "");
+        workspaceDir.delete();
+        workspaceDir.mkdirs();
+
+        oldProjectManager = ProjectManager.singleton;
+        ProjectManager.singleton = new TestProjectManager(workspaceDir);
+
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(0, "Column"), false);
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("v" + i, null));
+            project.rows.add(row);
+        }
+        project.update();
+        ProjectManager.singleton.registerProject(project, new ProjectMetadata());
+        projectDir = ((FileProjectManager) ProjectManager.singleton).getProjectDir(project.id);
+    }
+
+    @AfterMethod
+    public void TearDown() throws IOException {
+        ProjectUtilities.forgetProject(project.id);
+        ProjectManager.singleton = oldProjectManager;
+        deleteDir(workspaceDir);
+    }
+
+    private void deleteDir(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                deleteDir(file);
+            } else {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private HistoryEntry editCell(int rowIndex, String value) {
+        Cell oldCell = project.rows.get(rowIndex).getCell(0);
+        HistoryEntry entry = new HistoryEntry(HistoryEntry.allocateID(), project, "Edit", null,
+            new CellChange(rowIndex, 0, oldCell, new Cell(value, null)));
+        project.history.addEntry(entry);
+        return entry;
+    }
+
+    @Test
+    public void replayLogOnLoad() {
+        ProjectUtilities.saveSnapshot(project);
+
+        editCell(1, "x");
+        ProjectUtilities.save(project);
+        Assert.assertTrue(new File(projectDir, "data.log").exists());
+
+        Project loaded = ProjectUtilities.load(projectDir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "x");
+        Assert.assertEquals(loaded.history.getLastPastEntries(0).size(), 1);
+    }
+
+    @Test
+    public void replayLogWithoutSavingChanges() {
+        ProjectUtilities.saveSnapshot(project);
+
+        HistoryEntry entry = editCell(1, "x");
+        ProjectUtilities.save(project);
+        new File(new File(projectDir, "history"), entry.id + ".change.zip").delete();
+
+        // as if on a read-only disk: the change can be loaded, but not saved again
+        final CellChange change = (CellChange) entry.getChange();
+        ((TestProjectManager) ProjectManager.singleton).historyEntryManager = new FileHistoryEntryManager() {
+            @Override
+            public void loadChange(HistoryEntry historyEntry) {
+                historyEntry.setChange(change);
+            }
+
+            @Override
+            public void saveChange(HistoryEntry historyEntry) throws Exception {
+                throw new IOException("Read-only file system");
+            }
+        };
+
+        Project loaded = ProjectUtilities.load(projectDir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "x");
+        Assert.assertEquals(loaded.history.getLastPastEntries(0).size(), 1);
+    }
+
+    @Test
+    public void revertSnapshotEntriesOnLoad() {
+        HistoryEntry entry = editCell(0, "x");
+        ProjectUtilities.saveSnapshot(project);
+
+        // undoing and discarding an entry of the snapshot must keep its change around
+        project.history.undoRedo(0);
+        editCell(2, "y");
+        ProjectUtilities.save(project);
+
+        File changeFile = new File(new File(projectDir, "history"), entry.id + ".change.zip");
+        Assert.assertTrue(changeFile.exists());
+
+        Project loaded = ProjectUtilities.load(projectDir, project.id);
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "v0");
+        Assert.assertEquals(loaded.rows.get(2).getCellValue(0), "y");
+
+        // until the project is saved as a new snapshot
+        ProjectUtilities.saveSnapshot(project);
+        Assert.assertFalse(changeFile.exists());
+        Assert.assertFalse(new File(projectDir, "data.log").exists());
+    }
+
+    @Test
+    public void fallBackOnEarlierLogRecords() throws IOException {
+        ProjectUtilities.saveSnapshot(project);
+
+        editCell(1, "x");
+        ProjectUtilities.save(project);
+        HistoryEntry entry = editCell(2, "y");
+        ProjectUtilities.save(project);
+
+        // damage the change of the last record
+        File changeFile = new File(new File(projectDir, "history"), entry.id + ".change.zip");
+        FileWriter writer = new FileWriter(changeFile);
+        writer.write("not a zip file");
+        writer.close();
+
+        Project loaded = ProjectUtilities.load(projectDir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "x");
+        Assert.assertEquals(loaded.rows.get(2).getCellValue(0), "v2");
+        Assert.assertEquals(loaded.history.getLastPastEntries(0).size(), 1);
+
+        // the log and the changes it needs outlive the next snapshot
+        ProjectUtilities.saveSnapshot(loaded);
+        Assert.assertTrue(changeFile.exists());
+        boolean kept = false;
+        for (String name : projectDir.list()) {
+            kept |= name.endsWith(".unreplayed.log");
+        }
+        Assert.assertTrue(kept);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.model;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.CellDictionary;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class CellDictionaryTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    private Row createRow(Cell... cells) {
+        Row row = new Row(cells.length);
+        for (int i = 0; i < cells.length; i++) {
+            row.setCell(i, cells[i]);
+        }
+        return row;
+    }
+
+    @Test
+    public void shareEqualValuesPerColumn() {
+        CellDictionary dictionary = new CellDictionary();
+        Row row1 = createRow(new Cell("a", null), new Cell(1L, null));
+        Row row2 = createRow(new Cell("a", null), new Cell("a", null));
+        Row row3 = createRow(new Cell("a", null), new Cell(1.0, null));
+        Row row4 = createRow(new Cell("a", null), new Cell(1L, null));
+        dictionary.compact(row1);
+        dictionary.compact(row2);
+        dictionary.compact(row3);
+        dictionary.compact(row4);
+
+        Assert.assertSame(row2.getCell(0), row1.getCell(0));
+        Assert.assertSame(row3.getCell(0), row1.getCell(0));
+        // columns have their own dictionaries
+        Assert.assertNotSame(row2.getCell(1), row1.getCell(0));
+        // values of different types are not shared
+        Assert.assertNotSame(row3.getCell(1), row1.getCell(1));
+        Assert.assertSame(row4.getCell(1), row1.getCell(1));
+    }
+
+    @Test
+    public void doNotShareReconciledCells() {
+        CellDictionary dictionary = new CellDictionary();
+        Row row1 = createRow(new Cell("a", new Recon(0, null, null)));
+        Row row2 = createRow(new Cell("a", new Recon(0, null, null)));
+        dictionary.compact(row1);
+        dictionary.compact(row2);
+
+        Assert.assertNotSame(row2.getCell(0), row1.getCell(0));
+        Assert.assertNotSame(row2.getCell(0).recon, row1.getCell(0).recon);
+    }
+}
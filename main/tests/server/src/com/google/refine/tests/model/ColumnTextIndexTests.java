@@ -0,0 +1,139 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.model;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.facets.TextSearchFacet;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ColumnTextIndex;
+import com.google.refine.model.ColumnValueIndex;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class ColumnTextIndexTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(0, "text"), false);
+        String[] values = { "Apple pie", "apple", "pineAPPLE", "banana", "grape", null, "", "a.b*c", "apple", "Banana split" };
+        for (String value : values) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(value, null));
+            project.rows.add(row);
+        }
+    }
+
+    @Test
+    public void intersectTrigramPostings() {
+        ColumnValueIndex valueIndex = new ColumnValueIndex(project, 0);
+        ColumnTextIndex index = valueIndex.getTextIndex();
+
+        Assert.assertEquals(Arrays.toString(index.getCandidates("APPL")), "[0, 1, 2]");
+        Assert.assertEquals(Arrays.toString(index.getCandidates("ana")), "[3, 6]");
+        Assert.assertEquals(Arrays.toString(index.getCandidates("kiwi")), "[]");
+        Assert.assertNull(index.getCandidates("ap"));
+        Assert.assertTrue(index.getSize() > 0);
+    }
+
+    @Test
+    public void catchUpWithNewValues() {
+        ColumnValueIndex valueIndex = new ColumnValueIndex(project, 0);
+        ColumnTextIndex index = valueIndex.getTextIndex();
+        Assert.assertEquals(index.getCandidates("kiwi").length, 0);
+
+        valueIndex.update(4, new Cell("kiwis", null));
+        int[] candidates = index.getCandidates("kiwi");
+        Assert.assertEquals(candidates.length, 1);
+        Assert.assertEquals(valueIndex.getValue(candidates[0]), "kiwis");
+    }
+
+    @Test
+    public void textSearchMatchesScan() throws Exception {
+        String[] queries = { "apple", "APPLE", "pie", "an", "a", "b*c", "kiwi" };
+        String[] regexes = { "app?le", "^apple$", "b\\*c", "[bp]ana", "a.b", "APP+L", "ba|pi", "an{2}", "x*" };
+
+        for (boolean caseSensitive : new boolean[] { false, true }) {
+            for (String query : queries) {
+                assertMatchesScan("text", query, caseSensitive);
+            }
+            for (String regex : regexes) {
+                assertMatchesScan("regex", regex, caseSensitive);
+            }
+        }
+    }
+
+    protected void assertMatchesScan(String mode, String query, boolean caseSensitive) throws Exception {
+        TextSearchFacet facet = new TextSearchFacet();
+        facet.initializeFromJSON(project, new JSONObject()
+            .put("name", "text").put("columnName", "text").put("query", query)
+            .put("mode", mode).put("caseSensitive", caseSensitive));
+        RowFilter filter = facet.getRowFilter(project);
+
+        Pattern pattern = "regex".equals(mode) ?
+            Pattern.compile(query, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE) : null;
+        for (int r = 0; r < project.rows.size(); r++) {
+            Row row = project.rows.get(r);
+            Object value = row.getCellValue(0);
+
+            boolean expected = false;
+            if (value != null) {
+                String s = value.toString();
+                expected = pattern != null ? pattern.matcher(s).find() :
+                    caseSensitive ? s.contains(query) : s.toLowerCase().contains(query.toLowerCase());
+            }
+            Assert.assertEquals(filter.filterRow(project, r, row), expected,
+                "Row " + r + " for " + mode + " query " + query + (caseSensitive ? " (case sensitive)" : ""));
+        }
+    }
+}
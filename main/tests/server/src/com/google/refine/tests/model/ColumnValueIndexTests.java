@@ -0,0 +1,144 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.model;
+
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.filters.ExpressionEqualRowFilter;
+import com.google.refine.browsing.util.ColumnValueIndexGrouper;
+import com.google.refine.expr.EvalError;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.model.Cell;
+import com.google.refine.model.ColumnValueIndex;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class ColumnValueIndexTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+
+    @BeforeMethod
+    public void SetUp() {
+        project = new Project();
+        String[] values = { "a", "b", "a", "", null, "1" };
+        for (String value : values) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(value, null));
+            project.rows.add(row);
+        }
+        Row row = new Row(1);
+        row.setCell(0, new Cell(new EvalError("oops"), null));
+        project.rows.add(row);
+        row = new Row(1);
+        row.setCell(0, new Cell(1L, null));
+        project.rows.add(row);
+    }
+
+    @Test
+    public void indexDistinctValues() {
+        ColumnValueIndex index = new ColumnValueIndex(project, 0);
+
+        Assert.assertEquals(index.getRowCount(), 8);
+        Assert.assertEquals(index.getValueCount(), 3);
+        Assert.assertEquals(index.getValueId(0), index.getValueId(2));
+        Assert.assertEquals(index.getValueId(3), ColumnValueIndex.BLANK);
+        Assert.assertEquals(index.getValueId(4), ColumnValueIndex.BLANK);
+        Assert.assertEquals(index.getValueId(6), ColumnValueIndex.ERROR);
+        // values are told apart by their string forms, like facet choices
+        Assert.assertEquals(index.getValueId(5), index.getValueId(7));
+    }
+
+    @Test
+    public void updateSingleCell() {
+        ColumnValueIndex index = new ColumnValueIndex(project, 0);
+
+        index.update(1, new Cell("a", null));
+        Assert.assertEquals(index.getValueId(1), index.getValueId(0));
+
+        index.update(3, new Cell("c", null));
+        Assert.assertEquals(index.getValueCount(), 4);
+        Assert.assertEquals(index.getValue(index.getValueId(3)), "c");
+    }
+
+    @Test
+    public void filterMixedValuesByType() {
+        ColumnValueIndex index = new ColumnValueIndex(project, 0);
+        Assert.assertTrue(index.isMixed(index.getValueId(5)));
+        Assert.assertFalse(index.isMixed(index.getValueId(0)));
+
+        // the number 1 and the string "1" share an id, but only the number matches
+        ExpressionEqualRowFilter filter = new ExpressionEqualRowFilter(
+            new Evaluable() {
+                @Override
+                public Object evaluate(Properties bindings) {
+                    return bindings.get("value");
+                }
+            }, "Column", 0, index, new Object[] { 1L }, false, false, false);
+        for (int r = 0; r < project.rows.size(); r++) {
+            Assert.assertEquals(filter.filterRow(project, r, project.rows.get(r)), r == 7);
+        }
+    }
+
+    @Test
+    public void groupRowsByValueId() {
+        ColumnValueIndex index = new ColumnValueIndex(project, 0);
+        ColumnValueIndexGrouper grouper = new ColumnValueIndexGrouper(null, "Column", 0, index);
+
+        grouper.start(project);
+        for (int r = 0; r < project.rows.size(); r++) {
+            grouper.visit(project, r, project.rows.get(r));
+        }
+        grouper.end(project);
+
+        Assert.assertEquals(grouper.choices.size(), 3);
+        Assert.assertEquals(grouper.choices.get("b").count, 1);
+        Assert.assertEquals(grouper.choices.get("a").count, 2);
+        Assert.assertEquals(grouper.choices.get("1").count, 2);
+        Assert.assertEquals(grouper.blankCount, 2);
+        Assert.assertEquals(grouper.errorCount, 1);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.model;
+
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.history.Change;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.MassRowChange;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.Pool;
+
+public class MassRowChangeTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+
+    @BeforeMethod
+    public void SetUp() {
+        project = new Project();
+        for (int i = 0; i < 6; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("r" + i, null));
+            project.rows.add(row);
+        }
+    }
+
+    private void assertRowValues(Object... values) {
+        Assert.assertEquals(project.rows.size(), values.length);
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(project.rows.get(i).getCellValue(0), values[i]);
+        }
+    }
+
+    @Test
+    public void saveOnlyModifiedRows() throws Exception {
+        // split row 2 in two, and join row 4 into row 3
+        List<Row> newRows = new ArrayList<Row>();
+        for (int i = 0; i < 6; i++) {
+            Row oldRow = project.rows.get(i);
+            if (i == 2) {
+                Row row = oldRow.dup();
+                row.setCell(0, new Cell("r2a", null));
+                newRows.add(row);
+                row = new Row(1);
+                row.setCell(0, new Cell("r2b", null));
+                newRows.add(row);
+            } else if (i == 3) {
+                Row row = oldRow.dup();
+                row.setCell(0, new Cell("r3r4", null));
+                newRows.add(row);
+            } else if (i != 4) {
+                newRows.add(oldRow.dup());
+            }
+        }
+
+        MassRowChange change = new MassRowChange(newRows);
+        change.apply(project);
+        assertRowValues("r0", "r1", "r2a", "r2b", "r3r4", "r5");
+
+        StringWriter writer = new StringWriter();
+        change.save(writer, new Properties());
+        String saved = writer.toString();
+        Assert.assertFalse(saved.contains("\"r0\""));
+        Assert.assertFalse(saved.contains("\"r5\""));
+        Assert.assertTrue(saved.contains("\"r2b\""));
+        Assert.assertTrue(saved.contains("\"r4\""));
+
+        Change loaded = MassRowChange.load(
+            new LineNumberReader(new StringReader(saved)), new Pool());
+
+        loaded.revert(project);
+        assertRowValues("r0", "r1", "r2", "r3", "r4", "r5");
+
+        loaded.apply(project);
+        assertRowValues("r0", "r1", "r2a", "r2b", "r3r4", "r5");
+    }
+
+    @Test
+    public void loadChangesListingAllRows() throws Exception {
+        String saved =
+            "newRowCount=1\n" +
+            "{\"cells\":[{\"v\":\"x\"}]}\n" +
+            "oldRowCount=6\n" +
+            "{\"cells\":[{\"v\":\"r0\"}]}\n" +
+            "{\"cells\":[{\"v\":\"r1\"}]}\n" +
+            "{\"cells\":[{\"v\":\"r2\"}]}\n" +
+            "{\"cells\":[{\"v\":\"r3\"}]}\n" +
+            "{\"cells\":[{\"v\":\"r4\"}]}\n" +
+            "{\"cells\":[{\"v\":\"r5\"}]}\n" +
+            "/ec/\n";
+
+        Change loaded = MassRowChange.load(
+            new LineNumberReader(new StringReader(saved)), new Pool());
+
+        loaded.apply(project);
+        assertRowValues("x");
+        loaded.revert(project);
+        assertRowValues("r0", "r1", "r2", "r3", "r4", "r5");
+    }
+}
@@ -0,0 +1,266 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.io.ProjectUtilities;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.ProjectLock;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.tests.RefineTest;
+
+public class ProjectLockTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    ProjectLock lock;
+    File workspaceDir;
+    ProjectManager oldProjectManager;
+    List<Project> projects;
+
+    @BeforeMethod
+    public void SetUp() throws IOException {
+        lock = new ProjectLock();
+
+        workspaceDir = File.createTempFile("refine-test", "");
+        workspaceDir.delete();
+        workspaceDir.mkdirs();
+
+        oldProjectManager = ProjectManager.singleton;
+        ProjectManager.singleton = new FileProjectManager(workspaceDir) {};
+        projects = new ArrayList<Project>();
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        for (Project project : projects) {
+            ProjectUtilities.forgetProject(project.id);
+        }
+        ProjectManager.singleton = oldProjectManager;
+        deleteDir(workspaceDir);
+    }
+
+    private void deleteDir(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                deleteDir(file);
+            } else {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private Project createProject() throws Exception {
+        Project project = new Project();
+        project.columnModel.addColumn(0, new Column(0, "Column"), false);
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("v" + i, null));
+            project.rows.add(row);
+        }
+        project.update();
+        ProjectManager.singleton.registerProject(project, new ProjectMetadata());
+        ProjectUtilities.saveSnapshot(project);
+        projects.add(project);
+        return project;
+    }
+
+    private HistoryEntry editCell(Project project, int rowIndex, String value) {
+        Cell oldCell = project.rows.get(rowIndex).getCell(0);
+        HistoryEntry entry = new HistoryEntry(HistoryEntry.allocateID(), project, "Edit", null,
+            new CellChange(rowIndex, 0, oldCell, new Cell(value, null)));
+        project.history.addEntry(entry);
+        return entry;
+    }
+
+    private Thread startDaemon(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    protected Thread start(final ProjectLock lock, final boolean write, final CountDownLatch acquired, final CountDownLatch release) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                if (write) {
+                    lock.lockWrite();
+                } else {
+                    lock.lockRead();
+                }
+                acquired.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // just unlock
+                }
+                if (write) {
+                    lock.unlockWrite();
+                } else {
+                    lock.unlockRead();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void projectsCanBeLookedUpWhileWaitingToSave() throws Exception {
+        final Project project = createProject();
+        Thread.sleep(10); // so that the project counts as modified since its last save
+        ProjectManager.singleton.getProjectMetadata(project.id).updateModified();
+
+        // an undo or redo in progress
+        project.lock.lockWrite();
+        try {
+            Thread saver = startDaemon(new Runnable() {
+                @Override
+                public void run() {
+                    ProjectManager.singleton.ensureProjectSaved(project.id);
+                }
+            });
+            for (int i = 0; i < 500 && saver.getState() != Thread.State.WAITING; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(saver.getState(), Thread.State.WAITING);
+
+            // the export waiting to save must not keep the writer from looking up projects
+            Thread lookup = startDaemon(new Runnable() {
+                @Override
+                public void run() {
+                    ProjectManager.singleton.getProject(project.id);
+                }
+            });
+            lookup.join(5000);
+            Assert.assertFalse(lookup.isAlive(), "Project lookup blocked by a pending save");
+        } finally {
+            project.lock.unlockWrite();
+        }
+    }
+
+    @Test
+    public void undoRedoAlongsideSaves() throws Exception {
+        final Project project = createProject();
+        final Project otherProject = createProject();
+        final HistoryEntry entry1 = editCell(project, 0, "x");
+        final HistoryEntry entry2 = editCell(project, 1, "y");
+        final int rounds = 200;
+
+        Thread undoer = startDaemon(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < rounds; i++) {
+                    project.history.undoRedo(i % 2 == 0 ? entry1.id : entry2.id);
+                }
+            }
+        });
+        Thread exporter = startDaemon(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < rounds; i++) {
+                    ProjectManager.singleton.ensureProjectSaved(project.id);
+                }
+            }
+        });
+        Thread reader = startDaemon(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < rounds; i++) {
+                    // like a facet computed across projects
+                    project.lock.lockRead();
+                    try {
+                        ProjectManager.singleton.getProject(otherProject.id);
+                    } finally {
+                        project.lock.unlockRead();
+                    }
+                    ProjectUtilities.save(project);
+                }
+            }
+        });
+
+        for (Thread thread : new Thread[] { undoer, exporter, reader }) {
+            thread.join(30000);
+            Assert.assertFalse(thread.isAlive(), "Deadlocked: " + thread.getName());
+        }
+        Assert.assertEquals(project.history.getLastPastEntries(0).size(), 2);
+        Assert.assertEquals(project.rows.get(1).getCellValue(0), "y");
+    }
+
+    @Test
+    public void writersWaitForReaders() throws Exception {
+        CountDownLatch releaseReader = new CountDownLatch(1);
+        CountDownLatch reading = new CountDownLatch(1);
+        start(lock, false, reading, releaseReader);
+        Assert.assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+        long writes = ProjectLock.writeStats.getCount();
+        CountDownLatch writing = new CountDownLatch(1);
+        Thread writer = start(lock, true, writing, new CountDownLatch(0));
+        Assert.assertFalse(writing.await(200, TimeUnit.MILLISECONDS));
+
+        releaseReader.countDown();
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+        writer.join();
+
+        Assert.assertTrue(ProjectLock.writeStats.getCount() > writes);
+        Assert.assertTrue(ProjectLock.writeStats.getMaxWaitMillis() >= 100);
+    }
+}
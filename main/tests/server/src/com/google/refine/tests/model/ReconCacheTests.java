@@ -0,0 +1,119 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.model;
+
+import java.io.File;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.recon.ReconCache;
+import com.google.refine.tests.RefineTest;
+
+public class ReconCacheTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    File file;
+    int maxEntries;
+    long timeToLive;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        file = File.createTempFile("recon-cache", ".json");
+        file.delete();
+        maxEntries = ReconCache.maxEntries;
+        timeToLive = ReconCache.timeToLive;
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        file.delete();
+        ReconCache.maxEntries = maxEntries;
+        ReconCache.timeToLive = timeToLive;
+    }
+
+    @Test
+    public void keepAcrossRestarts() {
+        ReconCache cache = new ReconCache(file);
+        cache.put("http://a", "/type", "{\"query\":\"x\"}", "[{\"id\":\"/x\",\"name\":\"é\"}]");
+        cache.put("http://b", null, "{\"query\":\"x\"}", "[]");
+        cache.save();
+
+        ReconCache reloaded = new ReconCache(file);
+        reloaded.load();
+        Assert.assertEquals(reloaded.size(), 2);
+        Assert.assertEquals(reloaded.get("http://a", "/type", "{\"query\":\"x\"}"), "[{\"id\":\"/x\",\"name\":\"é\"}]");
+        Assert.assertEquals(reloaded.get("http://b", null, "{\"query\":\"x\"}"), "[]");
+        Assert.assertNull(reloaded.get("http://a", "/other", "{\"query\":\"x\"}"));
+        Assert.assertEquals(reloaded.getHits(), 2);
+        Assert.assertEquals(reloaded.getMisses(), 1);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        ReconCache.maxEntries = 2;
+        ReconCache cache = new ReconCache(null);
+        cache.put("s", "t", "1", "[1]");
+        cache.put("s", "t", "2", "[2]");
+        cache.get("s", "t", "1");
+        cache.put("s", "t", "3", "[3]");
+
+        Assert.assertEquals(cache.get("s", "t", "1"), "[1]");
+        Assert.assertNull(cache.get("s", "t", "2"));
+        Assert.assertEquals(cache.get("s", "t", "3"), "[3]");
+    }
+
+    @Test
+    public void expireOldEntries() throws Exception {
+        ReconCache cache = new ReconCache(file);
+        cache.put("s", "t", "1", "[1]");
+        cache.save();
+
+        ReconCache.timeToLive = -1;
+        Assert.assertNull(cache.get("s", "t", "1"));
+        Assert.assertEquals(cache.size(), 0);
+
+        ReconCache reloaded = new ReconCache(file);
+        reloaded.load();
+        Assert.assertEquals(reloaded.size(), 0);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Recon.Judgment;
+import com.google.refine.model.recon.ReconJob;
+import com.google.refine.model.recon.ReconPipeline;
+import com.google.refine.model.recon.StandardReconConfig;
+import com.google.refine.model.recon.StandardReconConfig.ColumnDetail;
+import com.google.refine.tests.ProjectManagerStub;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.ParsingUtilities;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReconPipelineTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    /**
+     * Stands in for a reconciliation service, matching each query to an entity named
+     * after it, except for queries starting with "bad", and failing the first
+     * failingRequests requests as a whole.
+     */
+    static class StubService implements HttpHandler {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Map<String, Integer> queryCounts = Collections.synchronizedMap(new HashMap<String, Integer>());
+        int failingRequests = 0;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int n = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), n));
+            }
+            try {
+                String body = ParsingUtilities.inputStreamToString(exchange.getRequestBody());
+                if (requests.incrementAndGet() <= failingRequests) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                Thread.sleep(10);
+
+                JSONObject queries = new JSONObject(URLDecoder.decode(body.substring("queries=".length()), "UTF-8"));
+                JSONObject response = new JSONObject();
+                Iterator<?> keys = queries.keys();
+                while (keys.hasNext()) {
+                    String key = (String) keys.next();
+                    String query = queries.getJSONObject(key).getString("query");
+                    synchronized (queryCounts) {
+                        Integer count = queryCounts.get(query);
+                        queryCounts.put(query, count == null ? 1 : count + 1);
+                    }
+                    if (query.startsWith("bad")) {
+                        continue;
+                    }
+                    response.put(key, new JSONObject().put("result", new JSONArray().put(new JSONObject()
+                        .put("id", "/stub/" + query).put("name", query)
+                        .put("type", new JSONArray().put("/stub/type"))
+                        .put("score", 100).put("match", true))));
+                }
+
+                byte[] bytes = response.toString().getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(bytes);
+                os.close();
+            } catch (Exception e) {
+                throw new IOException(e.toString());
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+
+    HttpServer server;
+    StubService service;
+    StandardReconConfig config;
+    int maxInFlight;
+    long initialBackoff;
+    ProjectManager projectManager;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        projectManager = ProjectManager.singleton;
+        ProjectManager.singleton = new ProjectManagerStub();
+
+        service = new StubService();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/reconcile", service);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        config = new StandardReconConfig(
+            "http://127.0.0.1:" + server.getAddress().getPort() + "/reconcile",
+            "http://example.com/ids", "http://example.com/schema",
+            null, null, true, new ArrayList<ColumnDetail>());
+
+        maxInFlight = ReconPipeline.maxInFlight;
+        initialBackoff = ReconPipeline.initialBackoff;
+        ReconPipeline.initialBackoff = 10;
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        server.stop(0);
+        ReconPipeline.maxInFlight = maxInFlight;
+        ReconPipeline.initialBackoff = initialBackoff;
+        ProjectManager.singleton = projectManager;
+    }
+
+    protected List<ReconJob> makeJobs(String... texts) {
+        List<ReconJob> jobs = new ArrayList<ReconJob>();
+        for (String text : texts) {
+            jobs.add(config.createJob(null, 0, null, "name", new Cell(text, null)));
+        }
+        return jobs;
+    }
+
+    protected String[] makeTexts(int count) {
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            texts[i] = "entity " + i;
+        }
+        return texts;
+    }
+
+    @Test
+    public void reconcileWithBatchesInFlight() throws Exception {
+        ReconPipeline.maxInFlight = 4;
+        final List<Integer> progress = new ArrayList<Integer>();
+
+        Recon[] recons = new ReconPipeline(config, 1).run(makeJobs(makeTexts(200)), new ReconPipeline.ProgressListener() {
+            @Override
+            public void onBatchDone(int jobsDone, int jobsTotal) {
+                Assert.assertEquals(jobsTotal, 200);
+                progress.add(jobsDone);
+            }
+        });
+
+        for (int i = 0; i < recons.length; i++) {
+            Assert.assertEquals(recons[i].judgment, Judgment.Matched);
+            Assert.assertEquals(recons[i].match.id, "/stub/entity " + i);
+        }
+        Assert.assertTrue(service.maxInFlight.get() > 1, "Batches should overlap");
+        Assert.assertTrue(service.requests.get() < 20, "Batches should grow while the service is fast");
+        Assert.assertEquals(progress.size(), service.requests.get());
+        Assert.assertEquals((int) progress.get(progress.size() - 1), 200);
+    }
+
+    @Test
+    public void backOffAndShrinkOnFailedBatches() throws Exception {
+        ReconPipeline.maxInFlight = 1;
+        service.failingRequests = 2;
+
+        ReconPipeline pipeline = new ReconPipeline(config, 1);
+        long start = System.currentTimeMillis();
+        Recon[] recons = pipeline.run(makeJobs(makeTexts(10)), null);
+
+        Assert.assertTrue(System.currentTimeMillis() - start >= 10 + 20, "Should back off after each failure");
+        Assert.assertTrue(pipeline.getBatchSize() < 10);
+        for (int i = 0; i < recons.length; i++) {
+            Assert.assertEquals(recons[i].match.id, "/stub/entity " + i);
+        }
+    }
+
+    @Test
+    public void answerRepeatedQueriesFromCache() throws Exception {
+        List<ReconJob> jobs = makeJobs(makeTexts(30));
+        new ReconPipeline(config, 1).run(jobs, null);
+        int requests = service.requests.get();
+        Assert.assertEquals(config.getCacheMisses(), 30);
+
+        Recon[] recons = new ReconPipeline(config, 2).run(jobs, null);
+        Assert.assertEquals(service.requests.get(), requests);
+        Assert.assertEquals(config.getCacheHits(), 30);
+        for (int i = 0; i < recons.length; i++) {
+            Assert.assertEquals(recons[i].judgmentHistoryEntry, 2);
+            Assert.assertEquals(recons[i].match.id, "/stub/entity " + i);
+        }
+        Assert.assertEquals(ProjectManager.singleton.getReconCache().size(), 30);
+    }
+
+    @Test
+    public void giveUpOnFailingJobs() throws Exception {
+        Recon[] recons = new ReconPipeline(config, 1).run(makeJobs("good 1", "bad 1", "good 2"), null);
+
+        Assert.assertEquals(recons[0].match.id, "/stub/good 1");
+        Assert.assertNull(recons[1]);
+        Assert.assertEquals(recons[2].match.id, "/stub/good 2");
+        Assert.assertEquals((int) service.queryCounts.get("bad 1"), ReconPipeline.maxTrials);
+        Assert.assertEquals((int) service.queryCounts.get("good 1"), 1);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Recon.Judgment;
+import com.google.refine.model.ReconStats;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.model.changes.MassRowChange;
+import com.google.refine.model.changes.MassRowColumnChange;
+import com.google.refine.model.changes.ReconChange;
+import com.google.refine.model.changes.RowRemovalChange;
+import com.google.refine.tests.ProjectManagerStub;
+import com.google.refine.tests.RefineTest;
+
+public class ReconStatsTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    Column column;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        ProjectManager.singleton = new ProjectManagerStub();
+        project = new Project();
+        column = new Column(0, "name");
+        project.columnModel.addColumn(0, column, false);
+        for (int r = 0; r < 20; r++) {
+            Row row = new Row(1);
+            row.setCell(0, makeCell(r % 5 == 0 ? null : "name " + r, Judgment.values()[r % 3]));
+            project.rows.add(row);
+        }
+        project.update();
+        column.setReconStats(ReconStats.create(project, 0));
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        ProjectManager.singleton = null;
+        project = null;
+        column = null;
+    }
+
+    protected Cell makeCell(String value, Judgment judgment) {
+        Recon recon = null;
+        if (judgment != null) {
+            recon = new Recon(0, null, null);
+            recon.judgment = judgment;
+        }
+        return new Cell(value, recon);
+    }
+
+    @Test
+    public void updateFromCellDifference() {
+        ReconStats stats = new ReconStats(10, 2, 3);
+
+        Assert.assertEquals(stats.update(makeCell("a", Judgment.None), makeCell("a", Judgment.Matched)), new ReconStats(10, 2, 4));
+        Assert.assertEquals(stats.update(makeCell("a", Judgment.New), makeCell("", Judgment.Matched)), new ReconStats(9, 1, 3));
+        Assert.assertEquals(stats.update(null, makeCell("a", Judgment.New)), new ReconStats(11, 3, 3));
+        Assert.assertSame(stats.update(makeCell("a", Judgment.New), makeCell("b", Judgment.New)), stats);
+    }
+
+    @Test
+    public void judgmentsKeepStatsInStep() {
+        Random random = new Random(7);
+        ReconChange[] changes = new ReconChange[50];
+        for (int i = 0; i < changes.length; i++) {
+            int r = random.nextInt(project.rows.size());
+            Cell oldCell = project.rows.get(r).getCell(0);
+            Judgment judgment = random.nextInt(4) == 0 ? null : Judgment.values()[random.nextInt(3)];
+            Cell newCell = makeCell(random.nextInt(6) == 0 ? null : "new name " + i, judgment);
+
+            changes[i] = new ReconChange(new CellChange(r, 0, oldCell, newCell), "name", null, null);
+            changes[i].apply(project);
+            Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+        }
+        for (int i = changes.length - 1; i >= 0; i--) {
+            changes[i].revert(project);
+            Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+        }
+    }
+
+    @Test
+    public void updateKeepsStats() {
+        // as when a project is loaded with the stats it was saved with
+        ReconStats stats = new ReconStats(1, 2, 3);
+        column.setReconStats(stats);
+        project.update();
+        Assert.assertSame(column.getReconStats(), stats);
+    }
+
+    @Test
+    public void rowChangesKeepStatsInStep() {
+        ReconStats counted = ReconStats.create(project, 0);
+
+        RowRemovalChange removal = new RowRemovalChange(Arrays.asList(1, 2, 5, 19));
+        removal.apply(project);
+        Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+
+        // replace some rows and add others
+        List<Row> newRows = new ArrayList<Row>(project.rows);
+        for (int r = 0; r < newRows.size(); r += 4) {
+            Row row = new Row(1);
+            row.setCell(0, makeCell("replaced " + r, Judgment.Matched));
+            newRows.set(r, row);
+        }
+        newRows.add(new Row(1));
+        Row row = new Row(1);
+        row.setCell(0, makeCell("added", Judgment.New));
+        newRows.add(row);
+
+        MassRowChange massRowChange = new MassRowChange(newRows);
+        massRowChange.apply(project);
+        Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+
+        List<Column> columns = new ArrayList<Column>(project.columnModel.columns);
+        MassRowColumnChange massRowColumnChange = new MassRowColumnChange(columns, newRows.subList(0, 5));
+        massRowColumnChange.apply(project);
+        Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+
+        massRowColumnChange.revert(project);
+        Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+        massRowChange.revert(project);
+        Assert.assertEquals(column.getReconStats(), ReconStats.create(project, 0));
+        removal.revert(project);
+        Assert.assertEquals(column.getReconStats(), counted);
+    }
+
+    @Test
+    public void selfCheckRecountsDriftedStats() {
+        boolean selfCheck = ReconStats.selfCheck;
+        ReconStats.selfCheck = true;
+        try {
+            ReconStats counted = ReconStats.create(project, 0);
+            column.setReconStats(new ReconStats(0, 0, 0));
+            Cell oldCell = project.rows.get(1).getCell(0);
+
+            new ReconChange(new CellChange(1, 0, oldCell, oldCell), "name", null, null).apply(project);
+            Assert.assertEquals(column.getReconStats(), counted);
+        } finally {
+            ReconStats.selfCheck = selfCheck;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ColumnGroup;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.RecordModel;
+import com.google.refine.model.RecordModel.RowDependency;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellAtRow;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.model.changes.ColumnAdditionChange;
+import com.google.refine.model.changes.MassCellChange;
+import com.google.refine.tests.ProjectManagerStub;
+import com.google.refine.tests.RefineTest;
+
+public class RecordModelTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    Random random;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        ProjectManager.singleton = new ProjectManagerStub();
+        random = new Random(11);
+        project = new Project();
+        for (int c = 0; c < 5; c++) {
+            project.columnModel.addColumn(c, new Column(c, "column " + c), false);
+        }
+        project.columnModel.setMaxCellIndex(4);
+        project.columnModel.columnGroups.add(new ColumnGroup(2, 3, 2));
+        for (int r = 0; r < 60; r++) {
+            Row row = new Row(5);
+            for (int c = 0; c < 5; c++) {
+                row.setCell(c, randomCell());
+            }
+            project.rows.add(row);
+        }
+        project.update();
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        ProjectManager.singleton = null;
+        project = null;
+    }
+
+    protected Cell randomCell() {
+        return random.nextInt(3) == 0 ? new Cell("v" + random.nextInt(100), null) : null;
+    }
+
+    protected void assertSameAsRebuilt() {
+        RecordModel rebuilt = new RecordModel();
+        rebuilt.update(project);
+
+        RecordModel recordModel = project.recordModel;
+        Assert.assertEquals(recordModel.getRecordCount(), rebuilt.getRecordCount());
+        for (int i = 0; i < rebuilt.getRecordCount(); i++) {
+            Record expected = rebuilt.getRecord(i);
+            Record actual = recordModel.getRecord(i);
+            Assert.assertEquals(actual.fromRowIndex, expected.fromRowIndex);
+            Assert.assertEquals(actual.toRowIndex, expected.toRowIndex);
+            Assert.assertEquals(actual.recordIndex, expected.recordIndex);
+        }
+        for (int r = 0; r < project.rows.size(); r++) {
+            RowDependency expected = rebuilt.getRowDependency(r);
+            RowDependency actual = recordModel.getRowDependency(r);
+            Assert.assertEquals(actual.recordIndex, expected.recordIndex);
+            Assert.assertTrue(Arrays.equals(actual.contextRows, expected.contextRows));
+            if (expected.cellDependencies == null) {
+                Assert.assertNull(actual.cellDependencies);
+            } else {
+                for (int c = 0; c < expected.cellDependencies.length; c++) {
+                    if (expected.cellDependencies[c] == null) {
+                        Assert.assertNull(actual.cellDependencies[c]);
+                    } else {
+                        Assert.assertEquals(actual.cellDependencies[c].rowIndex, expected.cellDependencies[c].rowIndex);
+                        Assert.assertEquals(actual.cellDependencies[c].cellIndex, expected.cellDependencies[c].cellIndex);
+                    }
+                }
+            }
+            Assert.assertEquals(recordModel.getRecordOfRow(r).recordIndex, rebuilt.getRecordOfRow(r).recordIndex);
+        }
+    }
+
+    protected CellChange randomCellChange() {
+        int r = random.nextInt(project.rows.size());
+        int c = random.nextInt(5);
+        return new CellChange(r, c, project.rows.get(r).getCell(c), randomCell());
+    }
+
+    @Test
+    public void recordsStartAtRowsWithoutDependencies() {
+        for (int i = 0; i < project.recordModel.getRecordCount(); i++) {
+            Record record = project.recordModel.getRecord(i);
+            Assert.assertNull(project.recordModel.getRowDependency(record.fromRowIndex).cellDependencies);
+            for (int r = record.fromRowIndex + 1; r < record.toRowIndex; r++) {
+                Assert.assertEquals(project.recordModel.getRowDependency(r).recordIndex, -1);
+                Assert.assertEquals(project.recordModel.getRecordOfRow(r).recordIndex, i);
+            }
+        }
+    }
+
+    @Test
+    public void cellChangesKeepRecordsInStep() {
+        for (int i = 0; i < 200; i++) {
+            CellChange change = randomCellChange();
+            change.apply(project);
+            assertSameAsRebuilt();
+            if (i % 3 == 0) {
+                change.revert(project);
+                assertSameAsRebuilt();
+            }
+        }
+    }
+
+    @Test
+    public void massCellChangesKeepRecordsInStep() {
+        for (int i = 0; i < 40; i++) {
+            List<CellChange> cellChanges = new ArrayList<CellChange>();
+            for (int j = random.nextInt(8); j >= 0; j--) {
+                CellChange cellChange = randomCellChange();
+                project.rows.get(cellChange.row).setCell(cellChange.cellIndex, cellChange.newCell); // keep old cells right
+                cellChanges.add(cellChange);
+            }
+            for (int j = cellChanges.size() - 1; j >= 0; j--) {
+                CellChange cellChange = cellChanges.get(j);
+                project.rows.get(cellChange.row).setCell(cellChange.cellIndex, cellChange.oldCell);
+            }
+
+            MassCellChange change = new MassCellChange(cellChanges, null, true);
+            change.apply(project);
+            assertSameAsRebuilt();
+            if (i % 2 == 0) {
+                change.revert(project);
+                assertSameAsRebuilt();
+            }
+        }
+    }
+
+    @Test
+    public void columnAdditionKeepsRecordsInStep() {
+        List<CellAtRow> newCells = new ArrayList<CellAtRow>();
+        for (int r = 0; r < project.rows.size(); r += 7) {
+            newCells.add(new CellAtRow(r, new Cell("new " + r, null)));
+        }
+
+        ColumnAdditionChange outsideGroup = new ColumnAdditionChange("outside", 1, newCells);
+        outsideGroup.apply(project);
+        assertSameAsRebuilt();
+
+        ColumnAdditionChange insideGroup = new ColumnAdditionChange("inside", 4, newCells);
+        insideGroup.apply(project);
+        assertSameAsRebuilt();
+
+        insideGroup.revert(project);
+        assertSameAsRebuilt();
+        outsideGroup.revert(project);
+        assertSameAsRebuilt();
+    }
+}
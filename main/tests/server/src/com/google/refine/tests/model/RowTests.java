@@ -36,7 +36,14 @@ package com.google.refine.tests.model;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
 import java.util.Properties;
 
 import org.slf4j.LoggerFactory;
@@ -47,10 +54,14 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import com.google.refine.exporters.CsvExporter;
+import com.google.refine.expr.EvalError;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.ReconCandidate;
 import com.google.refine.model.Row;
 import com.google.refine.tests.RefineTest;
+import com.google.refine.util.Pool;
 
 public class RowTests extends RefineTest {
 
@@ -168,4 +179,55 @@ public class RowTests extends RefineTest {
         Assert.assertTrue((Boolean) row.getField("starred", options));
     }
 
+
+    @Test
+    public void saveAndLoadBinaryRow() throws Exception {
+        Recon recon = new Recon(1, "http://id", "http://schema");
+        recon.judgment = Recon.Judgment.Matched;
+        recon.match = new ReconCandidate("/en/a", "A", new String[] { "/type" }, 0.5);
+        recon.addCandidate(recon.match);
+
+        Row row = new Row(10);
+        row.starred = true;
+        row.setCell(0, new Cell("text", recon));
+        row.setCell(1, new Cell(42L, null));
+        row.setCell(2, new Cell(1.5, null));
+        row.setCell(3, new Cell(true, null));
+        row.setCell(4, new Cell(new Date(1000), null));
+        row.setCell(6, new Cell(new EvalError("oops"), null));
+        row.setCell(7, new Cell(new BigInteger("12345678901234"), null));
+        row.setCell(8, new Cell(new BigDecimal("2.25"), null));
+        row.setCell(9, new Cell(new BigInteger("123456789012345678901234567890"), null));
+
+        Pool pool = new Pool();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        row.saveBinary(new DataOutputStream(out), pool);
+        ByteArrayOutputStream poolOut = new ByteArrayOutputStream();
+        pool.saveBinary(poolOut);
+
+        Pool pool2 = new Pool();
+        pool2.loadBinary(new ByteArrayInputStream(poolOut.toByteArray()));
+        Row row2 = Row.loadBinary(new DataInputStream(new ByteArrayInputStream(out.toByteArray())), pool2);
+
+        Assert.assertFalse(row2.flagged);
+        Assert.assertTrue(row2.starred);
+        Assert.assertEquals(row2.getCellValue(0), "text");
+        Assert.assertEquals(row2.getCellValue(1), 42L);
+        Assert.assertEquals(row2.getCellValue(2), 1.5);
+        Assert.assertEquals(row2.getCellValue(3), true);
+        Assert.assertEquals(row2.getCellValue(4), new Date(1000));
+        Assert.assertNull(row2.getCell(5));
+        Assert.assertEquals(((EvalError) row2.getCellValue(6)).message, "oops");
+        Assert.assertEquals(row2.getCellValue(7), 12345678901234L);
+        Assert.assertEquals(row2.getCellValue(8), 2.25);
+        Assert.assertEquals(row2.getCellValue(9), 1.2345678901234568E29);
+
+        Recon recon2 = row2.getCell(0).recon;
+        Assert.assertEquals(recon2.id, recon.id);
+        Assert.assertEquals(recon2.judgment, Recon.Judgment.Matched);
+        Assert.assertEquals(recon2.match.id, "/en/a");
+        Assert.assertEquals(recon2.match.types[0], "/type");
+        Assert.assertEquals(recon2.candidates.size(), 1);
+        Assert.assertEquals(recon2.identifierSpace, "http://id");
+    }
 }
@@ -0,0 +1,192 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.sorting;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.sorting.ParallelMergeSort;
+import com.google.refine.sorting.SortingRowVisitor;
+import com.google.refine.tests.RefineTest;
+
+public class SortingTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    int[] indices;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(0, "n"), false);
+        for (int i = 0; i < 50; i++) {
+            Row row = new Row(1);
+            if (i % 11 != 0) {
+                row.setCell(0, new Cell((long) ((i * 7) % 10), null));
+            }
+            project.rows.add(row);
+        }
+
+        indices = new int[project.rows.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+    }
+
+    @Test
+    public void sortIndicesIsStable() throws Exception {
+        int[] sorted = indices.clone();
+        createSorter(false).sortIndices(project, sorted);
+
+        for (int i = 1; i < sorted.length; i++) {
+            Object v1 = project.rows.get(sorted[i - 1]).getCellValue(0);
+            Object v2 = project.rows.get(sorted[i]).getCellValue(0);
+            if (v1 == null) {
+                Assert.assertNull(v2);
+            } else if (v2 != null) {
+                Assert.assertTrue((Long) v1 <= (Long) v2);
+            }
+            if (v1 == null ? v2 == null : v1.equals(v2)) {
+                Assert.assertTrue(sorted[i - 1] < sorted[i]);
+            }
+        }
+    }
+
+    @Test
+    public void selectFirstIndicesMatchesSort() throws Exception {
+        for (boolean reverse : new boolean[] { false, true }) {
+            int[] sorted = indices.clone();
+            createSorter(reverse).sortIndices(project, sorted);
+
+            for (int count = 0; count <= sorted.length + 1; count += 7) {
+                int[] first = createSorter(reverse).selectFirstIndices(project, indices, count);
+                Assert.assertEquals(Arrays.toString(first),
+                    Arrays.toString(Arrays.copyOf(sorted, Math.min(count, sorted.length))));
+            }
+        }
+    }
+
+    @Test
+    public void parallelSortMatchesSequentialSort() {
+        final int[] values = new int[5000];
+        Random random = new Random(3);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100);
+        }
+        ParallelMergeSort.IntComparator comparator = new ParallelMergeSort.IntComparator() {
+            @Override
+            public int compare(int i1, int i2) {
+                return values[i1] - values[i2];
+            }
+        };
+
+        int[] sequential = new int[values.length];
+        for (int i = 0; i < sequential.length; i++) {
+            sequential[i] = i;
+        }
+        int[] parallel = sequential.clone();
+
+        ParallelMergeSort.sort(sequential, comparator);
+
+        int threshold = ParallelMergeSort.parallelThreshold;
+        int threads = ParallelMergeSort.maxThreads;
+        try {
+            ParallelMergeSort.parallelThreshold = 100;
+            ParallelMergeSort.maxThreads = 4;
+            ParallelMergeSort.sort(parallel, comparator);
+        } finally {
+            ParallelMergeSort.parallelThreshold = threshold;
+            ParallelMergeSort.maxThreads = threads;
+        }
+
+        Assert.assertEquals(Arrays.toString(parallel), Arrays.toString(sequential));
+        for (int i = 1; i < sequential.length; i++) {
+            Assert.assertTrue(values[sequential[i - 1]] < values[sequential[i]] ||
+                (values[sequential[i - 1]] == values[sequential[i]] && sequential[i - 1] < sequential[i]));
+        }
+    }
+
+    @Test
+    public void stringSortFollowsCollator() throws Exception {
+        String[] strings = { "b", "\u00e9", "A", "e", "a", "B", "\u00c9" };
+        Project stringProject = new Project();
+        stringProject.columnModel.addColumn(0, new Column(0, "s"), false);
+        for (String s : strings) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(s, null));
+            stringProject.rows.add(row);
+        }
+        stringProject.rows.add(new Row(1));
+
+        SortingRowVisitor sorter = new SortingRowVisitor(null);
+        sorter.initializeFromJSON(stringProject, new JSONObject(
+            "{\"criteria\":[{\"column\":\"s\",\"valueType\":\"string\"}]}"));
+        int[] sorted = new int[stringProject.rows.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        sorter.sortIndices(stringProject, sorted);
+
+        Collator collator = Collator.getInstance();
+        collator.setDecomposition(Collator.FULL_DECOMPOSITION);
+        collator.setStrength(Collator.SECONDARY);
+        for (int i = 1; i < strings.length; i++) {
+            Assert.assertTrue(collator.compare(strings[sorted[i - 1]], strings[sorted[i]]) <= 0);
+        }
+        Assert.assertEquals(sorted[strings.length], strings.length); // blanks go last
+    }
+
+    protected SortingRowVisitor createSorter(boolean reverse) throws Exception {
+        SortingRowVisitor sorter = new SortingRowVisitor(null);
+        sorter.initializeFromJSON(project, new JSONObject(
+            "{\"criteria\":[{\"column\":\"n\",\"valueType\":\"number\",\"reverse\":" + reverse + "}]}"));
+        return sorter;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package com.google.refine.tests.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.URLFetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class URLFetcherTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    /**
+     * Answers /page/x with "page x" after a short pause, and anything else with a 404.
+     */
+    static class StubServer implements HttpHandler {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            int n = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), n));
+            }
+            try {
+                Thread.sleep(20);
+
+                String path = exchange.getRequestURI().getPath();
+                byte[] bytes;
+                if (path.startsWith("/page/")) {
+                    bytes = ("page " + path.substring("/page/".length())).getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                } else {
+                    bytes = "no such page".getBytes("UTF-8");
+                    exchange.sendResponseHeaders(404, bytes.length);
+                }
+                OutputStream os = exchange.getResponseBody();
+                os.write(bytes);
+                os.close();
+            } catch (InterruptedException e) {
+                throw new IOException(e.toString());
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+
+    HttpServer server;
+    StubServer stub;
+    String base;
+    int maxPerHost;
+    int maxCachedResponses;
+    long cacheTimeToLive;
+    File cacheDir;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        stub = new StubServer();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", stub);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        maxPerHost = URLFetcher.maxPerHost;
+        maxCachedResponses = URLFetcher.maxCachedResponses;
+        cacheTimeToLive = URLFetcher.cacheTimeToLive;
+
+        cacheDir = File.createTempFile("fetch-cache", "");
+        cacheDir.delete();
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        server.stop(0);
+        URLFetcher.maxPerHost = maxPerHost;
+        URLFetcher.maxCachedResponses = maxCachedResponses;
+        URLFetcher.cacheTimeToLive = cacheTimeToLive;
+
+        if (cacheDir.exists()) {
+            for (File file : cacheDir.listFiles()) {
+                file.delete();
+            }
+            cacheDir.delete();
+        }
+    }
+
+    private File cacheFile(String path) {
+        return new File(cacheDir, DigestUtils.md5Hex(base + path));
+    }
+
+    private void fetchAll(String... paths) throws Exception {
+        URLFetcher fetcher = new URLFetcher(0, cacheDir);
+        try {
+            for (String path : paths) {
+                Assert.assertNotNull(fetcher.fetch(base + path).get().body);
+            }
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void fetchDistinctURLsOnceWithinHostLimit() throws Exception {
+        URLFetcher.maxPerHost = 3;
+        URLFetcher fetcher = new URLFetcher(0, null);
+        try {
+            List<Future<URLFetcher.Response>> responses = new ArrayList<Future<URLFetcher.Response>>();
+            for (int i = 0; i < 40; i++) {
+                responses.add(fetcher.fetch(base + "/page/" + (i % 10)));
+            }
+            for (int i = 0; i < 40; i++) {
+                Assert.assertEquals(responses.get(i).get().body, "page " + (i % 10));
+            }
+        } finally {
+            fetcher.shutdown();
+        }
+        Assert.assertEquals(stub.requests.get(), 10);
+        Assert.assertEquals(fetcher.getRequestCount(), 10);
+        Assert.assertTrue(stub.maxInFlight.get() > 1, "Requests should overlap");
+        Assert.assertTrue(stub.maxInFlight.get() <= 3, "At most 3 requests to a host at once");
+    }
+
+    @Test
+    public void spaceOutRequestsToAHost() throws Exception {
+        URLFetcher fetcher = new URLFetcher(30, null);
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<URLFetcher.Response>> responses = new ArrayList<Future<URLFetcher.Response>>();
+            for (int i = 0; i < 5; i++) {
+                responses.add(fetcher.fetch(base + "/page/" + i));
+            }
+            for (Future<URLFetcher.Response> response : responses) {
+                response.get();
+            }
+        } finally {
+            fetcher.shutdown();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= 4 * 30);
+    }
+
+    @Test
+    public void reportHttpErrors() throws Exception {
+        URLFetcher fetcher = new URLFetcher(0, null);
+        try {
+            URLFetcher.Response response = fetcher.fetch(base + "/missing").get();
+            Assert.assertNull(response.body);
+            Assert.assertTrue(response.error.startsWith("HTTP error 404"), response.error);
+            Assert.assertTrue(response.error.endsWith("no such page"), response.error);
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void reuseCachedResponses() throws Exception {
+        URLFetcher fetcher = new URLFetcher(0, cacheDir);
+        try {
+            Assert.assertEquals(fetcher.fetch(base + "/page/1").get().body, "page 1");
+            Assert.assertNotNull(fetcher.fetch(base + "/missing").get().error);
+        } finally {
+            fetcher.shutdown();
+        }
+
+        fetcher = new URLFetcher(0, cacheDir);
+        try {
+            Assert.assertEquals(fetcher.fetch(base + "/page/1").get().body, "page 1");
+            Assert.assertNotNull(fetcher.fetch(base + "/missing").get().error);
+        } finally {
+            fetcher.shutdown();
+        }
+        Assert.assertEquals(fetcher.getCacheHits(), 1);
+        Assert.assertEquals(stub.requests.get(), 3, "Errors should not be cached");
+    }
+
+    @Test
+    public void expireCachedResponses() throws Exception {
+        URLFetcher.cacheTimeToLive = 50;
+        fetchAll("/page/1");
+        Thread.sleep(100);
+
+        URLFetcher fetcher = new URLFetcher(0, cacheDir);
+        try {
+            Assert.assertEquals(fetcher.fetch(base + "/page/1").get().body, "page 1");
+        } finally {
+            fetcher.shutdown();
+        }
+        Assert.assertEquals(fetcher.getCacheHits(), 0);
+        Assert.assertEquals(stub.requests.get(), 2);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedResponses() throws Exception {
+        URLFetcher.maxCachedResponses = 2;
+        fetchAll("/page/1", "/page/2");
+
+        long now = System.currentTimeMillis();
+        cacheFile("/page/1").setLastModified(now - 20000);
+        cacheFile("/page/2").setLastModified(now - 10000);
+
+        fetchAll("/page/1", "/page/3"); // uses page 1 again, so page 2 is the one to go
+        Assert.assertEquals(stub.requests.get(), 3);
+        Assert.assertTrue(cacheFile("/page/1").exists());
+        Assert.assertFalse(cacheFile("/page/2").exists());
+        Assert.assertTrue(cacheFile("/page/3").exists());
+        Assert.assertEquals(cacheDir.listFiles().length, 2);
+    }
+}
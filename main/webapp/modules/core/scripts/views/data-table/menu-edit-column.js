@@ -108,6 +108,7 @@ DataTableColumnHeaderUI.extendMenu(function(column, columnHeaderUI, menu) {
           newColumnName: columnName, 
           columnInsertIndex: columnIndex + 1,
           delay: elmts.throttleDelayInput[0].value,
+          cacheResponses: elmts.cacheResponsesInput[0].checked,
           onError: $('input[name="dialog-onerror-choice"]:checked')[0].value
         },
         null,